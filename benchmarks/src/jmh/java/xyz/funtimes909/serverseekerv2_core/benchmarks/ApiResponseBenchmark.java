@@ -0,0 +1,34 @@
+package xyz.funtimes909.serverseekerv2_core.benchmarks;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.openjdk.jmh.annotations.*;
+import xyz.funtimes909.serverseekerv2_core.records.Server;
+import xyz.funtimes909.serverseekerv2_core.util.ServerObjectBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ApiResponseBenchmark {
+    private static final String RESPONSE = "{\"address\":\"127.0.0.1\",\"port\":25565,\"motd\":\"§6Welcome to §bExample\",\"version\":\"Paper 1.20.4\"," +
+            "\"firstseen\":1700000000,\"lastseen\":1730000000,\"protocol\":765,\"country\":\"DE\",\"asn\":\"AS24940 Hetzner Online GmbH\"," +
+            "\"hostname\":\"static.1.0.0.127.clients.your-server.de\",\"org\":\"Hetzner Online GmbH\",\"whitelist\":false," +
+            "\"enforces_secure_chat\":true,\"cracked\":null,\"prevents_reports\":null,\"maxplayers\":100}";
+
+    private JsonObject response;
+
+    @Setup
+    public void setup() {
+        response = JsonParser.parseString(RESPONSE).getAsJsonObject();
+    }
+
+    @Benchmark
+    public Server buildServerFromApiResponse() {
+        return ServerObjectBuilder.buildServerFromApiResponse(response);
+    }
+}
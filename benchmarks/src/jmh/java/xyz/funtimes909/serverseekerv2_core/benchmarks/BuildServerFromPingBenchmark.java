@@ -0,0 +1,46 @@
+package xyz.funtimes909.serverseekerv2_core.benchmarks;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.openjdk.jmh.annotations.*;
+import xyz.funtimes909.serverseekerv2_core.records.Server;
+import xyz.funtimes909.serverseekerv2_core.util.ServerObjectBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BuildServerFromPingBenchmark {
+    @Param({"vanilla", "paper", "forge", "neoforge"})
+    public String response;
+
+    private String raw;
+    private JsonObject parsed;
+
+    @Setup
+    public void setup() {
+        Corpus.disableGeoLookups();
+        raw = Corpus.status(response);
+        parsed = JsonParser.parseString(raw).getAsJsonObject();
+    }
+
+    // What a scanner pays today, parsing the response into a tree and then building from it
+    @Benchmark
+    public Server parseAndBuild() {
+        return ServerObjectBuilder.buildServerFromPing("127.0.0.1", 25565, JsonParser.parseString(raw).getAsJsonObject());
+    }
+
+    @Benchmark
+    public Server buildFromTree() {
+        return ServerObjectBuilder.buildServerFromPing("127.0.0.1", 25565, parsed);
+    }
+
+    @Benchmark
+    public Server buildFromStream() {
+        return ServerObjectBuilder.buildServerFromPing("127.0.0.1", 25565, raw);
+    }
+}
@@ -0,0 +1,26 @@
+package xyz.funtimes909.serverseekerv2_core.benchmarks;
+
+import xyz.funtimes909.serverseekerv2_core.util.HTTPUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+
+public class Corpus {
+    // Status responses as vanilla, Paper, Forge 1.16.5 and NeoForge servers send them, under the core project's src/test/resources/status
+    public static String status(String name) {
+        try (InputStream in = Corpus.class.getResourceAsStream("/status/" + name + ".json")) {
+            if (in == null) throw new IllegalArgumentException("No status response named " + name);
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Keep geo lookups off the network so only the parsing is measured
+    public static void disableGeoLookups() {
+        HTTPUtils.setResolver(ip -> CompletableFuture.completedFuture(null));
+    }
+}
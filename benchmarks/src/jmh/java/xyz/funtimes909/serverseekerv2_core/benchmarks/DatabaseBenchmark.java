@@ -0,0 +1,102 @@
+package xyz.funtimes909.serverseekerv2_core.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import xyz.funtimes909.serverseekerv2_core.database.CopyIngest;
+import xyz.funtimes909.serverseekerv2_core.database.Database;
+import xyz.funtimes909.serverseekerv2_core.records.Server;
+import xyz.funtimes909.serverseekerv2_core.util.ServerObjectBuilder;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+// Needs a local Postgres, point it elsewhere with -Dserverseeker.jdbc.url / .user / .password
+// Every benchmark writes BATCH servers per invocation so the write paths can be compared directly
+// Like a rescan, every sighting has a new player count and a share of the servers also changed something that forces a full rewrite
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class DatabaseBenchmark {
+    private static final int BATCH = 500;
+
+    // Addresses repeat after this many servers so inserts turn into ON CONFLICT updates like a rescan
+    private static final int DISTINCT_SERVERS = 50_000;
+
+    @Param({"vanilla", "paper", "forge"})
+    public String response;
+
+    // Percentage of sightings whose motd differs from the last write of that server, the rest take the touch path once seen
+    @Param({"0", "10", "100"})
+    public int changedPercent;
+
+    private Database database;
+    private Server template;
+    private final SplittableRandom random = new SplittableRandom(42);
+    private int next;
+
+    @Setup
+    public void setup() throws SQLException {
+        Corpus.disableGeoLookups();
+        template = ServerObjectBuilder.buildServerFromPing("127.0.0.1", 25565, Corpus.status(response));
+        database = new Database.Builder()
+                .setUrl(System.getProperty("serverseeker.jdbc.url", "jdbc:postgresql://localhost:5432/serverseeker"))
+                .setUser(System.getProperty("serverseeker.jdbc.user", "postgres"))
+                .setPassword(System.getProperty("serverseeker.jdbc.password", "postgres"))
+                .build();
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        database.close();
+    }
+
+    private List<Server> nextBatch() {
+        List<Server> servers = new ArrayList<>(BATCH);
+        long now = System.currentTimeMillis() / 1000;
+
+        for (int i = 0; i < BATCH; i++) {
+            int id = next++ % DISTINCT_SERVERS;
+            String address = "10." + (id >> 16 & 0xFF) + "." + (id >> 8 & 0xFF) + "." + (id & 0xFF);
+
+            Server.Builder server = new Server.Builder(template)
+                    .setAddress(address)
+                    .setFirstSeen(now)
+                    .setLastSeen(now)
+                    .setOnlinePlayers(random.nextInt(template.getMaxPlayers() + 1));
+
+            if (random.nextInt(100) < changedPercent) server.setMotd(template.getMotd() + " #" + next);
+            servers.add(server.build());
+        }
+
+        return servers;
+    }
+
+    // Row by row, one connection and three prepares per server
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void updateServer() throws SQLException {
+        for (Server server : nextBatch()) {
+            database.updateServer(server);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void updateServers() throws SQLException {
+        database.updateServers(nextBatch());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void copyIngest() throws SQLException {
+        try (Connection conn = database.borrow()) {
+            CopyIngest.ingestServers(conn, nextBatch());
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package xyz.funtimes909.serverseekerv2_core.benchmarks;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import org.openjdk.jmh.annotations.*;
+import xyz.funtimes909.serverseekerv2_core.types.AnsiCodes;
+import xyz.funtimes909.serverseekerv2_core.types.MotdFormat;
+import xyz.funtimes909.serverseekerv2_core.util.MotdRenderer;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MotdBenchmark {
+    private static final String[] COLORS = {"gold", "aqua", "red", "green", "light_purple", "gray", "white", "dark_blue"};
+
+    // Nesting depth of the extra tree and how many components sit at each level
+    @Param({"4", "16", "64"})
+    public int depth;
+
+    @Param({"1", "4"})
+    public int width;
+
+    private JsonObject description;
+    private String json;
+
+    @Setup
+    public void setup() {
+        description = component(0);
+        json = description.toString();
+
+        StringBuilder expected = new StringBuilder();
+        recursive(description, expected);
+        if (!expected.toString().equals(MotdRenderer.render(description, MotdFormat.LEGACY))) {
+            throw new IllegalStateException("Renderers disagree");
+        }
+    }
+
+    private JsonObject component(int level) {
+        JsonObject object = new JsonObject();
+        object.addProperty("text", "level " + level);
+        object.addProperty("color", COLORS[level % COLORS.length]);
+        if (level % 3 == 0) object.addProperty("bold", true);
+        if (level % 5 == 0) object.addProperty("underlined", true);
+
+        if (level < depth) {
+            JsonArray extra = new JsonArray();
+            extra.add(component(level + 1));
+            for (int i = 1; i < width; i++) {
+                JsonObject sibling = new JsonObject();
+                sibling.addProperty("text", " sibling " + i);
+                sibling.addProperty("color", COLORS[i % COLORS.length]);
+                extra.add(sibling);
+            }
+            extra.add(" plain");
+            object.add("extra", extra);
+        }
+
+        return object;
+    }
+
+    // What MotdUtils.buildMOTD used to be, kept here as the baseline
+    private static void recursive(JsonElement element, StringBuilder motd) {
+        if (element.isJsonObject()) {
+            Map<String, JsonElement> map = element.getAsJsonObject().asMap();
+
+            if (map.containsKey("text")) {
+                if (map.containsKey("color")) {
+                    if (!map.get("color").getAsString().startsWith("#")) {
+                        motd.append('§').append(AnsiCodes.codes.get(map.get("color").getAsString()).c);
+                    }
+                }
+
+                if (map.containsKey("bold")) motd.append("§l");
+                if (map.containsKey("underlined")) motd.append("§n");
+                motd.append(map.get("text").getAsString());
+            }
+
+            if (map.containsKey("extra")) recursive(map.get("extra"), motd);
+        } else {
+            for (JsonElement jsonElement : element.getAsJsonArray()) {
+                if (jsonElement.isJsonPrimitive()) motd.append(jsonElement.getAsString());
+                else recursive(jsonElement, motd);
+            }
+        }
+    }
+
+    @Benchmark
+    public String recursive() {
+        StringBuilder motd = new StringBuilder();
+        recursive(description, motd);
+        return motd.toString();
+    }
+
+    @Benchmark
+    public String legacyFromTree() {
+        return MotdRenderer.render(description, MotdFormat.LEGACY);
+    }
+
+    // The tree has to be parsed first for the recursive renderer, the reader doesn't need one
+    @Benchmark
+    public String recursiveFromJson() {
+        StringBuilder motd = new StringBuilder();
+        recursive(JsonParser.parseString(json), motd);
+        return motd.toString();
+    }
+
+    @Benchmark
+    public String legacyFromReader() throws IOException {
+        StringBuilder motd = new StringBuilder();
+        MotdRenderer.render(new JsonReader(new StringReader(json)), MotdFormat.LEGACY, motd);
+        return motd.toString();
+    }
+
+    @Benchmark
+    public String ansiFromTree() {
+        return MotdRenderer.render(description, MotdFormat.ANSI);
+    }
+
+    @Benchmark
+    public String htmlFromTree() {
+        return MotdRenderer.render(description, MotdFormat.HTML);
+    }
+}
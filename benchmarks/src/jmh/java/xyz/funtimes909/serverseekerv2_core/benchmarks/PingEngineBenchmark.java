@@ -0,0 +1,64 @@
+package xyz.funtimes909.serverseekerv2_core.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import xyz.funtimes909.serverseekerv2_core.ping.FakeMinecraftServer;
+import xyz.funtimes909.serverseekerv2_core.ping.PingEngine;
+import xyz.funtimes909.serverseekerv2_core.records.Server;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+// Pings per second against a fake server on localhost, a full connect, handshake, response and build each
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PingEngineBenchmark {
+    private static final int BATCH = 1000;
+
+    @Param({"vanilla", "forge"})
+    public String response;
+
+    @Param({"MODERN", "LEGACY"})
+    public FakeMinecraftServer.Mode mode;
+
+    private FakeMinecraftServer server;
+    private PingEngine engine;
+
+    @Setup
+    public void setup() throws IOException {
+        Corpus.disableGeoLookups();
+        server = new FakeMinecraftServer(mode, Corpus.status(response));
+        engine = new PingEngine.Builder()
+                .setMaxInFlight(512)
+                .setReadTimeout(Duration.ofSeconds(10))
+                .build();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException, InterruptedException {
+        engine.close();
+        server.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int pingBatch() throws InterruptedException {
+        CompletableFuture<?>[] pings = new CompletableFuture<?>[BATCH];
+        for (int i = 0; i < BATCH; i++) {
+            pings[i] = engine.ping("127.0.0.1", server.port());
+        }
+
+        CompletableFuture.allOf(pings).join();
+
+        int built = 0;
+        for (CompletableFuture<?> ping : pings) {
+            if (((Server) ping.join()) != null) built++;
+        }
+        return built;
+    }
+}
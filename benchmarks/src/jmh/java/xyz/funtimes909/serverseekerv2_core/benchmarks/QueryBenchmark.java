@@ -0,0 +1,84 @@
+package xyz.funtimes909.serverseekerv2_core.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import xyz.funtimes909.serverseekerv2_core.database.Database;
+import xyz.funtimes909.serverseekerv2_core.database.ServerQuery;
+import xyz.funtimes909.serverseekerv2_core.records.PageCursor;
+import xyz.funtimes909.serverseekerv2_core.records.ServerPage;
+import xyz.funtimes909.serverseekerv2_core.types.ServerType;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+// Common API queries against whatever the local database holds, run DatabaseBenchmark first to populate it
+// Comparing runs before and after a migration shows what the indexes buy
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class QueryBenchmark {
+    private Database database;
+    private PageCursor deepCursor;
+
+    @Setup
+    public void setup() throws SQLException {
+        database = new Database.Builder()
+                .setUrl(System.getProperty("serverseeker.jdbc.url", "jdbc:postgresql://localhost:5432/serverseeker"))
+                .setUser(System.getProperty("serverseeker.jdbc.user", "postgres"))
+                .setPassword(System.getProperty("serverseeker.jdbc.password", "postgres"))
+                .build();
+
+        // Walk forward once so the deep page benchmark starts far from the newest servers
+        try (Connection conn = database.borrow()) {
+            ServerQuery query = new ServerQuery().setLimit(100);
+            for (int i = 0; i < 50; i++) {
+                ServerPage page = query.setAfter(deepCursor).fetchPage(conn);
+                if (page.next() == null) break;
+                deepCursor = page.next();
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        database.close();
+    }
+
+    @Benchmark
+    public ServerPage firstPage() throws SQLException {
+        try (Connection conn = database.borrow()) {
+            return new ServerQuery().setLimit(100).fetchPage(conn);
+        }
+    }
+
+    @Benchmark
+    public ServerPage deepPage() throws SQLException {
+        try (Connection conn = database.borrow()) {
+            return new ServerQuery().setAfter(deepCursor).setLimit(100).fetchPage(conn);
+        }
+    }
+
+    @Benchmark
+    public ServerPage versionAndCountry() throws SQLException {
+        try (Connection conn = database.borrow()) {
+            return new ServerQuery().setVersion("1.21.1").setCountry("DE").setLimit(100).fetchPage(conn);
+        }
+    }
+
+    @Benchmark
+    public ServerPage crackedPaper() throws SQLException {
+        try (Connection conn = database.borrow()) {
+            return new ServerQuery().setCracked(true).setServerType(ServerType.PAPER).setLimit(100).fetchPage(conn);
+        }
+    }
+
+    @Benchmark
+    public ServerPage motdSearch() throws SQLException {
+        try (Connection conn = database.borrow()) {
+            return new ServerQuery().setMotd("survival").setLimit(100).fetchPage(conn);
+        }
+    }
+}
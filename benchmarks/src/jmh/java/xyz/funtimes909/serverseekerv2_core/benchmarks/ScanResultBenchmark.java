@@ -0,0 +1,118 @@
+package xyz.funtimes909.serverseekerv2_core.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import xyz.funtimes909.serverseekerv2_core.input.ScanResultReader;
+import xyz.funtimes909.serverseekerv2_core.types.ScanFormat;
+import xyz.funtimes909.serverseekerv2_core.util.OffHeapLongSet;
+import xyz.funtimes909.serverseekerv2_core.util.ServerKey;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScanResultBenchmark {
+    private static final int RECORDS = 1_000_000;
+
+    @Param({"MASSCAN_LIST", "MASSCAN_JSON", "MASSCAN_BINARY", "ZMAP_CSV"})
+    public ScanFormat format;
+
+    private Path file;
+    private OffHeapLongSet seen;
+
+    @Setup
+    public void setup() throws IOException {
+        file = Files.createTempFile("scan", ".out");
+        seen = new OffHeapLongSet(RECORDS);
+
+        // A quarter of the records repeat an earlier address, like a scan run over the same ranges twice
+        Random random = new Random(42);
+        int[] addresses = new int[RECORDS];
+        for (int i = 0; i < RECORDS; i++) {
+            addresses[i] = i > 0 && random.nextInt(4) == 0 ? addresses[random.nextInt(i)] : random.nextInt();
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            if (format == ScanFormat.MASSCAN_BINARY) writeHeader(out);
+            if (format == ScanFormat.MASSCAN_LIST) out.writeBytes("#masscan\n");
+            if (format == ScanFormat.MASSCAN_JSON) out.writeBytes("[\n");
+            if (format == ScanFormat.ZMAP_CSV) out.writeBytes("saddr,sport\n");
+
+            for (int address : addresses) {
+                String ip = ServerKey.address(ServerKey.pack(address, 25565));
+                switch (format) {
+                    case MASSCAN_LIST -> out.writeBytes("open tcp 25565 " + ip + " 1700000000\n");
+                    case MASSCAN_JSON -> out.writeBytes("{   \"ip\": \"" + ip + "\",   \"timestamp\": \"1700000000\", \"ports\": [ {\"port\": 25565, \"proto\": \"tcp\", \"status\": \"open\", \"reason\": \"syn-ack\", \"ttl\": 64} ] },\n");
+                    case ZMAP_CSV -> out.writeBytes(ip + ",25565\n");
+                    case MASSCAN_BINARY -> {
+                        out.writeByte(6);
+                        out.writeByte(13);
+                        out.writeInt(1_700_000_000);
+                        out.writeInt(address);
+                        out.writeByte(6);
+                        out.writeShort(25565);
+                        out.writeByte(0);
+                        out.writeByte(64);
+                    }
+                }
+            }
+
+            if (format == ScanFormat.MASSCAN_JSON) out.writeBytes("]\n");
+            if (format == ScanFormat.MASSCAN_BINARY) writeHeader(out);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        seen.close();
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public long mapped() throws IOException, InterruptedException {
+        seen.clear();
+        long[] checksum = new long[1];
+        try (ScanResultReader reader = new ScanResultReader.Builder().setFile(file).setFormat(format).setSeen(seen).build()) {
+            reader.read(key -> checksum[0] += key);
+        }
+
+        return checksum[0];
+    }
+
+    // How the list output used to be read, a String per line and a split per field
+    @Benchmark
+    public long lines() throws IOException {
+        if (format != ScanFormat.MASSCAN_LIST) return 0;
+
+        seen.clear();
+        long checksum = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.US_ASCII)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.startsWith("open ")) continue;
+
+                String[] fields = line.split(" ");
+                long key = ServerKey.pack(fields[3], Integer.parseInt(fields[2]));
+                if (seen.add(key)) checksum += key;
+            }
+        }
+
+        return checksum;
+    }
+
+    // masscan's file header is a 99 byte record of type 'm'
+    private static void writeHeader(DataOutputStream out) throws IOException {
+        byte[] header = new byte[99];
+        byte[] name = "masscan/1.1".getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(name, 0, header, 0, name.length);
+        out.write(header);
+    }
+}
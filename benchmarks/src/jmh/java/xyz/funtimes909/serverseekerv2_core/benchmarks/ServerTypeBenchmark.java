@@ -0,0 +1,75 @@
+package xyz.funtimes909.serverseekerv2_core.benchmarks;
+
+import com.google.gson.JsonObject;
+import org.openjdk.jmh.annotations.*;
+import xyz.funtimes909.serverseekerv2_core.records.Version;
+import xyz.funtimes909.serverseekerv2_core.types.ServerType;
+import xyz.funtimes909.serverseekerv2_core.util.ServerClassifier;
+import xyz.funtimes909.serverseekerv2_core.util.ServerObjectBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ServerTypeBenchmark {
+    @Param({"1.21.1", "Paper 1.20.4", "Velocity 3.3.0-SNAPSHOT (git-8c1fb8a4-b412)", "Waterfall 1.8.x-1.21.x", "Purpur 1.21.1", "Mohist 1.20.1", "1.8.x-1.21.x"})
+    public String version;
+
+    private JsonObject parsed;
+    private ServerClassifier classifier;
+
+    @Setup
+    public void setup() {
+        JsonObject versionObject = new JsonObject();
+        versionObject.addProperty("name", version);
+        versionObject.addProperty("protocol", 767);
+
+        parsed = new JsonObject();
+        parsed.add("version", versionObject);
+        classifier = ServerClassifier.getDefault();
+    }
+
+    @Benchmark
+    public Version getServerType() {
+        return ServerObjectBuilder.getServerType(parsed);
+    }
+
+    // What getServerType used to do, kept here as the baseline
+    @Benchmark
+    public Version split() {
+        ServerType type = ServerType.JAVA;
+
+        if (!Character.isDigit(version.charAt(0))) {
+            type = switch (version.split(" ")[0]) {
+                case "Paper" -> ServerType.PAPER;
+                case "Velocity" -> ServerType.VELOCITY;
+                case "BungeeCord" -> ServerType.BUNGEECORD;
+                case "Spigot" -> ServerType.SPIGOT;
+                case "CraftBukkit" -> ServerType.BUKKIT;
+                case "Folia" -> ServerType.FOLIA;
+                case "Pufferfish" -> ServerType.PUFFERFISH;
+                case "Purpur" -> ServerType.PURPUR;
+                case "Waterfall" -> ServerType.WATERFALL;
+                case "Leaves" -> ServerType.LEAVES;
+                default -> ServerType.JAVA;
+            };
+        }
+
+        return new Version(version, 767, type);
+    }
+
+    @Benchmark
+    public Version classifyCached() {
+        return classifier.classify(version, 767);
+    }
+
+    // A full scan every time, what a version name seen for the first time costs
+    @Benchmark
+    public ServerType classifyUncached() {
+        return classifier.match(version);
+    }
+}
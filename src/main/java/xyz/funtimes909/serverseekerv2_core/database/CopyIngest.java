@@ -0,0 +1,289 @@
+package xyz.funtimes909.serverseekerv2_core.database;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.CopyManager;
+import xyz.funtimes909.serverseekerv2_core.records.Mod;
+import xyz.funtimes909.serverseekerv2_core.records.Player;
+import xyz.funtimes909.serverseekerv2_core.records.Server;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+public class CopyIngest {
+    private static final int FLUSH_THRESHOLD = 64 * 1024;
+
+    // Temporary tables are never WAL logged and are private to the session, so concurrent ingesters don't collide
+    private static final String[] STAGING_TABLES = {
+            "CREATE TEMP TABLE IF NOT EXISTS ServersStaging (LIKE Servers INCLUDING DEFAULTS INCLUDING IDENTITY) ON COMMIT DELETE ROWS",
+            "CREATE TEMP TABLE IF NOT EXISTS PlayersStaging (Address TEXT, Port INT, Uuid UUID, Name TEXT, FirstSeen BIGINT, LastSeen BIGINT) ON COMMIT DELETE ROWS",
+            "CREATE TEMP TABLE IF NOT EXISTS ModsStaging (Address TEXT, Port INT, ModId TEXT, ModMarker TEXT) ON COMMIT DELETE ROWS"
+    };
+
+    private static final String SERVER_COLUMNS = "Address, Port, Type, FirstSeen, LastSeen, Country, Asn, ReverseDNS, Organization, Version, " +
+            "Protocol, FmlNetworkVersion, Motd, IconHash, TimesSeen, PreventsReports, EnforceSecure, Whitelist, Cracked, MaxPlayers, OnlinePlayers, Fingerprint";
+
+    // TimesSeen is replaced by the number of sightings in this batch so duplicates still count once each
+    private static final String MERGE_SERVERS = "INSERT INTO Servers (" + SERVER_COLUMNS + ") " +
+            "SELECT DISTINCT ON (Address, Port) Address, Port, Type, FirstSeen, LastSeen, Country, Asn, ReverseDNS, Organization, Version, " +
+            "Protocol, FmlNetworkVersion, Motd, IconHash, (COUNT(*) OVER (PARTITION BY Address, Port))::INT, PreventsReports, EnforceSecure, Whitelist, Cracked, MaxPlayers, OnlinePlayers, Fingerprint " +
+            "FROM ServersStaging ORDER BY Address, Port, LastSeen DESC " +
+            "ON CONFLICT (Address, Port) DO UPDATE SET " +
+            "LastSeen = EXCLUDED.LastSeen," +
+            "Type = EXCLUDED.Type," +
+            "Country = EXCLUDED.Country," +
+            "Asn = EXCLUDED.Asn," +
+            "ReverseDNS = EXCLUDED.ReverseDNS," +
+            "Organization = EXCLUDED.Organization," +
+            "Version = EXCLUDED.Version," +
+            "Protocol = EXCLUDED.Protocol," +
+            "FmlNetworkVersion = EXCLUDED.FmlNetworkVersion," +
+            "Motd = EXCLUDED.Motd," +
+            "IconHash = EXCLUDED.IconHash," +
+            "TimesSeen = Servers.TimesSeen + EXCLUDED.TimesSeen," +
+            "PreventsReports = EXCLUDED.PreventsReports," +
+            "EnforceSecure = EXCLUDED.EnforceSecure," +
+            "Whitelist = EXCLUDED.Whitelist," +
+            "Cracked = EXCLUDED.Cracked," +
+            "MaxPlayers = EXCLUDED.MaxPlayers," +
+            "OnlinePlayers = EXCLUDED.OnlinePlayers," +
+            "Fingerprint = EXCLUDED.Fingerprint";
+
+    private static final String MERGE_PLAYERS = PlayerStore.mergeFrom("PlayersStaging");
+
+    // Dictionary first, then the links, the second statement sees the dictionary rows the first one added
+    private static final String[] MERGE_MODS = ModStore.mergeFrom("ModsStaging");
+
+    // Stream servers into staging with COPY, then merge each table with a single set based upsert
+    // Runs in one transaction and leaves the connection open for the caller
+    public static void ingestServers(Connection conn, Collection<Server> servers) throws SQLException {
+        if (servers.isEmpty()) return;
+
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+
+        try (Statement statement = conn.createStatement()) {
+            for (String table : STAGING_TABLES) {
+                statement.execute(table);
+            }
+
+            // Icons go straight to their own table, staging only carries the hash
+            List<String> icons = new ArrayList<>(servers.size());
+            for (Server server : servers) {
+                icons.add(server.getIcon());
+            }
+
+            byte[][] iconHashes = IconStore.storeAll(conn, icons);
+
+            // Written even though COPY always rewrites the row, later single upserts rely on the column being current
+            long[] fingerprints = new long[servers.size()];
+            int index = 0;
+            for (Server server : servers) {
+                fingerprints[index++] = Fingerprints.of(server);
+            }
+
+            CopyManager copy = conn.unwrap(PGConnection.class).getCopyAPI();
+            copyServers(copy, servers, iconHashes, fingerprints);
+            copyPlayers(copy, servers);
+            copyMods(copy, servers);
+
+            // Snapshots need no merge, COPY into the partitioned parent routes each row to its day
+            copySnapshots(copy, servers);
+
+            statement.executeUpdate(MERGE_SERVERS);
+            statement.executeUpdate(MERGE_PLAYERS);
+            for (String merge : MERGE_MODS) {
+                statement.executeUpdate(merge);
+            }
+
+            conn.commit();
+            IconStore.remember(conn, iconHashes);
+
+            // A duplicated server may keep an older sighting's fingerprint here, its next bump then just misses and upserts
+            index = 0;
+            for (Server server : servers) {
+                Fingerprints.remember(conn, server, fingerprints[index++]);
+            }
+
+            Database.notifyUpdated(conn, servers, Map.of());
+        } catch (SQLException | RuntimeException e) {
+            // Any failure leaves a COPY or half merged staging behind, never hand the caller an open transaction
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
+    private static void copyServers(CopyManager copy, Collection<Server> servers, byte[][] iconHashes, long[] fingerprints) throws SQLException {
+        CopyWriter writer = new CopyWriter(copy.copyIn("COPY ServersStaging (" + SERVER_COLUMNS + ") FROM STDIN"));
+
+        try {
+            int index = 0;
+            for (Server server : servers) {
+                long fingerprint = fingerprints[index];
+                writer.field(server.getAddress())
+                        .field(server.getPort())
+                        .field(server.getServerType() != null ? server.getServerType().name() : null)
+                        .field(server.getFirstSeen())
+                        .field(server.getLastSeen())
+                        .field(server.getCountry())
+                        .field(server.getAsn())
+                        .field(server.getReverseDns())
+                        .field(server.getOrganization())
+                        .field(server.getVersion())
+                        .field(server.getProtocol())
+                        .field(server.getFmlNetworkVersion())
+                        .field(server.getMotd())
+                        .field(IconStore.toByteaLiteral(iconHashes[index++]))
+                        .field(server.getTimesSeen())
+                        .field(server.getPreventsReports())
+                        .field(server.getEnforceSecure())
+                        .field(server.getWhitelist())
+                        .field(server.getCracked())
+                        .field(server.getMaxPlayers())
+                        .field(server.getOnlinePlayers())
+                        .field(fingerprint)
+                        .endRow();
+            }
+
+            writer.finish();
+        } catch (SQLException | RuntimeException e) {
+            writer.cancel();
+            throw e;
+        }
+    }
+
+    private static void copyPlayers(CopyManager copy, Collection<Server> servers) throws SQLException {
+        CopyWriter writer = new CopyWriter(copy.copyIn("COPY PlayersStaging (Address, Port, Uuid, Name, FirstSeen, LastSeen) FROM STDIN"));
+
+        try {
+            for (Server server : servers) {
+                if (server.getPlayers() == null) continue;
+
+                for (Player player : server.getPlayers()) {
+                    UUID uuid = PlayerStore.parseUuid(player.uuid());
+                    if (uuid == null) continue;
+
+                    writer.field(server.getAddress())
+                            .field(server.getPort())
+                            .field(uuid)
+                            .field(player.name())
+                            .field(player.firstseen())
+                            .field(player.lastseen())
+                            .endRow();
+                }
+            }
+
+            writer.finish();
+        } catch (SQLException | RuntimeException e) {
+            writer.cancel();
+            throw e;
+        }
+    }
+
+    private static void copyMods(CopyManager copy, Collection<Server> servers) throws SQLException {
+        CopyWriter writer = new CopyWriter(copy.copyIn("COPY ModsStaging (Address, Port, ModId, ModMarker) FROM STDIN"));
+
+        try {
+            for (Server server : servers) {
+                for (Mod mod : ModStore.linkable(server.getMods())) {
+                    writer.field(server.getAddress())
+                            .field(server.getPort())
+                            .field(mod.modid())
+                            .field(mod.modmarker())
+                            .endRow();
+                }
+            }
+
+            writer.finish();
+        } catch (SQLException | RuntimeException e) {
+            writer.cancel();
+            throw e;
+        }
+    }
+
+    private static void copySnapshots(CopyManager copy, Collection<Server> servers) throws SQLException {
+        CopyWriter writer = new CopyWriter(copy.copyIn("COPY ServerSnapshots (" + Snapshots.SNAPSHOT_COLUMNS + ") FROM STDIN"));
+
+        try {
+            for (Server server : servers) {
+                writer.field(server.getAddress())
+                        .field(server.getPort())
+                        .field(server.getLastSeen())
+                        .field(server.getOnlinePlayers())
+                        .field(server.getMaxPlayers())
+                        .endRow();
+            }
+
+            writer.finish();
+        } catch (SQLException | RuntimeException e) {
+            writer.cancel();
+            throw e;
+        }
+    }
+
+    // Encodes rows in COPY text format and hands them to the server in chunks
+    private static class CopyWriter {
+        private final CopyIn copyIn;
+        private final StringBuilder buffer = new StringBuilder(FLUSH_THRESHOLD * 2);
+        private boolean firstField = true;
+
+        private CopyWriter(CopyIn copyIn) {
+            this.copyIn = copyIn;
+        }
+
+        private CopyWriter field(Object value) {
+            if (!firstField) buffer.append('\t');
+            firstField = false;
+
+            if (value == null) {
+                buffer.append("\\N");
+                return this;
+            }
+
+            String string = value.toString();
+            for (int i = 0; i < string.length(); i++) {
+                char c = string.charAt(i);
+                switch (c) {
+                    case '\\' -> buffer.append("\\\\");
+                    case '\t' -> buffer.append("\\t");
+                    case '\n' -> buffer.append("\\n");
+                    case '\r' -> buffer.append("\\r");
+                    default -> buffer.append(c);
+                }
+            }
+
+            return this;
+        }
+
+        private void endRow() throws SQLException {
+            buffer.append('\n');
+            firstField = true;
+            if (buffer.length() >= FLUSH_THRESHOLD) flush();
+        }
+
+        private void flush() throws SQLException {
+            if (buffer.isEmpty()) return;
+            byte[] bytes = buffer.toString().getBytes(StandardCharsets.UTF_8);
+            copyIn.writeToCopy(bytes, 0, bytes.length);
+            buffer.setLength(0);
+        }
+
+        private void finish() throws SQLException {
+            flush();
+            copyIn.endCopy();
+        }
+
+        private void cancel() throws SQLException {
+            if (copyIn.isActive()) copyIn.cancelCopy();
+        }
+    }
+}
@@ -1,198 +1,512 @@
 package xyz.funtimes909.serverseekerv2_core.database;
 
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
+import org.apache.commons.dbcp2.BasicDataSource;
+import xyz.funtimes909.serverseekerv2_core.records.GeoInfo;
 import xyz.funtimes909.serverseekerv2_core.records.Mod;
-import xyz.funtimes909.serverseekerv2_core.records.Player;
+import xyz.funtimes909.serverseekerv2_core.records.PoolStats;
 import xyz.funtimes909.serverseekerv2_core.records.Server;
-import xyz.funtimes909.serverseekerv2_core.records.Version;
-import xyz.funtimes909.serverseekerv2_core.types.ServerType;
-import xyz.funtimes909.serverseekerv2_core.util.HTTPUtils;
-import xyz.funtimes909.serverseekerv2_core.util.MotdUtils;
 
+import javax.sql.DataSource;
 import java.sql.*;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 
-public class Database{
-    private static void init(Connection conn) throws SQLException {
-        try (conn) {
-            Statement tables = conn.createStatement();
-
-            // Servers
-            tables.addBatch("CREATE TABLE IF NOT EXISTS Servers (" +
-                    "Address TEXT," +
-                    "Port NUMERIC," +
-                    "Type TEXT," +
-                    "FirstSeen INT," +
-                    "LastSeen INT," +
-                    "Country TEXT," +
-                    "Asn TEXT," +
-                    "ReverseDNS TEXT," +
-                    "Organization TEXT," +
-                    "Version TEXT," +
-                    "Protocol INT," +
-                    "FmlNetworkVersion INT," +
-                    "Motd TEXT," +
-                    "Icon TEXT," +
-                    "TimesSeen INT," +
-                    "PreventsReports BOOLEAN DEFAULT NULL," +
-                    "EnforceSecure BOOLEAN DEFAULT NULL," +
-                    "Whitelist BOOLEAN DEFAULT NULL," +
-                    "Cracked BOOLEAN DEFAULT NULL ," +
-                    "MaxPlayers INT," +
-                    "OnlinePlayers INT," +
-                    "PRIMARY KEY (Address, Port))");
-
-            // Player History
-            tables.addBatch("CREATE TABLE IF NOT EXISTS PlayerHistory (" +
-                    "Address TEXT," +
-                    "Port INT," +
-                    "PlayerUUID TEXT," +
-                    "PlayerName TEXT," +
-                    "FirstSeen INT," +
-                    "LastSeen INT," +
-                    "PRIMARY KEY (Address, Port, PlayerUUID)," +
-                    "FOREIGN KEY (Address, Port) REFERENCES Servers(Address, Port))");
-
-            // Mods
-            tables.addBatch("CREATE TABLE IF NOT EXISTS Mods (" +
-                    "Address TEXT," +
-                    "Port INT," +
-                    "ModID TEXT," +
-                    "ModMarker TEXT," +
-                    "PRIMARY KEY (Address, Port, ModId)," +
-                    "FOREIGN KEY (Address, Port) REFERENCES Servers(Address, Port))");
-
-            // Indexes
-            tables.addBatch("CREATE INDEX IF NOT EXISTS ServersIndex ON Servers (Motd, version, onlineplayers, country, cracked, whitelist, lastseen)");
-            tables.addBatch("CREATE INDEX IF NOT EXISTS PlayersIndex ON PlayerHistory (playername)");
-            tables.addBatch("CREATE INDEX IF NOT EXISTS ModsIndex ON Mods (modid)");
-
-            tables.executeBatch();
-            tables.close();
+public class Database implements AutoCloseable {
+    // Told about every server once it has been written, used to keep in memory indexes in step with the table
+    // Kept per database so a listener only hears about writes to the database it was registered on, whichever pool they came through
+    private static final Map<String, List<Consumer<Server>>> updateListeners = new ConcurrentHashMap<>();
+
+    private final BasicDataSource dataSource;
+    private final String key;
+    private final LongAdder borrows = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final LongAccumulator maxWaitNanos = new LongAccumulator(Math::max, 0);
+
+    private Database(Builder builder) throws SQLException {
+        dataSource = new BasicDataSource();
+        dataSource.setDriverClassName("org.postgresql.Driver");
+        dataSource.setUrl(builder.url);
+        dataSource.setUsername(builder.user);
+        dataSource.setPassword(builder.password);
+        dataSource.setMaxTotal(builder.maxConnections);
+        dataSource.setMaxIdle(builder.maxConnections);
+        dataSource.setDefaultAutoCommit(true);
+
+        // Reuse the same handful of statements across borrows instead of preparing them per server
+        dataSource.setPoolPreparedStatements(true);
+        dataSource.setMaxOpenPreparedStatements(builder.maxPreparedStatements);
+
+        // Switch to named server side statements after the first execution and let pgjdbc collapse batches into multi row inserts
+        dataSource.addConnectionProperty("prepareThreshold", String.valueOf(builder.prepareThreshold));
+        dataSource.addConnectionProperty("preparedStatementCacheQueries", String.valueOf(builder.maxPreparedStatements));
+        dataSource.addConnectionProperty("reWriteBatchedInserts", "true");
+
+        // Schema is created once at startup rather than by every caller, a pool that can't get that far is closed again
+        try (Connection conn = borrow()) {
+            key = key(conn);
+            init(conn);
+        } catch (SQLException | RuntimeException e) {
+            try {
+                dataSource.close();
+            } catch (SQLException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+    }
+
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+
+    public PoolStats getPoolStats() {
+        return new PoolStats(
+                dataSource.getNumActive(),
+                dataSource.getNumIdle(),
+                dataSource.getMaxTotal(),
+                borrows.sum(),
+                TimeUnit.NANOSECONDS.toMillis(totalWaitNanos.sum()),
+                TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get())
+        );
+    }
+
+    // Connections are returned to the pool when closed
+    public Connection borrow() throws SQLException {
+        long start = System.nanoTime();
+        Connection conn = dataSource.getConnection();
+        long waited = System.nanoTime() - start;
+
+        borrows.increment();
+        totalWaitNanos.add(waited);
+        maxWaitNanos.accumulate(waited);
+        return conn;
+    }
+
+    public void updateServer(Server server) throws SQLException {
+        // The static variant closes the connection, which hands it back to the pool
+        updateServer(borrow(), server);
+    }
+
+    public Map<Server, SQLException> updateServers(Collection<Server> servers) throws SQLException {
+        try (Connection conn = borrow()) {
+            return updateServers(conn, servers);
+        }
+    }
+
+    @Override
+    public void close() throws SQLException {
+        dataSource.close();
+    }
+
+    public void addUpdateListener(Consumer<Server> listener) {
+        updateListeners.computeIfAbsent(key, database -> new CopyOnWriteArrayList<>()).add(listener);
+    }
+
+    public void removeUpdateListener(Consumer<Server> listener) {
+        List<Consumer<Server>> listeners = updateListeners.get(key);
+        if (listeners != null) listeners.remove(listener);
+    }
+
+    // Identifies the database a connection points at, the write caches and update listeners are kept per database
+    static String key(Connection conn) throws SQLException {
+        DatabaseMetaData metaData = conn.getMetaData();
+        return metaData.getURL() + '\0' + metaData.getUserName();
+    }
+
+    static void notifyUpdated(Connection conn, Collection<Server> servers, Map<Server, SQLException> failures) throws SQLException {
+        if (updateListeners.isEmpty()) return;
+
+        List<Consumer<Server>> listeners = updateListeners.get(key(conn));
+        if (listeners == null || listeners.isEmpty()) return;
+
+        for (Server server : servers) {
+            if (failures.containsKey(server)) continue;
+
+            for (Consumer<Server> listener : listeners) {
+                listener.accept(server);
+            }
         }
     }
 
+    private static void init(Connection conn) throws SQLException {
+        Migrations.migrate(conn);
+        Snapshots.ensurePartitions(conn, System.currentTimeMillis() / 1000, 2);
+    }
+
+    private static final String INSERT_SERVER = "INSERT INTO Servers " +
+            "(Address," +
+            "Port," +
+            "Type," +
+            "FirstSeen," +
+            "LastSeen," +
+            "Country," +
+            "Asn," +
+            "ReverseDNS," +
+            "Organization," +
+            "Version," +
+            "Protocol," +
+            "FmlNetworkVersion," +
+            "Motd," +
+            "IconHash," +
+            "TimesSeen," +
+            "PreventsReports," +
+            "EnforceSecure," +
+            "Whitelist," +
+            "Cracked," +
+            "MaxPlayers," +
+            "OnlinePlayers," +
+            "Fingerprint)" +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)" +
+            "ON CONFLICT (Address, Port) DO UPDATE SET " +
+            "LastSeen = EXCLUDED.LastSeen," +
+            "Type = EXCLUDED.Type," +
+            "Country = EXCLUDED.Country," +
+            "Asn = EXCLUDED.Asn," +
+            "ReverseDNS = EXCLUDED.ReverseDNS," +
+            "Organization = EXCLUDED.Organization," +
+            "Version = EXCLUDED.Version," +
+            "Protocol = EXCLUDED.Protocol," +
+            "FmlNetworkVersion = EXCLUDED.FmlNetworkVersion," +
+            "Motd = EXCLUDED.Motd," +
+            "IconHash = EXCLUDED.IconHash," +
+            "TimesSeen = Servers.TimesSeen + 1," +
+            "PreventsReports = EXCLUDED.PreventsReports," +
+            "EnforceSecure = EXCLUDED.EnforceSecure," +
+            "Whitelist = EXCLUDED.Whitelist," +
+            "Cracked = EXCLUDED.Cracked," +
+            "MaxPlayers = EXCLUDED.MaxPlayers," +
+            "OnlinePlayers = EXCLUDED.OnlinePlayers," +
+            "Fingerprint = EXCLUDED.Fingerprint";
+
+    // Matches nothing if the stored fingerprint differs, the caller then falls back to the full upsert
+    // Player counts aren't part of the fingerprint, they are written here on every sighting
+    private static final String TOUCH_SERVER = "UPDATE Servers SET " +
+            "LastSeen = ?," +
+            "TimesSeen = TimesSeen + 1," +
+            "OnlinePlayers = ?," +
+            "MaxPlayers = ? " +
+            "WHERE Address = ? AND Port = ? AND Fingerprint = ?";
+
     public static void updateServer(Connection conn, Server server) throws SQLException {
         try (conn) {
-            String address = server.getAddress();
-            short port = server.getPort();
-
-            // Attempt to insert new server, if address and port already exist, update relevant information
-            PreparedStatement insertServer = conn.prepareStatement("INSERT INTO Servers " +
-                    "(Address," +
-                    "Port," +
-                    "Type," +
-                    "FirstSeen," +
-                    "LastSeen," +
-                    "Country," +
-                    "Asn," +
-                    "ReverseDNS," +
-                    "Organization," +
-                    "Version," +
-                    "Protocol," +
-                    "FmlNetworkVersion," +
-                    "Motd," +
-                    "Icon," +
-                    "TimesSeen," +
-                    "PreventsReports," +
-                    "EnforceSecure," +
-                    "Whitelist," +
-                    "Cracked," +
-                    "MaxPlayers," +
-                    "OnlinePlayers)" +
-                    "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)" +
-                    "ON CONFLICT (Address, Port) DO UPDATE SET " +
-                    "LastSeen = EXCLUDED.LastSeen," +
-                    "Type = EXCLUDED.Type," +
-                    "Country = EXCLUDED.Country," +
-                    "Asn = EXCLUDED.Asn," +
-                    "ReverseDNS = EXCLUDED.ReverseDNS," +
-                    "Organization = EXCLUDED.Organization," +
-                    "Version = EXCLUDED.Version," +
-                    "Protocol = EXCLUDED.Protocol," +
-                    "FmlNetworkVersion = EXCLUDED.FmlNetworkVersion," +
-                    "Motd = EXCLUDED.Motd," +
-                    "Icon = EXCLUDED.Icon," +
-                    "TimesSeen = Servers.TimesSeen + 1," +
-                    "PreventsReports = EXCLUDED.PreventsReports," +
-                    "EnforceSecure = EXCLUDED.EnforceSecure," +
-                    "Whitelist = EXCLUDED.Whitelist," +
-                    "Cracked = EXCLUDED.Cracked," +
-                    "MaxPlayers = EXCLUDED.MaxPlayers," +
-                    "OnlinePlayers = EXCLUDED.OnlinePlayers");
-
-            // Set most values as objects to insert a null if value doesn't exist
-            insertServer.setString(1, server.getAddress());
-            insertServer.setInt(2, server.getPort());
-            insertServer.setString(3, server.getServerType().name());
-            insertServer.setLong(4, server.getFirstSeen());
-            insertServer.setLong(5, server.getLastSeen());
-            insertServer.setString(6, server.getCountry());
-            insertServer.setString(7, server.getAsn());
-            insertServer.setString(8, server.getReverseDns());
-            insertServer.setString(9, server.getOrganization());
-            insertServer.setString(10, server.getVersion());
-            insertServer.setObject(11, server.getProtocol(), Types.INTEGER);
-            insertServer.setObject(12, server.getFmlNetworkVersion(), Types.INTEGER);
-            insertServer.setString(13, server.getMotd());
-            insertServer.setString(14, server.getIcon());
-            insertServer.setInt(15, server.getTimesSeen());
-            insertServer.setObject(16, server.getPreventsReports(), Types.BOOLEAN);
-            insertServer.setObject(17, server.getEnforceSecure(), Types.BOOLEAN);
-            insertServer.setObject(18, server.getWhitelist(), Types.BOOLEAN);
-            insertServer.setObject(19, server.getCracked(), Types.BOOLEAN);
-            insertServer.setObject(20, server.getMaxPlayers(), Types.INTEGER);
-            insertServer.setObject(21, server.getOnlinePlayers(), Types.INTEGER);
-            insertServer.executeUpdate();
-            insertServer.close();
+            long fingerprint = Fingerprints.of(server);
+            byte[] iconHash = null;
+
+            // Nothing changed since the last write, only record the sighting instead of rewriting the row
+            boolean unchanged = Fingerprints.isUnchanged(conn, server, fingerprint) && touchServer(conn, server, fingerprint);
+
+            if (!unchanged) {
+                // Only the hash is written to Servers, the image itself is stored once in Icons
+                iconHash = IconStore.storeAll(conn, Collections.singletonList(server.getIcon()))[0];
+
+                // Attempt to insert new server, if address and port already exist, update relevant information
+                PreparedStatement insertServer = conn.prepareStatement(INSERT_SERVER);
+                bindServer(insertServer, server, iconHash, fingerprint);
+                insertServer.executeUpdate();
+                insertServer.close();
+            }
+
+            // Every sighting is kept for population history, even when nothing else changed
+            PreparedStatement insertSnapshot = conn.prepareStatement(Snapshots.INSERT_SNAPSHOT);
+            Snapshots.bind(insertSnapshot, server);
+            insertSnapshot.executeUpdate();
+            insertSnapshot.close();
 
             // Add players, update LastSeen and Name (Potential name change) if duplicate
-            if (!server.getPlayers().isEmpty()) {
-                PreparedStatement updatePlayers = conn.prepareStatement("INSERT INTO PlayerHistory (Address, Port, PlayerUUID, PlayerName, FirstSeen, LastSeen) VALUES (?, ?, ?, ?, ?, ?) " +
-                        "ON CONFLICT (Address, Port, PlayerUUID) DO UPDATE SET " +
-                        "LastSeen = EXCLUDED.LastSeen," +
-                        "PlayerName = EXCLUDED.PlayerName");
-
-                // Constants
-                updatePlayers.setString(1, address);
-                updatePlayers.setShort(2, port);
-
-                for (Player player : server.getPlayers()) {
-                    updatePlayers.setString(3, player.uuid());
-                    updatePlayers.setString(4, player.name());
-                    updatePlayers.setLong(5, player.firstseen());
-                    updatePlayers.setLong(6, player.lastseen());
-                    updatePlayers.addBatch();
+            PlayerStore.upsert(conn, List.of(server));
+
+            // Link mods through the dictionary, already linked mods are left alone. Mods are part of the fingerprint so an unchanged server has none to add
+            Map<Mod, Integer> modIds = unchanged ? Map.of() : ModStore.link(conn, List.of(server));
+
+            // Without autocommit the caller owns the transaction, nothing is cached or announced that it might still roll back
+            if (conn.getAutoCommit()) {
+                IconStore.remember(conn, iconHash);
+                ModStore.remember(conn, modIds);
+                Fingerprints.remember(conn, server, fingerprint);
+                notifyUpdated(conn, List.of(server), Map.of());
+            }
+        }
+    }
+
+    // Write a whole batch of servers in one transaction, leaves the connection open for the caller
+    // Returns the servers that could not be written along with the error each one caused
+    public static Map<Server, SQLException> updateServers(Connection conn, Collection<Server> servers) throws SQLException {
+        Map<Server, SQLException> failures = new IdentityHashMap<>();
+        if (servers.isEmpty()) return failures;
+
+        List<Server> batch = new ArrayList<>(servers);
+        long[] fingerprints = new long[batch.size()];
+        for (int i = 0; i < fingerprints.length; i++) {
+            fingerprints[i] = Fingerprints.of(batch.get(i));
+        }
+
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+
+        try {
+            try {
+                Map<Mod, Integer> modIds = new HashMap<>();
+                byte[][] iconHashes = writeBatch(conn, batch, fingerprints, modIds);
+                conn.commit();
+                IconStore.remember(conn, iconHashes);
+                ModStore.remember(conn, modIds);
+
+                for (int i = 0; i < fingerprints.length; i++) {
+                    Fingerprints.remember(conn, batch.get(i), fingerprints[i]);
+                }
+            } catch (SQLException | RuntimeException e) {
+                // Anything thrown part way through leaves the transaction half written, never let the finally below commit it
+                conn.rollback();
+                List<byte[]> iconHashes = new ArrayList<>();
+                Map<Mod, Integer> modIds = new HashMap<>();
+
+                // Postgres aborts the entire transaction on the first error, isolate each server with a savepoint
+                for (int i = 0; i < fingerprints.length; i++) {
+                    Server server = batch.get(i);
+                    Map<Mod, Integer> serverModIds = new HashMap<>();
+                    Savepoint savepoint = conn.setSavepoint();
+                    try {
+                        iconHashes.addAll(Arrays.asList(writeBatch(conn, List.of(server), new long[]{fingerprints[i]}, serverModIds)));
+                        conn.releaseSavepoint(savepoint);
+                        modIds.putAll(serverModIds);
+                    } catch (SQLException ex) {
+                        conn.rollback(savepoint);
+                        failures.put(server, ex);
+                    } catch (RuntimeException ex) {
+                        conn.rollback(savepoint);
+                        failures.put(server, new SQLException("Could not write " + server.getAddress() + ":" + server.getPort(), ex));
+                    }
                 }
 
-                // Execute and close
-                updatePlayers.executeBatch();
-                updatePlayers.close();
+                conn.commit();
+                IconStore.remember(conn, iconHashes.toArray(new byte[0][]));
+                ModStore.remember(conn, modIds);
+
+                for (int i = 0; i < fingerprints.length; i++) {
+                    if (!failures.containsKey(batch.get(i))) Fingerprints.remember(conn, batch.get(i), fingerprints[i]);
+                }
             }
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
 
-            // Add mods, do nothing if duplicate
-            if (!server.getMods().isEmpty()) {
-                PreparedStatement updateMods = conn.prepareStatement("INSERT INTO Mods (Address, Port, ModId, ModMarker) " +
-                        "VALUES (?, ?, ?, ?)" +
-                        "ON CONFLICT (Address, Port, ModId) DO NOTHING");
+        notifyUpdated(conn, servers, failures);
+        return failures;
+    }
 
-                // Constants
-                updateMods.setString(1, address);
-                updateMods.setShort(2, port);
+    // Addresses that were stored while the geo lookup was unavailable and haven't been tried in the last day
+    public static List<String> getUnenrichedAddresses(Connection conn, int limit) throws SQLException {
+        return getUnenrichedAddresses(conn, limit, System.currentTimeMillis() / 1000 - TimeUnit.DAYS.toSeconds(1));
+    }
+
+    // Addresses tried at or after attemptedBefore are left out, so ones the lookup can't resolve don't come back every call
+    public static List<String> getUnenrichedAddresses(Connection conn, int limit, long attemptedBefore) throws SQLException {
+        List<String> addresses = new ArrayList<>();
 
-                for (Mod mod : server.getMods()) {
-                    updateMods.setString(3, mod.modid());
-                    updateMods.setString(4, mod.modmarker());
-                    updateMods.addBatch();
+        try (PreparedStatement statement = conn.prepareStatement("SELECT DISTINCT Address FROM Servers " +
+                "WHERE Country IS NULL AND Asn IS NULL AND Organization IS NULL " +
+                "AND (GeoAttemptedAt IS NULL OR GeoAttemptedAt < ?) LIMIT ?")) {
+            statement.setLong(1, attemptedBefore);
+            statement.setInt(2, limit);
+
+            try (ResultSet results = statement.executeQuery()) {
+                while (results.next()) {
+                    addresses.add(results.getString("address"));
                 }
+            }
+        }
+
+        return addresses;
+    }
+
+    public static void updateGeo(Connection conn, Map<String, GeoInfo> results) throws SQLException {
+        if (results.isEmpty()) return;
 
-                // Execute and close
-                updateMods.executeBatch();
-                updateMods.close();
+        try (PreparedStatement statement = conn.prepareStatement("UPDATE Servers SET " +
+                "Country = ?," +
+                "Asn = ?," +
+                "ReverseDNS = ?," +
+                "Organization = ?," +
+                "Fingerprint = NULL " +
+                "WHERE Address = ?")) {
+            for (Map.Entry<String, GeoInfo> entry : results.entrySet()) {
+                statement.setString(1, entry.getValue().country());
+                statement.setString(2, entry.getValue().asn());
+                statement.setString(3, entry.getValue().reverseDns());
+                statement.setString(4, entry.getValue().organization());
+                statement.setString(5, entry.getKey());
+                statement.addBatch();
             }
+
+            statement.executeBatch();
+        }
+    }
+
+    public static void markGeoAttempted(Connection conn, Collection<String> addresses, long attemptedAt) throws SQLException {
+        if (addresses.isEmpty()) return;
+
+        try (PreparedStatement statement = conn.prepareStatement("UPDATE Servers SET GeoAttemptedAt = ? WHERE Address = ?")) {
+            for (String address : addresses) {
+                statement.setLong(1, attemptedAt);
+                statement.setString(2, address);
+                statement.addBatch();
+            }
+
+            statement.executeBatch();
+        }
+    }
+
+    // Returns the icon hashes of the servers that were rewritten, unchanged servers only have their sighting recorded
+    // Dictionary ids of the linked mods are added to modIds, like the icon hashes they can only be cached after the commit
+    private static byte[][] writeBatch(Connection conn, List<Server> servers, long[] fingerprints, Map<Mod, Integer> modIds) throws SQLException {
+        boolean[] touched = touchServers(conn, servers, fingerprints);
+
+        List<String> icons = new ArrayList<>(servers.size());
+        for (int i = 0; i < touched.length; i++) {
+            if (!touched[i]) icons.add(servers.get(i).getIcon());
+        }
+
+        byte[][] iconHashes = IconStore.storeAll(conn, icons);
+
+        List<Server> changedServers = new ArrayList<>(icons.size());
+
+        try (PreparedStatement insertServer = conn.prepareStatement(INSERT_SERVER);
+             PreparedStatement insertSnapshots = conn.prepareStatement(Snapshots.INSERT_SNAPSHOT)) {
+            int changed = 0;
+
+            for (int i = 0; i < touched.length; i++) {
+                Server server = servers.get(i);
+
+                if (!touched[i]) {
+                    bindServer(insertServer, server, iconHashes[changed++], fingerprints[i]);
+                    insertServer.addBatch();
+                    changedServers.add(server);
+                }
+
+                Snapshots.bind(insertSnapshots, server);
+                insertSnapshots.addBatch();
+            }
+
+            // Servers first, players and mods reference them
+            if (changed > 0) insertServer.executeBatch();
+            PlayerStore.upsert(conn, servers);
+            modIds.putAll(ModStore.link(conn, changedServers));
+            insertSnapshots.executeBatch();
+        }
+
+        return iconHashes;
+    }
+
+    private static boolean touchServer(Connection conn, Server server, long fingerprint) throws SQLException {
+        return touchServers(conn, List.of(server), new long[]{fingerprint})[0];
+    }
+
+    // Bumps every server the fingerprint map says is unchanged in one batch, returns which ones the table agreed with
+    private static boolean[] touchServers(Connection conn, List<Server> servers, long[] fingerprints) throws SQLException {
+        boolean[] touched = new boolean[servers.size()];
+        int[] candidates = new int[servers.size()];
+        int count = 0;
+
+        for (int i = 0; i < candidates.length; i++) {
+            if (Fingerprints.isUnchanged(conn, servers.get(i), fingerprints[i])) candidates[count++] = i;
+        }
+
+        if (count == 0) return touched;
+
+        try (PreparedStatement touchServer = conn.prepareStatement(TOUCH_SERVER)) {
+            for (int i = 0; i < count; i++) {
+                Server server = servers.get(candidates[i]);
+                touchServer.setLong(1, server.getLastSeen());
+                touchServer.setObject(2, server.getOnlinePlayers(), Types.INTEGER);
+                touchServer.setObject(3, server.getMaxPlayers(), Types.INTEGER);
+                touchServer.setString(4, server.getAddress());
+                touchServer.setInt(5, server.getPort());
+                touchServer.setLong(6, fingerprints[candidates[i]]);
+                touchServer.addBatch();
+            }
+
+            int[] counts = touchServer.executeBatch();
+            for (int i = 0; i < count; i++) {
+                touched[candidates[i]] = counts[i] > 0;
+            }
+        }
+
+        return touched;
+    }
+
+    private static void bindServer(PreparedStatement insertServer, Server server, byte[] iconHash, long fingerprint) throws SQLException {
+        // Set most values as objects to insert a null if value doesn't exist
+        insertServer.setString(1, server.getAddress());
+        insertServer.setInt(2, server.getPort());
+        insertServer.setString(3, server.getServerType() != null ? server.getServerType().name() : null);
+        insertServer.setLong(4, server.getFirstSeen());
+        insertServer.setLong(5, server.getLastSeen());
+        insertServer.setString(6, server.getCountry());
+        insertServer.setString(7, server.getAsn());
+        insertServer.setString(8, server.getReverseDns());
+        insertServer.setString(9, server.getOrganization());
+        insertServer.setString(10, server.getVersion());
+        insertServer.setObject(11, server.getProtocol(), Types.INTEGER);
+        insertServer.setObject(12, server.getFmlNetworkVersion(), Types.INTEGER);
+        insertServer.setString(13, server.getMotd());
+        insertServer.setBytes(14, iconHash);
+        insertServer.setInt(15, server.getTimesSeen());
+        insertServer.setObject(16, server.getPreventsReports(), Types.BOOLEAN);
+        insertServer.setObject(17, server.getEnforceSecure(), Types.BOOLEAN);
+        insertServer.setObject(18, server.getWhitelist(), Types.BOOLEAN);
+        insertServer.setObject(19, server.getCracked(), Types.BOOLEAN);
+        insertServer.setObject(20, server.getMaxPlayers(), Types.INTEGER);
+        insertServer.setObject(21, server.getOnlinePlayers(), Types.INTEGER);
+        insertServer.setLong(22, fingerprint);
+    }
+
+    public static class Builder {
+        private String url;
+        private String user;
+        private String password;
+        private int maxConnections = 16;
+        private int maxPreparedStatements = 64;
+        private int prepareThreshold = 1;
+
+        // Setters
+        public Builder setUrl(String url) {
+            this.url = url;
+            return this;
+        }
+
+        public Builder setUser(String user) {
+            this.user = user;
+            return this;
+        }
+
+        public Builder setPassword(String password) {
+            this.password = password;
+            return this;
+        }
+
+        public Builder setMaxConnections(int maxConnections) {
+            this.maxConnections = maxConnections;
+            return this;
+        }
+
+        public Builder setMaxPreparedStatements(int maxPreparedStatements) {
+            this.maxPreparedStatements = maxPreparedStatements;
+            return this;
+        }
+
+        public Builder setPrepareThreshold(int prepareThreshold) {
+            this.prepareThreshold = prepareThreshold;
+            return this;
+        }
+
+        public Database build() throws SQLException {
+            if (url == null) throw new IllegalStateException("A JDBC url is required");
+            return new Database(this);
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,232 @@
+package xyz.funtimes909.serverseekerv2_core.database;
+
+import xyz.funtimes909.serverseekerv2_core.records.Mod;
+import xyz.funtimes909.serverseekerv2_core.records.Server;
+import xyz.funtimes909.serverseekerv2_core.util.ServerKey;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// 64 bit hash over everything a rescan can change, a server whose hash matches the stored one only needs LastSeen and TimesSeen bumped
+// The in memory map is just a hint, the bump itself checks the Fingerprint column so a stale entry or a hashed key collision falls back to a full upsert
+public class Fingerprints {
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final int MAX_ENTRIES = 4_000_000;
+
+    // 0.0.0.0 port 0, the map uses zero for empty slots
+    private static final long EMPTY_KEY = 0;
+
+    // One map per database, a server's fingerprint in one says nothing about its row in another
+    private static final Map<String, LongLongMap> known = new ConcurrentHashMap<>();
+
+    // Covers the columns of Servers that upserts overwrite plus the mod list
+    // Player counts change on nearly every sighting and are written by the touch update itself, hashing them would make every rescan a full rewrite
+    public static long of(Server server) {
+        long hash = FNV_OFFSET;
+        hash = mix(hash, server.getServerType() != null ? server.getServerType().name() : null);
+        hash = mix(hash, server.getVersion());
+        hash = mix(hash, server.getProtocol());
+        hash = mix(hash, server.getFmlNetworkVersion());
+        hash = mix(hash, server.getMotd());
+        hash = mix(hash, server.getIcon());
+        hash = mix(hash, server.getCountry());
+        hash = mix(hash, server.getAsn());
+        hash = mix(hash, server.getReverseDns());
+        hash = mix(hash, server.getOrganization());
+        hash = mix(hash, server.getPreventsReports());
+        hash = mix(hash, server.getEnforceSecure());
+        hash = mix(hash, server.getWhitelist());
+        hash = mix(hash, server.getCracked());
+
+        if (server.getMods() != null) {
+            for (Mod mod : server.getMods()) {
+                hash = mix(hash, mod.modid());
+                hash = mix(hash, mod.modmarker());
+            }
+        }
+
+        // FNV alone spreads short inputs poorly across the high bits, finish with a murmur style avalanche
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        return hash ^ (hash >>> 33);
+    }
+
+    // True if the last committed write of this server had the same fingerprint
+    public static boolean isUnchanged(Connection conn, Server server, long fingerprint) throws SQLException {
+        long key = server.getKey();
+        if (key == EMPTY_KEY) return false;
+
+        LongLongMap committed = known(conn);
+        synchronized (committed) {
+            return committed.containsKey(key) && committed.get(key) == fingerprint;
+        }
+    }
+
+    // Only call once the write is committed
+    public static void remember(Connection conn, Server server, long fingerprint) throws SQLException {
+        long key = server.getKey();
+        if (key == EMPTY_KEY) return;
+
+        LongLongMap committed = known(conn);
+        synchronized (committed) {
+            if (committed.size() >= MAX_ENTRIES) committed.clear();
+            committed.put(key, fingerprint);
+        }
+    }
+
+    public static void clear(Connection conn) throws SQLException {
+        LongLongMap committed = known(conn);
+        synchronized (committed) {
+            committed.clear();
+        }
+    }
+
+    // Warm the map from the table after a restart so the first rescan doesn't rewrite every row, returns the number loaded
+    public static int preload(Connection conn) throws SQLException {
+        LongLongMap committed = known(conn);
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        int loaded = 0;
+
+        try (PreparedStatement statement = conn.prepareStatement("SELECT Address, Port, Fingerprint FROM Servers WHERE Fingerprint IS NOT NULL")) {
+            statement.setFetchSize(10000);
+
+            try (ResultSet results = statement.executeQuery()) {
+                while (results.next() && loaded < MAX_ENTRIES) {
+                    long key = ServerKey.pack(results.getString("address"), results.getInt("port"));
+                    if (key == EMPTY_KEY) continue;
+
+                    synchronized (committed) {
+                        committed.put(key, results.getLong("fingerprint"));
+                    }
+
+                    loaded++;
+                }
+            }
+
+            conn.commit();
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+
+        return loaded;
+    }
+
+    private static LongLongMap known(Connection conn) throws SQLException {
+        return known.computeIfAbsent(Database.key(conn), key -> new LongLongMap(1 << 16));
+    }
+
+    private static long mix(long hash, String value) {
+        if (value == null) return mixByte(hash, 0x00);
+
+        hash = mixByte(hash, 0x01);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            hash = mixByte(hash, c & 0xFF);
+            hash = mixByte(hash, c >>> 8);
+        }
+
+        // Length terminates the field so ("ab", "c") and ("a", "bc") differ
+        return mixInt(hash, value.length());
+    }
+
+    private static long mix(long hash, Integer value) {
+        if (value == null) return mixByte(hash, 0x00);
+        return mixInt(mixByte(hash, 0x01), value);
+    }
+
+    private static long mix(long hash, Boolean value) {
+        if (value == null) return mixByte(hash, 0x00);
+        return mixByte(hash, value ? 0x02 : 0x01);
+    }
+
+    private static long mixInt(long hash, int value) {
+        hash = mixByte(hash, value & 0xFF);
+        hash = mixByte(hash, (value >>> 8) & 0xFF);
+        hash = mixByte(hash, (value >>> 16) & 0xFF);
+        return mixByte(hash, value >>> 24);
+    }
+
+    private static long mixByte(long hash, int value) {
+        return (hash ^ value) * FNV_PRIME;
+    }
+
+    // Open addressing map of primitive longs, no boxing and two flat arrays instead of an entry object per server
+    private static class LongLongMap {
+        private static final long EMPTY = 0;
+
+        private long[] keys;
+        private long[] values;
+        private int size;
+
+        private LongLongMap(int capacity) {
+            keys = new long[capacity];
+            values = new long[capacity];
+        }
+
+        private int size() {
+            return size;
+        }
+
+        private boolean containsKey(long key) {
+            return keys[slot(keys, key)] == key;
+        }
+
+        private long get(long key) {
+            int slot = slot(keys, key);
+            return keys[slot] == key ? values[slot] : 0;
+        }
+
+        private void put(long key, long value) {
+            int slot = slot(keys, key);
+            if (keys[slot] != key) {
+                keys[slot] = key;
+                size++;
+            }
+
+            values[slot] = value;
+
+            // Keep the load under 3/4 so probe chains stay short
+            if (size * 4 >= keys.length * 3) resize();
+        }
+
+        private void clear() {
+            keys = new long[1 << 16];
+            values = new long[1 << 16];
+            size = 0;
+        }
+
+        private void resize() {
+            long[] oldKeys = keys;
+            long[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = new long[oldValues.length * 2];
+
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] == EMPTY) continue;
+                int slot = slot(keys, oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+
+        // Linear probe from the mixed key, stops at the key or the first empty slot
+        private static int slot(long[] keys, long key) {
+            int mask = keys.length - 1;
+            int slot = (int) ((key * 0x9e3779b97f4a7c15L) >>> 32) & mask;
+
+            while (keys[slot] != EMPTY && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+
+            return slot;
+        }
+    }
+}
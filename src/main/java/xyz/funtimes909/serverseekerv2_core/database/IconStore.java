@@ -0,0 +1,169 @@
+package xyz.funtimes909.serverseekerv2_core.database;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Favicons are stored once per distinct image in the Icons table, servers only keep the SHA-256 of the decoded PNG
+public class IconStore {
+    private static final String PREFIX = "data:image/png;base64,";
+    private static final int MAX_KNOWN = 1_000_000;
+
+    // Hashes already committed to the Icons table of each database, repeat icons never reach it
+    private static final Map<String, Set<ByteBuffer>> known = new ConcurrentHashMap<>();
+
+    public static byte[] decode(String icon) {
+        if (icon == null) return null;
+
+        try {
+            // Older servers wrap the base64 with newlines, the MIME decoder skips them
+            return Base64.getMimeDecoder().decode(icon.substring(icon.indexOf(',') + 1));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    public static byte[] hash(byte[] data) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(data);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static byte[] hash(String icon) {
+        byte[] data = decode(icon);
+        return data == null ? null : hash(data);
+    }
+
+    // Write any icons the table might not have yet and return their hashes in the same order, null for missing icons
+    // Nothing is cached until remember() is called, so a rolled back transaction can't leave dangling hashes in the cache
+    public static byte[][] storeAll(Connection conn, List<String> icons) throws SQLException {
+        byte[][] hashes = new byte[icons.size()][];
+        Set<ByteBuffer> committed = known(conn);
+        Set<ByteBuffer> batched = new HashSet<>();
+
+        try (PreparedStatement insertIcon = conn.prepareStatement("INSERT INTO Icons (Hash, Data) VALUES (?, ?) ON CONFLICT (Hash) DO NOTHING")) {
+            for (int i = 0; i < icons.size(); i++) {
+                byte[] data = decode(icons.get(i));
+                if (data == null) continue;
+
+                hashes[i] = hash(data);
+                ByteBuffer key = ByteBuffer.wrap(hashes[i]);
+                if (committed.contains(key) || !batched.add(key)) continue;
+
+                insertIcon.setBytes(1, hashes[i]);
+                insertIcon.setBytes(2, data);
+                insertIcon.addBatch();
+            }
+
+            if (!batched.isEmpty()) insertIcon.executeBatch();
+        }
+
+        return hashes;
+    }
+
+    public static void remember(Connection conn, byte[]... hashes) throws SQLException {
+        Set<ByteBuffer> committed = known(conn);
+        if (committed.size() > MAX_KNOWN) committed.clear();
+
+        for (byte[] hash : hashes) {
+            if (hash != null) committed.add(ByteBuffer.wrap(hash));
+        }
+    }
+
+    public static String getIcon(Connection conn, byte[] hash) throws SQLException {
+        try (PreparedStatement statement = conn.prepareStatement("SELECT Data FROM Icons WHERE Hash = ?")) {
+            statement.setBytes(1, hash);
+
+            try (ResultSet results = statement.executeQuery()) {
+                if (!results.next()) return null;
+                return PREFIX + Base64.getEncoder().encodeToString(results.getBytes("data"));
+            }
+        }
+    }
+
+    // One off move of the old per row base64 Icon column into the Icons table, safe to run again if interrupted
+    public static int migrate(Connection conn) throws SQLException {
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        int migrated = 0;
+
+        // Only cached once the whole migration has committed, like every other caller of storeAll
+        Set<ByteBuffer> stored = new HashSet<>();
+
+        try (PreparedStatement select = conn.prepareStatement("SELECT Address, Port, Icon FROM Servers WHERE Icon IS NOT NULL");
+             PreparedStatement update = conn.prepareStatement("UPDATE Servers SET IconHash = ?, Icon = NULL WHERE Address = ? AND Port = ?")) {
+            // Stream with a cursor instead of loading every icon into memory
+            select.setFetchSize(1000);
+
+            List<String> icons = new ArrayList<>();
+            List<String> addresses = new ArrayList<>();
+            List<Integer> ports = new ArrayList<>();
+
+            try (ResultSet results = select.executeQuery()) {
+                while (true) {
+                    boolean more = results.next();
+                    if (more) {
+                        icons.add(results.getString("icon"));
+                        addresses.add(results.getString("address"));
+                        ports.add(results.getInt("port"));
+                        if (icons.size() < 1000) continue;
+                    }
+
+                    if (!icons.isEmpty()) {
+                        byte[][] hashes = storeAll(conn, icons);
+                        for (int i = 0; i < hashes.length; i++) {
+                            update.setBytes(1, hashes[i]);
+                            update.setString(2, addresses.get(i));
+                            update.setInt(3, ports.get(i));
+                            update.addBatch();
+                        }
+
+                        update.executeBatch();
+                        for (byte[] hash : hashes) {
+                            if (hash != null) stored.add(ByteBuffer.wrap(hash));
+                        }
+
+                        migrated += icons.size();
+                        icons.clear();
+                        addresses.clear();
+                        ports.clear();
+                    }
+
+                    if (!more) break;
+                }
+            }
+
+            conn.commit();
+        } catch (SQLException | RuntimeException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+
+        remember(conn, stored.stream().map(ByteBuffer::array).toArray(byte[][]::new));
+
+        return migrated;
+    }
+
+    private static Set<ByteBuffer> known(Connection conn) throws SQLException {
+        return known.computeIfAbsent(Database.key(conn), key -> ConcurrentHashMap.newKeySet());
+    }
+
+    // Text form of a bytea value, used by the COPY path
+    static String toByteaLiteral(byte[] hash) {
+        if (hash == null) return null;
+
+        StringBuilder hex = new StringBuilder("\\x");
+        for (byte b : hash) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+
+        return hex.toString();
+    }
+}
@@ -0,0 +1,281 @@
+package xyz.funtimes909.serverseekerv2_core.database;
+
+import java.sql.*;
+import java.util.List;
+
+// Ordered schema changes, each one runs exactly once and is recorded in SchemaVersion
+// Steps are written to be idempotent so databases created before versioning existed pick them up safely
+public class Migrations {
+    // Arbitrary key for pg_advisory_lock so two scanners starting together don't both migrate
+    private static final long LOCK_KEY = 0x5365656B6572L;
+
+    private static final String UUID_PATTERN = "^[0-9a-fA-F]{8}-?([0-9a-fA-F]{4}-?){3}[0-9a-fA-F]{12}$";
+
+    private record Migration(int version, String description, String... statements) {}
+
+    private static final List<Migration> MIGRATIONS = List.of(
+            new Migration(1, "Servers, PlayerHistory and Mods",
+                    "CREATE TABLE IF NOT EXISTS Servers (" +
+                            "Address TEXT," +
+                            "Port NUMERIC," +
+                            "Type TEXT," +
+                            "FirstSeen INT," +
+                            "LastSeen INT," +
+                            "Country TEXT," +
+                            "Asn TEXT," +
+                            "ReverseDNS TEXT," +
+                            "Organization TEXT," +
+                            "Version TEXT," +
+                            "Protocol INT," +
+                            "FmlNetworkVersion INT," +
+                            "Motd TEXT," +
+                            "Icon TEXT," +
+                            "TimesSeen INT," +
+                            "PreventsReports BOOLEAN DEFAULT NULL," +
+                            "EnforceSecure BOOLEAN DEFAULT NULL," +
+                            "Whitelist BOOLEAN DEFAULT NULL," +
+                            "Cracked BOOLEAN DEFAULT NULL ," +
+                            "MaxPlayers INT," +
+                            "OnlinePlayers INT," +
+                            "PRIMARY KEY (Address, Port))",
+                    "CREATE TABLE IF NOT EXISTS PlayerHistory (" +
+                            "Address TEXT," +
+                            "Port INT," +
+                            "PlayerUUID TEXT," +
+                            "PlayerName TEXT," +
+                            "FirstSeen INT," +
+                            "LastSeen INT," +
+                            "PRIMARY KEY (Address, Port, PlayerUUID)," +
+                            "FOREIGN KEY (Address, Port) REFERENCES Servers(Address, Port))",
+                    "CREATE TABLE IF NOT EXISTS Mods (" +
+                            "Address TEXT," +
+                            "Port INT," +
+                            "ModID TEXT," +
+                            "ModMarker TEXT," +
+                            "PRIMARY KEY (Address, Port, ModId)," +
+                            "FOREIGN KEY (Address, Port) REFERENCES Servers(Address, Port))",
+                    "CREATE INDEX IF NOT EXISTS PlayersIndex ON PlayerHistory (playername)",
+                    "CREATE INDEX IF NOT EXISTS ModsIndex ON Mods (modid)"
+            ),
+
+            // Icons, shared by every server with the same favicon
+            new Migration(2, "Content addressed icons",
+                    "CREATE TABLE IF NOT EXISTS Icons (" +
+                            "Hash BYTEA PRIMARY KEY," +
+                            "Data BYTEA NOT NULL)",
+                    "ALTER TABLE Servers ADD COLUMN IF NOT EXISTS IconHash BYTEA"
+            ),
+
+            // The old composite index led with Motd so no real filter could use it, yet every upsert paid to maintain it
+            new Migration(3, "Query driven indexes",
+                    "DROP INDEX IF EXISTS ServersIndex",
+                    "CREATE EXTENSION IF NOT EXISTS pg_trgm",
+                    "CREATE INDEX IF NOT EXISTS ServersLastSeenIndex ON Servers (LastSeen DESC, Address DESC, Port DESC)",
+                    "CREATE INDEX IF NOT EXISTS ServersVersionCountryIndex ON Servers (Version, Country)",
+                    "CREATE INDEX IF NOT EXISTS ServersCrackedIndex ON Servers (LastSeen DESC) WHERE Cracked",
+                    "CREATE INDEX IF NOT EXISTS ServersNoWhitelistIndex ON Servers (LastSeen DESC) WHERE Whitelist IS FALSE",
+                    "CREATE INDEX IF NOT EXISTS ServersMotdTrigramIndex ON Servers USING gin (Motd gin_trgm_ops)",
+                    "CREATE INDEX IF NOT EXISTS PlayersNameTrigramIndex ON PlayerHistory USING gin (PlayerName gin_trgm_ops)"
+            ),
+
+            // Hash of the mutable columns, rescans that find nothing new only bump LastSeen and TimesSeen
+            new Migration(4, "Change detection fingerprints",
+                    "ALTER TABLE Servers ADD COLUMN IF NOT EXISTS Fingerprint BIGINT"
+            ),
+
+            // Ports above 32767 used to be written as negative shorts, the references are dropped while the keys move
+            new Migration(5, "Unsigned ports",
+                    "ALTER TABLE PlayerHistory DROP CONSTRAINT IF EXISTS playerhistory_address_port_fkey",
+                    "ALTER TABLE Mods DROP CONSTRAINT IF EXISTS mods_address_port_fkey",
+                    "UPDATE Servers SET Port = Port + 65536 WHERE Port < 0",
+                    "UPDATE PlayerHistory SET Port = Port + 65536 WHERE Port < 0",
+                    "UPDATE Mods SET Port = Port + 65536 WHERE Port < 0",
+                    "ALTER TABLE PlayerHistory ADD CONSTRAINT playerhistory_address_port_fkey FOREIGN KEY (Address, Port) REFERENCES Servers(Address, Port)",
+                    "ALTER TABLE Mods ADD CONSTRAINT mods_address_port_fkey FOREIGN KEY (Address, Port) REFERENCES Servers(Address, Port)"
+            ),
+
+            // Population history, raw sightings are partitioned by day (see Snapshots) and rolled up into hourly then daily buckets
+            new Migration(6, "Player count snapshots",
+                    "CREATE TABLE IF NOT EXISTS ServerSnapshots (" +
+                            "Address TEXT NOT NULL," +
+                            "Port INT NOT NULL," +
+                            "SeenAt BIGINT NOT NULL," +
+                            "OnlinePlayers INT," +
+                            "MaxPlayers INT) " +
+                            "PARTITION BY RANGE (SeenAt)",
+                    "CREATE TABLE IF NOT EXISTS ServerSnapshotsDefault PARTITION OF ServerSnapshots DEFAULT",
+                    "CREATE INDEX IF NOT EXISTS ServerSnapshotsIndex ON ServerSnapshots (Address, Port, SeenAt)",
+                    "CREATE TABLE IF NOT EXISTS ServerSnapshotsHourly (" +
+                            "Address TEXT," +
+                            "Port INT," +
+                            "PeriodStart BIGINT," +
+                            "Samples INT," +
+                            "SumOnline BIGINT," +
+                            "MinOnline INT," +
+                            "MaxOnline INT," +
+                            "MaxPlayers INT," +
+                            "PRIMARY KEY (Address, Port, PeriodStart))",
+                    "CREATE TABLE IF NOT EXISTS ServerSnapshotsDaily (" +
+                            "Address TEXT," +
+                            "Port INT," +
+                            "PeriodStart BIGINT," +
+                            "Samples INT," +
+                            "SumOnline BIGINT," +
+                            "MinOnline INT," +
+                            "MaxOnline INT," +
+                            "MaxPlayers INT," +
+                            "PRIMARY KEY (Address, Port, PeriodStart))"
+            ),
+
+            // Players once per native uuid and Sightings keyed by a numeric server id instead of a TEXT address on every row
+            // Uuids the database can't parse are dropped, PlayerHistory stays behind as a view so existing joins keep working
+            new Migration(7, "Normalized players",
+                    "ALTER TABLE Servers ADD COLUMN IF NOT EXISTS Id BIGINT GENERATED BY DEFAULT AS IDENTITY",
+                    "CREATE UNIQUE INDEX IF NOT EXISTS ServersIdIndex ON Servers (Id)",
+                    "CREATE TABLE IF NOT EXISTS Players (" +
+                            "Uuid UUID PRIMARY KEY," +
+                            "Name TEXT," +
+                            "FirstSeen BIGINT," +
+                            "LastSeen BIGINT)",
+                    "CREATE TABLE IF NOT EXISTS Sightings (" +
+                            "ServerId BIGINT REFERENCES Servers(Id)," +
+                            "PlayerUuid UUID REFERENCES Players(Uuid)," +
+                            "FirstSeen BIGINT," +
+                            "LastSeen BIGINT," +
+                            "PRIMARY KEY (ServerId, PlayerUuid))",
+                    "CREATE INDEX IF NOT EXISTS SightingsPlayerIndex ON Sightings (PlayerUuid)",
+                    "INSERT INTO Players (Uuid, Name, FirstSeen, LastSeen) " +
+                            "SELECT DISTINCT ON (PlayerUUID::UUID) PlayerUUID::UUID, PlayerName, MIN(FirstSeen) OVER player, MAX(LastSeen) OVER player " +
+                            "FROM PlayerHistory WHERE PlayerUUID ~ '" + UUID_PATTERN + "' " +
+                            "WINDOW player AS (PARTITION BY PlayerUUID::UUID) " +
+                            "ORDER BY PlayerUUID::UUID, LastSeen DESC " +
+                            "ON CONFLICT (Uuid) DO NOTHING",
+                    "INSERT INTO Sightings (ServerId, PlayerUuid, FirstSeen, LastSeen) " +
+                            "SELECT s.Id, ph.PlayerUUID::UUID, MIN(ph.FirstSeen), MAX(ph.LastSeen) FROM PlayerHistory ph " +
+                            "JOIN Servers s ON s.Address = ph.Address AND s.Port = ph.Port " +
+                            "WHERE ph.PlayerUUID ~ '" + UUID_PATTERN + "' GROUP BY 1, 2 " +
+                            "ON CONFLICT (ServerId, PlayerUuid) DO NOTHING",
+                    "DROP TABLE PlayerHistory",
+                    "CREATE INDEX IF NOT EXISTS PlayersIndex ON Players (Name)",
+                    "CREATE INDEX IF NOT EXISTS PlayersNameTrigramIndex ON Players USING gin (Name gin_trgm_ops)",
+                    "CREATE OR REPLACE VIEW PlayerHistory AS " +
+                            "SELECT s.Address, s.Port, si.PlayerUuid::TEXT AS PlayerUUID, p.Name AS PlayerName, si.FirstSeen, si.LastSeen " +
+                            "FROM Sightings si " +
+                            "JOIN Players p ON p.Uuid = si.PlayerUuid " +
+                            "JOIN Servers s ON s.Id = si.ServerId"
+            ),
+
+            // Each distinct mod is stored once with an integer id, servers only keep (ServerId, ModKey) pairs
+            // Mods stays behind as a view like PlayerHistory
+            new Migration(8, "Mod dictionary",
+                    "CREATE TABLE IF NOT EXISTS ModDictionary (" +
+                            "Id INT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY," +
+                            "ModId TEXT NOT NULL," +
+                            "ModMarker TEXT)",
+                    "CREATE UNIQUE INDEX IF NOT EXISTS ModDictionaryIndex ON ModDictionary (ModId, (COALESCE(ModMarker, '')))",
+                    "CREATE TABLE IF NOT EXISTS ServerMods (" +
+                            "ServerId BIGINT REFERENCES Servers(Id)," +
+                            "ModKey INT REFERENCES ModDictionary(Id)," +
+                            "PRIMARY KEY (ServerId, ModKey))",
+                    "CREATE INDEX IF NOT EXISTS ServerModsModIndex ON ServerMods (ModKey)",
+                    "INSERT INTO ModDictionary (ModId, ModMarker) " +
+                            "SELECT DISTINCT ModId, ModMarker FROM Mods WHERE ModId IS NOT NULL " +
+                            "ON CONFLICT DO NOTHING",
+                    "INSERT INTO ServerMods (ServerId, ModKey) " +
+                            "SELECT DISTINCT s.Id, d.Id FROM Mods m " +
+                            "JOIN Servers s ON s.Address = m.Address AND s.Port = m.Port " +
+                            "JOIN ModDictionary d ON d.ModId = m.ModId AND COALESCE(d.ModMarker, '') = COALESCE(m.ModMarker, '') " +
+                            "ON CONFLICT DO NOTHING",
+                    "DROP TABLE Mods",
+                    "CREATE OR REPLACE VIEW Mods AS " +
+                            "SELECT s.Address, s.Port, d.ModId, d.ModMarker " +
+                            "FROM ServerMods sm " +
+                            "JOIN ModDictionary d ON d.Id = sm.ModKey " +
+                            "JOIN Servers s ON s.Id = sm.ServerId"
+            ),
+
+            // Addresses ip-api can't resolve (private, reserved) would otherwise be handed to every backfill forever
+            new Migration(9, "Geo lookup attempts",
+                    "ALTER TABLE Servers ADD COLUMN IF NOT EXISTS GeoAttemptedAt BIGINT",
+                    "CREATE INDEX IF NOT EXISTS ServersUnenrichedIndex ON Servers (GeoAttemptedAt NULLS FIRST) " +
+                            "WHERE Country IS NULL AND Asn IS NULL AND Organization IS NULL"
+            ),
+
+            // A server links each mod id once like the old Mods primary key, a changed marker must not add a second row
+            // Where one already did, the oldest dictionary entry is kept
+            new Migration(10, "One link per server and mod id",
+                    "ALTER TABLE ServerMods ADD COLUMN IF NOT EXISTS ModId TEXT",
+                    "UPDATE ServerMods sm SET ModId = d.ModId FROM ModDictionary d WHERE d.Id = sm.ModKey",
+                    "DELETE FROM ServerMods a USING ServerMods b " +
+                            "WHERE a.ServerId = b.ServerId AND a.ModId = b.ModId AND a.ModKey > b.ModKey",
+                    "ALTER TABLE ServerMods ALTER COLUMN ModId SET NOT NULL",
+                    "ALTER TABLE ServerMods DROP CONSTRAINT IF EXISTS servermods_pkey",
+                    "ALTER TABLE ServerMods ADD PRIMARY KEY (ServerId, ModId)"
+            )
+    );
+
+    public static int getLatestVersion() {
+        return MIGRATIONS.get(MIGRATIONS.size() - 1).version();
+    }
+
+    // Bring the schema up to date, returns the version it ends at
+    public static int migrate(Connection conn) throws SQLException {
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(true);
+
+        try (Statement statement = conn.createStatement()) {
+            statement.execute("SELECT pg_advisory_lock(" + LOCK_KEY + ")");
+
+            try {
+                statement.execute("CREATE TABLE IF NOT EXISTS SchemaVersion (" +
+                        "Version INT PRIMARY KEY," +
+                        "Description TEXT," +
+                        "AppliedAt BIGINT)");
+
+                int current = getCurrentVersion(conn);
+                conn.setAutoCommit(false);
+
+                for (Migration migration : MIGRATIONS) {
+                    if (migration.version() <= current) continue;
+                    apply(conn, migration);
+                    current = migration.version();
+                }
+
+                return current;
+            } finally {
+                conn.setAutoCommit(true);
+                statement.execute("SELECT pg_advisory_unlock(" + LOCK_KEY + ")");
+            }
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
+    public static int getCurrentVersion(Connection conn) throws SQLException {
+        try (Statement statement = conn.createStatement();
+             ResultSet results = statement.executeQuery("SELECT COALESCE(MAX(Version), 0) FROM SchemaVersion")) {
+            results.next();
+            return results.getInt(1);
+        }
+    }
+
+    // Each step is its own transaction so a failure leaves the schema at the previous version
+    private static void apply(Connection conn, Migration migration) throws SQLException {
+        try (Statement statement = conn.createStatement();
+             PreparedStatement record = conn.prepareStatement("INSERT INTO SchemaVersion (Version, Description, AppliedAt) VALUES (?, ?, ?)")) {
+            for (String sql : migration.statements()) {
+                statement.execute(sql);
+            }
+
+            record.setInt(1, migration.version());
+            record.setString(2, migration.description());
+            record.setLong(3, System.currentTimeMillis() / 1000);
+            record.executeUpdate();
+
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw new SQLException("Migration " + migration.version() + " (" + migration.description() + ") failed", e);
+        }
+    }
+}
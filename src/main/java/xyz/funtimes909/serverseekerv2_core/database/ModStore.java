@@ -0,0 +1,179 @@
+package xyz.funtimes909.serverseekerv2_core.database;
+
+import xyz.funtimes909.serverseekerv2_core.records.Mod;
+import xyz.funtimes909.serverseekerv2_core.records.Server;
+
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Every distinct mod is stored once in ModDictionary, ServerMods links a server id to the integer id of each of its mods
+// A server links each mod id once, the first marker it reports wins like the old Mods primary key
+public class ModStore {
+    private static final int MAX_CACHED = 1_000_000;
+
+    // Dictionary ids committed to each database, mods found here never reach its dictionary again
+    private static final Map<String, Map<Mod, Integer>> ids = new ConcurrentHashMap<>();
+
+    // Inserts whatever is missing and returns the id of each input mod, sorted so concurrent writers lock in the same order
+    // Rows committed by another writer after this statement started are picked up by the follow up select
+    private static final String INSERT_MODS = "WITH input AS (SELECT * FROM unnest(?::TEXT[], ?::TEXT[]) AS t(ModId, ModMarker)), " +
+            "inserted AS (INSERT INTO ModDictionary (ModId, ModMarker) SELECT ModId, ModMarker FROM input ORDER BY 1, 2 " +
+            "ON CONFLICT (ModId, (COALESCE(ModMarker, ''))) DO NOTHING RETURNING Id, ModId, ModMarker) " +
+            "SELECT Id, ModId, ModMarker FROM inserted";
+
+    private static final String SELECT_MODS = "SELECT d.Id, d.ModId, d.ModMarker FROM ModDictionary d " +
+            "JOIN unnest(?::TEXT[], ?::TEXT[]) AS t(ModId, ModMarker) ON d.ModId = t.ModId AND COALESCE(d.ModMarker, '') = COALESCE(t.ModMarker, '')";
+
+    private static final String LINK_MODS = "INSERT INTO ServerMods (ServerId, ModId, ModKey) " +
+            "SELECT s.Id, t.ModId, t.ModKey FROM unnest(?::TEXT[], ?::INT[], ?::TEXT[], ?::INT[]) AS t(Address, Port, ModId, ModKey) " +
+            "JOIN Servers s ON s.Address = t.Address AND s.Port = t.Port " +
+            "ORDER BY 1, 2 " +
+            "ON CONFLICT (ServerId, ModId) DO NOTHING";
+
+    // For the COPY path, the staging table has Address, Port, ModId and ModMarker columns
+    static String[] mergeFrom(String table) {
+        return new String[]{
+                "INSERT INTO ModDictionary (ModId, ModMarker) SELECT DISTINCT ModId, ModMarker FROM " + table + " ORDER BY 1, 2 ON CONFLICT DO NOTHING",
+                "INSERT INTO ServerMods (ServerId, ModId, ModKey) SELECT DISTINCT ON (s.Id, d.ModId) s.Id, d.ModId, d.Id FROM " + table + " m " +
+                        "JOIN Servers s ON s.Address = m.Address AND s.Port = m.Port " +
+                        "JOIN ModDictionary d ON d.ModId = m.ModId AND COALESCE(d.ModMarker, '') = COALESCE(m.ModMarker, '') " +
+                        "ORDER BY 1, 2, 3 ON CONFLICT DO NOTHING"
+        };
+    }
+
+    // The mods of a server that get linked, ones without an id are dropped and only the first marker of each id is kept
+    static List<Mod> linkable(List<Mod> mods) {
+        if (mods == null) return List.of();
+
+        Map<String, Mod> byId = new LinkedHashMap<>();
+        for (Mod mod : mods) {
+            if (mod.modid() != null) byId.putIfAbsent(mod.modid(), mod);
+        }
+
+        return new ArrayList<>(byId.values());
+    }
+
+    // Link every server to its mods, the servers must already exist
+    // Returns the dictionary ids that were used, hand them to remember() once the transaction commits
+    static Map<Mod, Integer> link(Connection conn, Collection<Server> servers) throws SQLException {
+        List<List<Mod>> linked = new ArrayList<>(servers.size());
+        Set<Mod> distinct = new HashSet<>();
+        for (Server server : servers) {
+            List<Mod> mods = linkable(server.getMods());
+            linked.add(mods);
+            distinct.addAll(mods);
+        }
+
+        if (distinct.isEmpty()) return Map.of();
+        Map<Mod, Integer> resolved = resolve(conn, distinct);
+
+        List<String> addresses = new ArrayList<>();
+        List<Integer> ports = new ArrayList<>();
+        List<String> modIds = new ArrayList<>();
+        List<Integer> modKeys = new ArrayList<>();
+
+        Iterator<List<Mod>> mods = linked.iterator();
+        for (Server server : servers) {
+            for (Mod mod : mods.next()) {
+                addresses.add(server.getAddress());
+                ports.add(server.getPort());
+                modIds.add(mod.modid());
+                modKeys.add(resolved.get(mod));
+            }
+        }
+
+        try (PreparedStatement linkMods = conn.prepareStatement(LINK_MODS)) {
+            linkMods.setArray(1, conn.createArrayOf("text", addresses.toArray()));
+            linkMods.setArray(2, conn.createArrayOf("int4", ports.toArray()));
+            linkMods.setArray(3, conn.createArrayOf("text", modIds.toArray()));
+            linkMods.setArray(4, conn.createArrayOf("int4", modKeys.toArray()));
+            linkMods.executeUpdate();
+        }
+
+        return resolved;
+    }
+
+    public static void remember(Connection conn, Map<Mod, Integer> resolved) throws SQLException {
+        if (resolved.isEmpty()) return;
+
+        Map<Mod, Integer> committed = ids(conn);
+        if (committed.size() > MAX_CACHED) committed.clear();
+        committed.putAll(resolved);
+    }
+
+    // Every mod in the dictionary, used to warm the cache at startup
+    public static int preload(Connection conn) throws SQLException {
+        Map<Mod, Integer> loaded = new HashMap<>();
+
+        try (Statement statement = conn.createStatement();
+             ResultSet results = statement.executeQuery("SELECT Id, ModId, ModMarker FROM ModDictionary")) {
+            while (results.next()) {
+                loaded.put(new Mod(results.getString("modid"), results.getString("modmarker")), results.getInt("id"));
+            }
+        }
+
+        remember(conn, loaded);
+        return loaded.size();
+    }
+
+    private static Map<Mod, Integer> resolve(Connection conn, Set<Mod> mods) throws SQLException {
+        Map<Mod, Integer> committed = ids(conn);
+        Map<Mod, Integer> resolved = new HashMap<>();
+        List<Mod> missing = new ArrayList<>();
+
+        for (Mod mod : mods) {
+            Integer id = committed.get(mod);
+            if (id != null) resolved.put(mod, id);
+            else missing.add(mod);
+        }
+
+        if (missing.isEmpty()) return resolved;
+
+        query(conn, INSERT_MODS, missing, resolved);
+        missing.removeIf(resolved::containsKey);
+        if (!missing.isEmpty()) query(conn, SELECT_MODS, missing, resolved);
+
+        for (Mod mod : mods) {
+            if (!resolved.containsKey(mod)) throw new SQLException("No dictionary id for mod " + mod.modid());
+        }
+
+        return resolved;
+    }
+
+    // Rows are matched back to the input the same way the unique index compares them, a null marker equals an empty one
+    // so one row can resolve several input mods
+    private static void query(Connection conn, String sql, List<Mod> mods, Map<Mod, Integer> resolved) throws SQLException {
+        String[] modIds = new String[mods.size()];
+        String[] markers = new String[mods.size()];
+        Map<String, List<Mod>> byKey = new HashMap<>();
+
+        for (int i = 0; i < modIds.length; i++) {
+            modIds[i] = mods.get(i).modid();
+            markers[i] = mods.get(i).modmarker();
+            byKey.computeIfAbsent(key(modIds[i], markers[i]), key -> new ArrayList<>(1)).add(mods.get(i));
+        }
+
+        try (PreparedStatement statement = conn.prepareStatement(sql)) {
+            statement.setArray(1, conn.createArrayOf("text", modIds));
+            statement.setArray(2, conn.createArrayOf("text", markers));
+
+            try (ResultSet results = statement.executeQuery()) {
+                while (results.next()) {
+                    List<Mod> matched = byKey.getOrDefault(key(results.getString("modid"), results.getString("modmarker")), List.of());
+                    for (Mod mod : matched) {
+                        resolved.put(mod, results.getInt("id"));
+                    }
+                }
+            }
+        }
+    }
+
+    private static Map<Mod, Integer> ids(Connection conn) throws SQLException {
+        return ids.computeIfAbsent(Database.key(conn), key -> new ConcurrentHashMap<>());
+    }
+
+    private static String key(String modId, String modMarker) {
+        return modId + '\0' + (modMarker == null ? "" : modMarker);
+    }
+}
@@ -0,0 +1,99 @@
+package xyz.funtimes909.serverseekerv2_core.database;
+
+import xyz.funtimes909.serverseekerv2_core.records.Player;
+import xyz.funtimes909.serverseekerv2_core.records.Server;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+// Players are stored once per uuid in Players, Sightings links them to the numeric id of each server they were seen on
+public class PlayerStore {
+    // Sorted before upserting so concurrent writers lock player rows in the same order and can't deadlock each other
+    // A player row only takes the new name if the sample is at least as recent as what is stored
+    private static final String MERGE = "WITH samples AS (" +
+            "SELECT DISTINCT ON (Address, Port, Uuid) Address, Port, Uuid, Name, FirstSeen, LastSeen " +
+            "FROM %s ORDER BY Address, Port, Uuid, LastSeen DESC), " +
+            "players AS (" +
+            "INSERT INTO Players (Uuid, Name, FirstSeen, LastSeen) " +
+            "SELECT DISTINCT ON (Uuid) Uuid, Name, FirstSeen, LastSeen FROM samples ORDER BY Uuid, LastSeen DESC " +
+            "ON CONFLICT (Uuid) DO UPDATE SET " +
+            "Name = CASE WHEN EXCLUDED.LastSeen >= Players.LastSeen THEN EXCLUDED.Name ELSE Players.Name END," +
+            "FirstSeen = LEAST(Players.FirstSeen, EXCLUDED.FirstSeen)," +
+            "LastSeen = GREATEST(Players.LastSeen, EXCLUDED.LastSeen)) " +
+            "INSERT INTO Sightings (ServerId, PlayerUuid, FirstSeen, LastSeen) " +
+            "SELECT s.Id, samples.Uuid, samples.FirstSeen, samples.LastSeen FROM samples " +
+            "JOIN Servers s ON s.Address = samples.Address AND s.Port = samples.Port " +
+            "ORDER BY s.Id, samples.Uuid " +
+            "ON CONFLICT (ServerId, PlayerUuid) DO UPDATE SET " +
+            "LastSeen = GREATEST(Sightings.LastSeen, EXCLUDED.LastSeen)";
+
+    // Every player of every server goes up as six arrays in a single statement
+    private static final String UPSERT = String.format(MERGE,
+            "unnest(?::TEXT[], ?::INT[], ?::UUID[], ?::TEXT[], ?::BIGINT[], ?::BIGINT[]) AS t(Address, Port, Uuid, Name, FirstSeen, LastSeen)");
+
+    // For the COPY path, the staging table has the same six columns
+    static String mergeFrom(String table) {
+        return String.format(MERGE, table);
+    }
+
+    // The servers must already exist, players of servers that don't are skipped
+    static void upsert(Connection conn, Collection<Server> servers) throws SQLException {
+        List<String> addresses = new ArrayList<>();
+        List<Integer> ports = new ArrayList<>();
+        List<UUID> uuids = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        List<Long> firstSeen = new ArrayList<>();
+        List<Long> lastSeen = new ArrayList<>();
+
+        for (Server server : servers) {
+            if (server.getPlayers() == null) continue;
+
+            for (Player player : server.getPlayers()) {
+                UUID uuid = parseUuid(player.uuid());
+                if (uuid == null) continue;
+
+                addresses.add(server.getAddress());
+                ports.add(server.getPort());
+                uuids.add(uuid);
+                names.add(player.name());
+                firstSeen.add(player.firstseen());
+                lastSeen.add(player.lastseen());
+            }
+        }
+
+        if (uuids.isEmpty()) return;
+
+        try (PreparedStatement upsert = conn.prepareStatement(UPSERT)) {
+            upsert.setArray(1, conn.createArrayOf("text", addresses.toArray()));
+            upsert.setArray(2, conn.createArrayOf("int4", ports.toArray()));
+            upsert.setArray(3, conn.createArrayOf("uuid", uuids.toArray()));
+            upsert.setArray(4, conn.createArrayOf("text", names.toArray()));
+            upsert.setArray(5, conn.createArrayOf("int8", firstSeen.toArray()));
+            upsert.setArray(6, conn.createArrayOf("int8", lastSeen.toArray()));
+            upsert.executeUpdate();
+        }
+    }
+
+    // Servers send all sorts in the sample, anything that isn't a uuid with or without dashes is dropped
+    public static UUID parseUuid(String uuid) {
+        if (uuid == null) return null;
+
+        if (uuid.length() == 32) {
+            uuid = uuid.substring(0, 8) + "-" + uuid.substring(8, 12) + "-" + uuid.substring(12, 16) + "-" + uuid.substring(16, 20) + "-" + uuid.substring(20);
+        }
+
+        // UUID.fromString accepts short groups like "1-2-3-4-5", the database wouldn't
+        if (uuid.length() != 36) return null;
+
+        try {
+            return UUID.fromString(uuid);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
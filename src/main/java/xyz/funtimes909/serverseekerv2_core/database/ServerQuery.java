@@ -0,0 +1,210 @@
+package xyz.funtimes909.serverseekerv2_core.database;
+
+import xyz.funtimes909.serverseekerv2_core.records.PageCursor;
+import xyz.funtimes909.serverseekerv2_core.records.Server;
+import xyz.funtimes909.serverseekerv2_core.records.ServerPage;
+import xyz.funtimes909.serverseekerv2_core.types.ServerType;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+// Typed filters over Servers, compiled to parameterised SQL
+// Pages are keyset based on (LastSeen, Address, Port), newest first, so deep pages cost the same as the first one
+public class ServerQuery {
+    private static final String ORDER = "LastSeen DESC, Address DESC, Port DESC";
+
+    private ServerType serverType;
+    private String version;
+    private String country;
+    private String asn;
+    private Boolean cracked;
+    private Boolean whitelist;
+    private Integer minOnlinePlayers;
+    private Integer maxOnlinePlayers;
+    private Long seenAfter;
+    private Long seenBefore;
+    private String motd;
+    private String modId;
+    private String playerName;
+    private PageCursor after;
+    private int limit = 100;
+
+    // Setters
+    public ServerQuery setServerType(ServerType serverType) {
+        this.serverType = serverType;
+        return this;
+    }
+
+    public ServerQuery setVersion(String version) {
+        this.version = version;
+        return this;
+    }
+
+    public ServerQuery setCountry(String country) {
+        this.country = country;
+        return this;
+    }
+
+    public ServerQuery setAsn(String asn) {
+        this.asn = asn;
+        return this;
+    }
+
+    public ServerQuery setCracked(Boolean cracked) {
+        this.cracked = cracked;
+        return this;
+    }
+
+    public ServerQuery setWhitelist(Boolean whitelist) {
+        this.whitelist = whitelist;
+        return this;
+    }
+
+    public ServerQuery setOnlinePlayers(Integer min, Integer max) {
+        this.minOnlinePlayers = min;
+        this.maxOnlinePlayers = max;
+        return this;
+    }
+
+    public ServerQuery setLastSeen(Long after, Long before) {
+        this.seenAfter = after;
+        this.seenBefore = before;
+        return this;
+    }
+
+    // Case insensitive substring match, served by the MOTD trigram index
+    public ServerQuery setMotd(String motd) {
+        this.motd = motd;
+        return this;
+    }
+
+    public ServerQuery setModId(String modId) {
+        this.modId = modId;
+        return this;
+    }
+
+    public ServerQuery setPlayerName(String playerName) {
+        this.playerName = playerName;
+        return this;
+    }
+
+    // Continue after the last server of a previous page, null starts from the newest server
+    public ServerQuery setAfter(PageCursor after) {
+        this.after = after;
+        return this;
+    }
+
+    public ServerQuery setLimit(int limit) {
+        if (limit <= 0) throw new IllegalArgumentException("Limit must be positive");
+        this.limit = limit;
+        return this;
+    }
+
+    public ServerPage fetchPage(Connection conn) throws SQLException {
+        List<Object> params = new ArrayList<>();
+        String sql = toSql(params);
+
+        // Ask for one extra row to know whether another page exists
+        params.add(limit + 1);
+        List<Server> servers = new ArrayList<>(limit);
+        try (Stream<Server> stream = ServerReader.stream(ServerReader.iterator(conn, sql + " LIMIT ?", ORDER, params))) {
+            stream.forEach(servers::add);
+        }
+
+        if (servers.size() <= limit) return new ServerPage(servers, null);
+
+        servers.remove(limit);
+        Server last = servers.get(limit - 1);
+        return new ServerPage(servers, new PageCursor(last.getLastSeen(), last.getAddress(), last.getPort()));
+    }
+
+    // Every matching server from the cursor onwards, ignoring the limit
+    public Stream<Server> stream(Connection conn) throws SQLException {
+        List<Object> params = new ArrayList<>();
+        String sql = toSql(params);
+        return ServerReader.stream(ServerReader.iterator(conn, sql, ORDER, params));
+    }
+
+    // SELECT over Servers with the filters applied and the rows ordered for keyset paging, params are appended in order
+    public String toSql(List<Object> params) {
+        StringBuilder sql = new StringBuilder("SELECT * FROM Servers WHERE TRUE");
+
+        if (serverType != null) {
+            sql.append(" AND Type = ?");
+            params.add(serverType.name());
+        }
+
+        if (version != null) {
+            sql.append(" AND Version = ?");
+            params.add(version);
+        }
+
+        if (country != null) {
+            sql.append(" AND Country = ?");
+            params.add(country);
+        }
+
+        if (asn != null) {
+            sql.append(" AND Asn = ?");
+            params.add(asn);
+        }
+
+        if (cracked != null) {
+            sql.append(" AND Cracked = ?");
+            params.add(cracked);
+        }
+
+        if (whitelist != null) {
+            sql.append(" AND Whitelist = ?");
+            params.add(whitelist);
+        }
+
+        if (minOnlinePlayers != null) {
+            sql.append(" AND OnlinePlayers >= ?");
+            params.add(minOnlinePlayers);
+        }
+
+        if (maxOnlinePlayers != null) {
+            sql.append(" AND OnlinePlayers <= ?");
+            params.add(maxOnlinePlayers);
+        }
+
+        if (seenAfter != null) {
+            sql.append(" AND LastSeen >= ?");
+            params.add(seenAfter);
+        }
+
+        if (seenBefore != null) {
+            sql.append(" AND LastSeen <= ?");
+            params.add(seenBefore);
+        }
+
+        if (motd != null) {
+            sql.append(" AND Motd ILIKE ? ESCAPE '\\'");
+            params.add("%" + motd.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%");
+        }
+
+        if (modId != null) {
+            sql.append(" AND EXISTS (SELECT 1 FROM ServerMods WHERE ServerMods.ServerId = Servers.Id AND ServerMods.ModId = ?)");
+            params.add(modId);
+        }
+
+        if (playerName != null) {
+            sql.append(" AND EXISTS (SELECT 1 FROM Sightings JOIN Players ON Players.Uuid = Sightings.PlayerUuid WHERE Sightings.ServerId = Servers.Id AND Players.Name = ?)");
+            params.add(playerName);
+        }
+
+        // Row comparison lets Postgres seek straight to the cursor on a (LastSeen, Address, Port) index
+        if (after != null) {
+            sql.append(" AND (LastSeen, Address, Port) < (?, ?, ?)");
+            params.add(after.lastSeen());
+            params.add(after.address());
+            params.add(after.port());
+        }
+
+        return sql.append(" ORDER BY ").append(ORDER).toString();
+    }
+}
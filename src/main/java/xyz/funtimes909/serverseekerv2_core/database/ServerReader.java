@@ -0,0 +1,209 @@
+package xyz.funtimes909.serverseekerv2_core.database;
+
+import xyz.funtimes909.serverseekerv2_core.records.Mod;
+import xyz.funtimes909.serverseekerv2_core.records.Player;
+import xyz.funtimes909.serverseekerv2_core.records.Server;
+import xyz.funtimes909.serverseekerv2_core.types.ServerType;
+import xyz.funtimes909.serverseekerv2_core.util.ModInterner;
+
+import java.sql.*;
+import java.util.*;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+// Lazily reads many servers from a query using a server side cursor, memory use doesn't grow with the result size
+// The connection is left open, closing the stream (or the iterator) releases the cursor
+public class ServerReader implements Iterator<Server>, AutoCloseable {
+    private static final int DEFAULT_FETCH_SIZE = 500;
+
+    // Players and mods come back as one array per server instead of one row per player × mod
+    private static final String AGGREGATE = "SELECT s.*, " +
+            "p.player_names, p.player_uuids, p.player_firstseens, p.player_lastseens, " +
+            "m.mod_ids, m.mod_markers " +
+            "FROM (%s) s " +
+            "LEFT JOIN LATERAL (SELECT " +
+            "array_agg(pl.Name ORDER BY si.PlayerUuid) AS player_names," +
+            "array_agg(si.PlayerUuid::TEXT ORDER BY si.PlayerUuid) AS player_uuids," +
+            "array_agg(si.FirstSeen ORDER BY si.PlayerUuid) AS player_firstseens," +
+            "array_agg(si.LastSeen ORDER BY si.PlayerUuid) AS player_lastseens " +
+            "FROM Sightings si JOIN Players pl ON pl.Uuid = si.PlayerUuid WHERE si.ServerId = s.Id) p ON true " +
+            "LEFT JOIN LATERAL (SELECT " +
+            "array_agg(d.ModId ORDER BY d.ModId) AS mod_ids," +
+            "array_agg(d.ModMarker ORDER BY d.ModId) AS mod_markers " +
+            "FROM ServerMods sm JOIN ModDictionary d ON d.Id = sm.ModKey WHERE sm.ServerId = s.Id) m ON true";
+
+    private final Connection conn;
+    private final PreparedStatement statement;
+    private final ResultSet results;
+    private final boolean autoCommit;
+    private final boolean joined;
+    private boolean hasRow;
+    private boolean closed;
+
+    private ServerReader(Connection conn, PreparedStatement statement, boolean autoCommit, boolean joined) throws SQLException {
+        this.conn = conn;
+        this.statement = statement;
+        this.autoCommit = autoCommit;
+        this.joined = joined;
+        this.results = statement.executeQuery();
+        this.hasRow = results.next();
+    }
+
+    // Query must select whole rows from Servers, for example "SELECT * FROM Servers WHERE Country = ?"
+    public static Stream<Server> stream(Connection conn, String serversQuery, Object... params) throws SQLException {
+        return stream(open(conn, String.format(AGGREGATE, serversQuery), false, params));
+    }
+
+    // For the old Servers × PlayerHistory × Mods joins, rows must be ordered by Address, Port
+    public static Stream<Server> streamJoined(Connection conn, String joinedQuery, Object... params) throws SQLException {
+        return stream(open(conn, joinedQuery, true, params));
+    }
+
+    public static ServerReader iterator(Connection conn, String serversQuery, Object... params) throws SQLException {
+        return open(conn, String.format(AGGREGATE, serversQuery), false, params);
+    }
+
+    // The ordering has to be applied outside the aggregate wrapper, a subquery's ORDER BY isn't guaranteed to survive the joins
+    static ServerReader iterator(Connection conn, String serversQuery, String orderBy, List<Object> params) throws SQLException {
+        return open(conn, String.format(AGGREGATE, serversQuery) + " ORDER BY " + orderBy, false, params.toArray());
+    }
+
+    static Stream<Server> stream(ServerReader reader) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(reader, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(reader::close);
+    }
+
+    private static ServerReader open(Connection conn, String sql, boolean joined, Object... params) throws SQLException {
+        // pgjdbc only uses a cursor when autocommit is off and a fetch size is set
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+
+        PreparedStatement statement = null;
+        try {
+            statement = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(DEFAULT_FETCH_SIZE);
+            for (int i = 0; i < params.length; i++) {
+                statement.setObject(i + 1, params[i]);
+            }
+
+            return new ServerReader(conn, statement, autoCommit, joined);
+        } catch (SQLException e) {
+            if (statement != null) statement.close();
+            conn.rollback();
+            conn.setAutoCommit(autoCommit);
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (!hasRow) close();
+        return hasRow;
+    }
+
+    @Override
+    public Server next() {
+        if (!hasNext()) throw new NoSuchElementException();
+
+        try {
+            return joined ? readJoined() : readAggregated();
+        } catch (SQLException e) {
+            close();
+            throw new IllegalStateException("Failed to read server", e);
+        }
+    }
+
+    private Server readAggregated() throws SQLException {
+        Server.Builder server = readServer(results);
+        List<Player> players = new ArrayList<>();
+        List<Mod> mods = new ArrayList<>();
+
+        Array names = results.getArray("player_names");
+        if (names != null) {
+            String[] nameValues = (String[]) names.getArray();
+            String[] uuids = (String[]) results.getArray("player_uuids").getArray();
+            Long[] firstSeen = (Long[]) results.getArray("player_firstseens").getArray();
+            Long[] lastSeen = (Long[]) results.getArray("player_lastseens").getArray();
+
+            for (int i = 0; i < nameValues.length; i++) {
+                players.add(new Player(nameValues[i], uuids[i], firstSeen[i], lastSeen[i]));
+            }
+        }
+
+        Array modIds = results.getArray("mod_ids");
+        if (modIds != null) {
+            String[] ids = (String[]) modIds.getArray();
+            String[] markers = (String[]) results.getArray("mod_markers").getArray();
+
+            for (int i = 0; i < ids.length; i++) {
+                mods.add(ModInterner.intern(ids[i], markers[i]));
+            }
+        }
+
+        hasRow = results.next();
+        return server.setPlayers(players).setMods(mods).build();
+    }
+
+    // Folds consecutive rows of the same server, players and mods are deduplicated since the join repeats them
+    private Server readJoined() throws SQLException {
+        String address = results.getString("address");
+        int port = results.getInt("port");
+        Server.Builder server = readServer(results);
+        Map<String, Player> players = new LinkedHashMap<>();
+        Map<String, Mod> mods = new LinkedHashMap<>();
+
+        do {
+            if (results.getString("playername") != null) {
+                players.putIfAbsent(results.getString("playeruuid"), new Player(results.getString("playername"), results.getString("playeruuid"), results.getLong("lastseen"), System.currentTimeMillis() / 1000));
+            }
+
+            if (results.getString("modid") != null) {
+                mods.putIfAbsent(results.getString("modid"), ModInterner.intern(results.getString("modid"), results.getString("modmarker")));
+            }
+
+            hasRow = results.next();
+        } while (hasRow && address.equals(results.getString("address")) && port == results.getInt("port"));
+
+        return server.setPlayers(new ArrayList<>(players.values())).setMods(new ArrayList<>(mods.values())).build();
+    }
+
+    private static Server.Builder readServer(ResultSet results) throws SQLException {
+        String type = results.getString("type");
+
+        return new Server.Builder()
+                .setAddress(results.getString("address"))
+                .setPort(results.getInt("port"))
+                .setServerType(type != null ? ServerType.valueOf(type) : null)
+                .setMotd(results.getString("motd"))
+                .setVersion(results.getString("version"))
+                .setFirstSeen(results.getLong("firstseen"))
+                .setLastSeen(results.getLong("lastseen"))
+                .setProtocol((Integer) results.getObject("protocol"))
+                .setCountry(results.getString("country"))
+                .setAsn(results.getString("asn"))
+                .setReverseDns(results.getString("reversedns"))
+                .setOrganization(results.getString("organization"))
+                .setWhitelist((Boolean) results.getObject("whitelist"))
+                .setEnforceSecure((Boolean) results.getObject("enforceSecure"))
+                .setCracked((Boolean) results.getObject("cracked"))
+                .setPreventsReports((Boolean) results.getObject("preventsReports"))
+                .setMaxPlayers((Integer) results.getObject("maxPlayers"))
+                .setOnlinePlayers((Integer) results.getObject("onlinePlayers"))
+                .setTimesSeen(results.getInt("timesSeen"))
+                .setFmlNetworkVersion((Integer) results.getObject("fmlnetworkversion"));
+    }
+
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        hasRow = false;
+
+        try {
+            results.close();
+            statement.close();
+            conn.commit();
+            conn.setAutoCommit(autoCommit);
+        } catch (SQLException ignored) {}
+    }
+}
@@ -0,0 +1,118 @@
+package xyz.funtimes909.serverseekerv2_core.database;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+// Runs Snapshots.maintain on a background thread, every scanner can start one since only one pass runs at a time
+public class SnapshotMaintenance implements AutoCloseable {
+    private final DataSource dataSource;
+    private final Consumer<SQLException> errorHandler;
+    private final int daysAhead;
+    private final Duration rawRetention;
+    private final Duration hourlyRetention;
+    private final Duration dailyRetention;
+    private final ScheduledExecutorService executor;
+
+    private SnapshotMaintenance(Builder builder) {
+        this.dataSource = builder.dataSource;
+        this.errorHandler = builder.errorHandler;
+        this.daysAhead = builder.daysAhead;
+        this.rawRetention = builder.rawRetention;
+        this.hourlyRetention = builder.hourlyRetention;
+        this.dailyRetention = builder.dailyRetention;
+
+        this.executor = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "SnapshotMaintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        executor.scheduleWithFixedDelay(this::runOnce, 0, builder.interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    // Returns false if another scanner held the maintenance lock
+    public boolean runOnce() {
+        try (Connection conn = dataSource.getConnection()) {
+            return Snapshots.maintain(conn, System.currentTimeMillis() / 1000, daysAhead, rawRetention, hourlyRetention, dailyRetention);
+        } catch (SQLException e) {
+            // Never let an exception escape, the executor would silently stop scheduling
+            fail(e);
+            return false;
+        } catch (RuntimeException e) {
+            // A bad partition name or a driver bug is reported like any other failure, the next run tries again
+            fail(new SQLException("Snapshot maintenance failed", e));
+            return false;
+        }
+    }
+
+    private void fail(SQLException e) {
+        try {
+            errorHandler.accept(e);
+        } catch (RuntimeException ignored) {}
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+    }
+
+    public static class Builder {
+        private DataSource dataSource;
+        private Consumer<SQLException> errorHandler = e -> {};
+        private Duration interval = Duration.ofHours(1);
+        private int daysAhead = 2;
+        private Duration rawRetention = Duration.ofDays(7);
+        private Duration hourlyRetention = Duration.ofDays(90);
+        private Duration dailyRetention;
+
+        // Setters
+        public Builder setDataSource(DataSource dataSource) {
+            this.dataSource = dataSource;
+            return this;
+        }
+
+        public Builder setErrorHandler(Consumer<SQLException> errorHandler) {
+            this.errorHandler = errorHandler;
+            return this;
+        }
+
+        public Builder setInterval(Duration interval) {
+            this.interval = interval;
+            return this;
+        }
+
+        public Builder setDaysAhead(int daysAhead) {
+            this.daysAhead = daysAhead;
+            return this;
+        }
+
+        public Builder setRawRetention(Duration rawRetention) {
+            this.rawRetention = rawRetention;
+            return this;
+        }
+
+        public Builder setHourlyRetention(Duration hourlyRetention) {
+            this.hourlyRetention = hourlyRetention;
+            return this;
+        }
+
+        // Null keeps daily buckets forever
+        public Builder setDailyRetention(Duration dailyRetention) {
+            this.dailyRetention = dailyRetention;
+            return this;
+        }
+
+        public SnapshotMaintenance build() {
+            if (dataSource == null) throw new IllegalStateException("A DataSource is required");
+            if (hourlyRetention.compareTo(rawRetention) < 0) throw new IllegalStateException("Hourly retention can't be shorter than raw retention");
+            return new SnapshotMaintenance(this);
+        }
+    }
+}
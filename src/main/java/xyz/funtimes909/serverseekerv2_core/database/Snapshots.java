@@ -0,0 +1,235 @@
+package xyz.funtimes909.serverseekerv2_core.database;
+
+import xyz.funtimes909.serverseekerv2_core.records.PlayerCountSample;
+import xyz.funtimes909.serverseekerv2_core.records.Server;
+
+import java.sql.*;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+// Player count history, every sighting appends a row to ServerSnapshots which is range partitioned by UTC day on SeenAt
+// Old days are rolled up into ServerSnapshotsHourly and their partition dropped, old hours are rolled up again into ServerSnapshotsDaily
+public class Snapshots {
+    private static final long HOUR = 3600;
+    private static final long DAY = 86400;
+    private static final String PARTITION_PREFIX = "serversnapshots_";
+    private static final DateTimeFormatter PARTITION_DATE = DateTimeFormatter.BASIC_ISO_DATE;
+
+    // Different from the migration lock, only one maintenance pass runs at a time across every scanner
+    private static final long LOCK_KEY = 0x536E617073686F74L;
+
+    static final String INSERT_SNAPSHOT = "INSERT INTO ServerSnapshots (Address, Port, SeenAt, OnlinePlayers, MaxPlayers) VALUES (?, ?, ?, ?, ?)";
+    static final String SNAPSHOT_COLUMNS = "Address, Port, SeenAt, OnlinePlayers, MaxPlayers";
+
+    private static final String MERGE_BUCKET = "ON CONFLICT (Address, Port, PeriodStart) DO UPDATE SET " +
+            "Samples = %1$s.Samples + EXCLUDED.Samples," +
+            "SumOnline = %1$s.SumOnline + EXCLUDED.SumOnline," +
+            "MinOnline = LEAST(%1$s.MinOnline, EXCLUDED.MinOnline)," +
+            "MaxOnline = GREATEST(%1$s.MaxOnline, EXCLUDED.MaxOnline)," +
+            "MaxPlayers = GREATEST(%1$s.MaxPlayers, EXCLUDED.MaxPlayers)";
+
+    private static final String ROLLUP_RAW = "INSERT INTO ServerSnapshotsHourly (Address, Port, PeriodStart, Samples, SumOnline, MinOnline, MaxOnline, MaxPlayers) " +
+            "SELECT Address, Port, SeenAt / " + HOUR + " * " + HOUR + ", COUNT(OnlinePlayers), COALESCE(SUM(OnlinePlayers), 0), MIN(OnlinePlayers), MAX(OnlinePlayers), MAX(MaxPlayers) " +
+            "FROM %s WHERE SeenAt < ? GROUP BY 1, 2, 3 " +
+            String.format(MERGE_BUCKET, "ServerSnapshotsHourly");
+
+    private static final String ROLLUP_HOURLY = "INSERT INTO ServerSnapshotsDaily (Address, Port, PeriodStart, Samples, SumOnline, MinOnline, MaxOnline, MaxPlayers) " +
+            "SELECT Address, Port, PeriodStart / " + DAY + " * " + DAY + ", SUM(Samples), SUM(SumOnline), MIN(MinOnline), MAX(MaxOnline), MAX(MaxPlayers) " +
+            "FROM ServerSnapshotsHourly WHERE PeriodStart < ? GROUP BY 1, 2, 3 " +
+            String.format(MERGE_BUCKET, "ServerSnapshotsDaily");
+
+    // Finest data available for each period, raw rows first then hourly then daily buckets
+    private static final String HISTORY = "SELECT SeenAt AS PeriodStart, 1 AS Samples, OnlinePlayers::FLOAT8 AS AverageOnline, OnlinePlayers AS MinOnline, OnlinePlayers AS MaxOnline, MaxPlayers " +
+            "FROM ServerSnapshots WHERE Address = ? AND Port = ? AND SeenAt >= ? AND SeenAt < ? " +
+            "UNION ALL SELECT PeriodStart, Samples, SumOnline::FLOAT8 / NULLIF(Samples, 0), MinOnline, MaxOnline, MaxPlayers " +
+            "FROM ServerSnapshotsHourly WHERE Address = ? AND Port = ? AND PeriodStart >= ? AND PeriodStart < ? " +
+            "UNION ALL SELECT PeriodStart, Samples, SumOnline::FLOAT8 / NULLIF(Samples, 0), MinOnline, MaxOnline, MaxPlayers " +
+            "FROM ServerSnapshotsDaily WHERE Address = ? AND Port = ? AND PeriodStart >= ? AND PeriodStart < ? " +
+            "ORDER BY PeriodStart";
+
+    static void bind(PreparedStatement insertSnapshot, Server server) throws SQLException {
+        insertSnapshot.setString(1, server.getAddress());
+        insertSnapshot.setInt(2, server.getPort());
+        insertSnapshot.setLong(3, server.getLastSeen());
+        insertSnapshot.setObject(4, server.getOnlinePlayers(), Types.INTEGER);
+        insertSnapshot.setObject(5, server.getMaxPlayers(), Types.INTEGER);
+    }
+
+    public static List<PlayerCountSample> history(Connection conn, String address, int port, long from, long to) throws SQLException {
+        List<PlayerCountSample> samples = new ArrayList<>();
+
+        try (PreparedStatement statement = conn.prepareStatement(HISTORY)) {
+            for (int i = 0; i < 3; i++) {
+                statement.setString(i * 4 + 1, address);
+                statement.setInt(i * 4 + 2, port);
+                statement.setLong(i * 4 + 3, from);
+                statement.setLong(i * 4 + 4, to);
+            }
+
+            try (ResultSet results = statement.executeQuery()) {
+                while (results.next()) {
+                    samples.add(new PlayerCountSample(
+                            results.getLong("periodstart"),
+                            results.getInt("samples"),
+                            (Double) results.getObject("averageonline"),
+                            (Integer) results.getObject("minonline"),
+                            (Integer) results.getObject("maxonline"),
+                            (Integer) results.getObject("maxplayers")
+                    ));
+                }
+            }
+        }
+
+        return samples;
+    }
+
+    // Create the partitions for today and the next daysAhead days, rows for a missing day land in the default partition
+    // Returns false without doing anything if another scanner is already maintaining the table
+    public static boolean ensurePartitions(Connection conn, long now, int daysAhead) throws SQLException {
+        if (!tryLock(conn)) return false;
+
+        try {
+            createPartitions(conn, now, daysAhead);
+            return true;
+        } finally {
+            unlock(conn);
+        }
+    }
+
+    // One full maintenance pass, dailyRetention may be null to keep daily buckets forever
+    public static boolean maintain(Connection conn, long now, int daysAhead, Duration rawRetention, Duration hourlyRetention, Duration dailyRetention) throws SQLException {
+        if (!tryLock(conn)) return false;
+
+        try {
+            createPartitions(conn, now, daysAhead);
+            rollup(conn, now, rawRetention, hourlyRetention, dailyRetention);
+            return true;
+        } finally {
+            unlock(conn);
+        }
+    }
+
+    private static boolean tryLock(Connection conn) throws SQLException {
+        try (Statement statement = conn.createStatement();
+             ResultSet acquired = statement.executeQuery("SELECT pg_try_advisory_lock(" + LOCK_KEY + ")")) {
+            acquired.next();
+            return acquired.getBoolean(1);
+        }
+    }
+
+    private static void unlock(Connection conn) throws SQLException {
+        try (Statement statement = conn.createStatement()) {
+            statement.execute("SELECT pg_advisory_unlock(" + LOCK_KEY + ")");
+        }
+    }
+
+    private static void createPartitions(Connection conn, long now, int daysAhead) throws SQLException {
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+
+        try (Statement statement = conn.createStatement()) {
+            TreeMap<Long, String> existing = partitions(statement);
+            long today = Math.floorDiv(now, DAY);
+
+            for (long day = today; day <= today + daysAhead; day++) {
+                if (existing.containsKey(day)) continue;
+                createPartition(statement, day);
+                conn.commit();
+            }
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
+    private static void rollup(Connection conn, long now, Duration rawRetention, Duration hourlyRetention, Duration dailyRetention) throws SQLException {
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+
+        try (Statement statement = conn.createStatement()) {
+            // Whole days only, a partition is dropped once its last second is older than the raw retention
+            long rawCutoff = Math.floorDiv(now - rawRetention.toSeconds(), DAY) * DAY;
+
+            for (var partition : partitions(statement).headMap(rawCutoff / DAY).entrySet()) {
+                rollupRaw(conn, partition.getValue(), rawCutoff);
+
+                // Dropping the table throws away a whole day without the dead tuples or vacuum work a DELETE would leave
+                statement.execute("DROP TABLE " + partition.getValue());
+                conn.commit();
+            }
+
+            // Stragglers in the default partition are rolled up the same way but have to be deleted row by row
+            rollupRaw(conn, "ServerSnapshotsDefault", rawCutoff);
+            try (PreparedStatement delete = conn.prepareStatement("DELETE FROM ServerSnapshotsDefault WHERE SeenAt < ?")) {
+                delete.setLong(1, rawCutoff);
+                delete.executeUpdate();
+            }
+            conn.commit();
+
+            long hourlyCutoff = Math.floorDiv(now - hourlyRetention.toSeconds(), DAY) * DAY;
+            try (PreparedStatement merge = conn.prepareStatement(ROLLUP_HOURLY);
+                 PreparedStatement delete = conn.prepareStatement("DELETE FROM ServerSnapshotsHourly WHERE PeriodStart < ?")) {
+                merge.setLong(1, hourlyCutoff);
+                merge.executeUpdate();
+                delete.setLong(1, hourlyCutoff);
+                delete.executeUpdate();
+            }
+            conn.commit();
+
+            if (dailyRetention != null) {
+                try (PreparedStatement delete = conn.prepareStatement("DELETE FROM ServerSnapshotsDaily WHERE PeriodStart < ?")) {
+                    delete.setLong(1, now - dailyRetention.toSeconds());
+                    delete.executeUpdate();
+                }
+                conn.commit();
+            }
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
+    private static void rollupRaw(Connection conn, String table, long cutoff) throws SQLException {
+        try (PreparedStatement merge = conn.prepareStatement(String.format(ROLLUP_RAW, table))) {
+            merge.setLong(1, cutoff);
+            merge.executeUpdate();
+        }
+    }
+
+    // Rows that already arrived in the default partition for this day are moved over, otherwise the attach would fail
+    private static void createPartition(Statement statement, long day) throws SQLException {
+        String name = PARTITION_PREFIX + LocalDate.ofEpochDay(day).format(PARTITION_DATE);
+        long from = day * DAY;
+        long to = from + DAY;
+
+        statement.execute("CREATE TABLE IF NOT EXISTS " + name + " (LIKE ServerSnapshots INCLUDING DEFAULTS)");
+        statement.execute("WITH moved AS (DELETE FROM ServerSnapshotsDefault WHERE SeenAt >= " + from + " AND SeenAt < " + to + " RETURNING " + SNAPSHOT_COLUMNS + ") " +
+                "INSERT INTO " + name + " (" + SNAPSHOT_COLUMNS + ") SELECT " + SNAPSHOT_COLUMNS + " FROM moved");
+        statement.execute("ALTER TABLE ServerSnapshots ATTACH PARTITION " + name + " FOR VALUES FROM (" + from + ") TO (" + to + ")");
+    }
+
+    // Day partitions keyed by epoch day, the default partition isn't included
+    private static TreeMap<Long, String> partitions(Statement statement) throws SQLException {
+        TreeMap<Long, String> partitions = new TreeMap<>();
+
+        try (ResultSet results = statement.executeQuery("SELECT c.relname FROM pg_inherits i " +
+                "JOIN pg_class c ON c.oid = i.inhrelid " +
+                "WHERE i.inhparent = 'serversnapshots'::regclass")) {
+            while (results.next()) {
+                String name = results.getString(1);
+                if (!name.startsWith(PARTITION_PREFIX)) continue;
+                partitions.put(LocalDate.parse(name.substring(PARTITION_PREFIX.length()), PARTITION_DATE).toEpochDay(), name);
+            }
+        }
+
+        return partitions;
+    }
+}
@@ -0,0 +1,257 @@
+package xyz.funtimes909.serverseekerv2_core.database;
+
+import xyz.funtimes909.serverseekerv2_core.records.Server;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+
+public class WriteBehindQueue implements AutoCloseable {
+    private final DataSource dataSource;
+    private final BlockingQueue<Server> queue;
+    private final List<Thread> writers = new ArrayList<>();
+    private final BiConsumer<Server, SQLException> failureHandler;
+    private final int batchSize;
+    private final long maxDelayNanos;
+    private final AtomicLong submitted = new AtomicLong();
+    private final Object completedLock = new Object();
+    // Producers hold the read side from the closed check until their server is in the queue, close() takes the write side
+    // so nothing can be enqueued after the final drain
+    private final ReentrantReadWriteLock closeLock = new ReentrantReadWriteLock();
+    private long completed;
+    private volatile boolean closed;
+
+    public long getSubmitted() {
+        return submitted.get();
+    }
+
+    public long getCompleted() {
+        synchronized (completedLock) {
+            return completed;
+        }
+    }
+
+    public int getQueued() {
+        return queue.size();
+    }
+
+    private WriteBehindQueue(Builder builder) {
+        this.dataSource = builder.dataSource;
+        this.queue = new ArrayBlockingQueue<>(builder.capacity);
+        this.failureHandler = builder.failureHandler;
+        this.batchSize = builder.batchSize;
+        this.maxDelayNanos = builder.maxDelay.toNanos();
+
+        for (int i = 0; i < builder.writerThreads; i++) {
+            Thread writer = new Thread(this::drain, "WriteBehindQueue-" + i);
+            writer.setDaemon(true);
+            writer.start();
+            writers.add(writer);
+        }
+    }
+
+    // Blocks until there is room in the queue
+    public void submit(Server server) throws InterruptedException {
+        closeLock.readLock().lockInterruptibly();
+        try {
+            ensureOpen();
+            queue.put(server);
+            submitted.incrementAndGet();
+        } finally {
+            closeLock.readLock().unlock();
+        }
+    }
+
+    // Returns false instead of blocking if the queue is full
+    public boolean offer(Server server) {
+        closeLock.readLock().lock();
+        try {
+            ensureOpen();
+            if (!queue.offer(server)) return false;
+            submitted.incrementAndGet();
+            return true;
+        } finally {
+            closeLock.readLock().unlock();
+        }
+    }
+
+    public boolean offer(Server server, Duration timeout) throws InterruptedException {
+        closeLock.readLock().lockInterruptibly();
+        try {
+            ensureOpen();
+            if (!queue.offer(server, timeout.toNanos(), TimeUnit.NANOSECONDS)) return false;
+            submitted.incrementAndGet();
+            return true;
+        } finally {
+            closeLock.readLock().unlock();
+        }
+    }
+
+    // Wait until every server submitted before this call has been written (or reported as failed)
+    public void flush() throws InterruptedException {
+        long target = submitted.get();
+
+        synchronized (completedLock) {
+            while (completed < target) {
+                completedLock.wait();
+            }
+        }
+    }
+
+    // Stop accepting servers, write everything still queued and wait for the writers to exit
+    @Override
+    public void close() throws InterruptedException {
+        // Waits for producers blocked on a full queue, the writers are still running and make room for them
+        closeLock.writeLock().lockInterruptibly();
+        try {
+            closed = true;
+        } finally {
+            closeLock.writeLock().unlock();
+        }
+
+        for (Thread writer : writers) {
+            writer.join();
+        }
+
+        // Catch anything a producer enqueued while the writers were exiting
+        List<Server> remaining = new ArrayList<>();
+        while (queue.drainTo(remaining, batchSize) > 0) {
+            write(remaining);
+            remaining.clear();
+        }
+    }
+
+    public Thread registerShutdownHook() {
+        Thread hook = new Thread(() -> {
+            try {
+                close();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "WriteBehindQueue-shutdown");
+
+        Runtime.getRuntime().addShutdownHook(hook);
+        return hook;
+    }
+
+    private void ensureOpen() {
+        if (closed) throw new IllegalStateException("WriteBehindQueue is closed");
+    }
+
+    private void drain() {
+        List<Server> batch = new ArrayList<>(batchSize);
+
+        while (!closed || !queue.isEmpty()) {
+            try {
+                Server first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+
+                // Fill the batch until it is full or the oldest server has waited long enough
+                long deadline = System.nanoTime() + maxDelayNanos;
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    if (batch.size() >= batchSize || closed) break;
+
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) break;
+
+                    Server next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                // Never drop what was already taken off the queue, write it and let close() drain the rest
+                closed = true;
+            }
+
+            if (!batch.isEmpty()) {
+                write(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    // Never throws, a writer thread that died here would leave flush() and a full queue waiting forever
+    private void write(List<Server> batch) {
+        try (Connection conn = dataSource.getConnection()) {
+            Map<Server, SQLException> failures = Database.updateServers(conn, batch);
+            failures.forEach(this::fail);
+        } catch (SQLException e) {
+            for (Server server : batch) {
+                fail(server, e);
+            }
+        } catch (RuntimeException e) {
+            SQLException wrapped = new SQLException("Writing a batch of " + batch.size() + " servers failed", e);
+            for (Server server : batch) {
+                fail(server, wrapped);
+            }
+        } finally {
+            synchronized (completedLock) {
+                completed += batch.size();
+                completedLock.notifyAll();
+            }
+        }
+    }
+
+    private void fail(Server server, SQLException e) {
+        try {
+            failureHandler.accept(server, e);
+        } catch (RuntimeException ignored) {}
+    }
+
+    public static class Builder {
+        private DataSource dataSource;
+        private BiConsumer<Server, SQLException> failureHandler = (server, e) -> {};
+        private int capacity = 10000;
+        private int writerThreads = 2;
+        private int batchSize = 500;
+        private Duration maxDelay = Duration.ofSeconds(1);
+
+        // Setters
+        public Builder setDataSource(DataSource dataSource) {
+            this.dataSource = dataSource;
+            return this;
+        }
+
+        public Builder setFailureHandler(BiConsumer<Server, SQLException> failureHandler) {
+            this.failureHandler = failureHandler;
+            return this;
+        }
+
+        public Builder setCapacity(int capacity) {
+            this.capacity = capacity;
+            return this;
+        }
+
+        public Builder setWriterThreads(int writerThreads) {
+            this.writerThreads = writerThreads;
+            return this;
+        }
+
+        public Builder setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        public Builder setMaxDelay(Duration maxDelay) {
+            this.maxDelay = maxDelay;
+            return this;
+        }
+
+        public WriteBehindQueue build() {
+            if (dataSource == null) throw new IllegalStateException("A DataSource is required");
+            return new WriteBehindQueue(this);
+        }
+    }
+}
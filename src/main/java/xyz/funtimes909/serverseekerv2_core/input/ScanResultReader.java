@@ -0,0 +1,495 @@
+package xyz.funtimes909.serverseekerv2_core.input;
+
+import xyz.funtimes909.serverseekerv2_core.pipeline.ScanPipeline;
+import xyz.funtimes909.serverseekerv2_core.types.ScanFormat;
+import xyz.funtimes909.serverseekerv2_core.util.OffHeapLongSet;
+import xyz.funtimes909.serverseekerv2_core.util.ServerKey;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Reads masscan and zmap output straight out of a memory mapped file, every open port becomes a ServerKey without a String per line
+// Files can be far larger than one mapping, so they are mapped a window at a time and a record crossing the end starts the next window
+// getPosition() is always the end of a record that was fully handed to the sink, save it and pass it to setStartOffset to resume after a crash
+public class ScanResultReader implements AutoCloseable {
+    public interface Sink {
+        void accept(long key) throws InterruptedException;
+    }
+
+    private static final int DEFAULT_WINDOW = 256 * 1024 * 1024;
+    private static final int TCP = 6;
+    private static final long SKIP = -1;
+
+    // masscan record types, the file header is a record of type 'm' so it is skipped like any other
+    private static final int OPEN_V1 = 1;
+    private static final int OPEN_V2 = 6;
+
+    private static final byte[] IP = "\"ip\"".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] PORT = "\"port\"".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] PROTO = "\"proto\"".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] STATUS = "\"status\"".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] OPEN = "open".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TCP_NAME = "tcp".getBytes(StandardCharsets.US_ASCII);
+
+    private final Path file;
+    private final FileChannel channel;
+    private final ScanFormat format;
+    private final OffHeapLongSet seen;
+    private final int defaultPort;
+    private final int window;
+    private final long startOffset;
+
+    // zmap columns, found in the header line
+    private int addressColumn = 0;
+    private int portColumn = -1;
+    private int successColumn = -1;
+
+    // Only written by the thread calling read, volatile so progress can be watched from elsewhere
+    private volatile long position;
+    private volatile long targets;
+    private volatile long duplicates;
+    private volatile long skipped;
+
+    public Path getFile() {
+        return file;
+    }
+
+    public ScanFormat getFormat() {
+        return format;
+    }
+
+    public long getPosition() {
+        return position;
+    }
+
+    public long getTargets() {
+        return targets;
+    }
+
+    public long getDuplicates() {
+        return duplicates;
+    }
+
+    public long getSkipped() {
+        return skipped;
+    }
+
+    public long size() throws IOException {
+        return channel.size();
+    }
+
+    private ScanResultReader(Builder builder, FileChannel channel, ScanFormat format) {
+        this.file = builder.file;
+        this.channel = channel;
+        this.format = format;
+        this.seen = builder.seen;
+        this.defaultPort = builder.defaultPort;
+        this.window = builder.window;
+        this.startOffset = builder.startOffset;
+        this.position = builder.startOffset;
+    }
+
+    // Hands every new open port to the sink in file order, returns how many were handed over
+    public long read(Sink sink) throws IOException, InterruptedException {
+        long size = channel.size();
+        long offset = Math.min(startOffset, size);
+        long delivered = targets;
+
+        if (format == ScanFormat.ZMAP_CSV) {
+            long headerEnd = readHeader(size);
+            offset = Math.max(offset, headerEnd);
+        }
+
+        // A saved offset is always at a record boundary, anything else lands mid line and that line is skipped
+        if (format != ScanFormat.MASSCAN_BINARY && offset > 0 && offset < size && byteAt(offset - 1) != '\n') {
+            offset = nextLine(offset, size);
+        }
+
+        position = offset;
+        while (offset < size) {
+            int length = (int) Math.min(window, size - offset);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+            boolean last = offset + length == size;
+
+            int consumed = format == ScanFormat.MASSCAN_BINARY
+                    ? readRecords(buffer, length, last, offset, sink)
+                    : readLines(buffer, length, last, offset, sink);
+
+            if (consumed == 0) throw new IOException("Record at offset " + offset + " doesn't fit in a " + window + " byte window");
+            offset += consumed;
+        }
+
+        return targets - delivered;
+    }
+
+    // Addresses only become Strings here, once per target that survived the dedupe
+    public long feed(ScanPipeline pipeline) throws IOException, InterruptedException {
+        return read(key -> pipeline.submit(ServerKey.address(key), ServerKey.port(key)));
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // Looks at the start of a file, masscan always writes its binary header and list comments first
+    public static ScanFormat detect(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer start = ByteBuffer.allocate(16);
+            while (start.hasRemaining() && channel.read(start) > 0) { }
+            start.flip();
+
+            String head = StandardCharsets.ISO_8859_1.decode(start).toString();
+            if (head.startsWith("masscan/")) return ScanFormat.MASSCAN_BINARY;
+
+            String trimmed = head.stripLeading();
+            if (trimmed.startsWith("#") || trimmed.startsWith("open ")) return ScanFormat.MASSCAN_LIST;
+            if (trimmed.startsWith("[") || trimmed.startsWith("{")) return ScanFormat.MASSCAN_JSON;
+            return ScanFormat.ZMAP_CSV;
+        }
+    }
+
+    private int readLines(ByteBuffer buffer, int length, boolean last, long base, Sink sink) throws InterruptedException {
+        int start = 0;
+
+        while (start < length) {
+            int end = start;
+            while (end < length && buffer.get(end) != '\n') end++;
+
+            // The rest of the line is in the next window, unless this is the end of the file
+            if (end == length && !last) break;
+
+            int to = end > start && buffer.get(end - 1) == '\r' ? end - 1 : end;
+            long key = switch (format) {
+                case MASSCAN_JSON -> parseJson(buffer, start, to);
+                case MASSCAN_LIST -> parseList(buffer, start, to);
+                default -> parseCsv(buffer, start, to);
+            };
+
+            start = Math.min(end + 1, length);
+            deliver(key, sink, base + start);
+        }
+
+        return start;
+    }
+
+    private int readRecords(ByteBuffer buffer, int length, boolean last, long base, Sink sink) throws IOException, InterruptedException {
+        int start = 0;
+
+        while (start < length) {
+            int type = buffer.get(start) & 0xFF;
+
+            // Length is big endian, seven bits per byte with the top bit set while more follow
+            int index = start + 1;
+            int recordLength = 0;
+            boolean complete = false;
+            while (index < length && recordLength >= 0) {
+                int b = buffer.get(index++) & 0xFF;
+                recordLength = (recordLength << 7) | (b & 0x7F);
+                if ((b & 0x80) == 0) {
+                    complete = true;
+                    break;
+                }
+            }
+
+            if (recordLength < 0) throw new IOException("Corrupt record length at offset " + (base + start));
+            if (!complete || recordLength > length - index) {
+                if (last) throw new IOException("Truncated record at offset " + (base + start));
+                break;
+            }
+
+            long key = SKIP;
+            if (type == OPEN_V1 && recordLength >= 12) {
+                key = ServerKey.pack(buffer.getInt(index + 4), buffer.getShort(index + 8) & 0xFFFF);
+            } else if (type == OPEN_V2 && recordLength >= 13 && (buffer.get(index + 8) & 0xFF) == TCP) {
+                key = ServerKey.pack(buffer.getInt(index + 4), buffer.getShort(index + 9) & 0xFFFF);
+            }
+
+            start = index + recordLength;
+            deliver(key, sink, base + start);
+        }
+
+        return start;
+    }
+
+    private void deliver(long key, Sink sink, long end) throws InterruptedException {
+        if (key == SKIP) {
+            skipped++;
+        } else if (seen != null && seen.contains(key)) {
+            duplicates++;
+        } else {
+            // Only marked as seen once the sink took it, a target the sink failed on is handed over again after resuming
+            sink.accept(key);
+            if (seen != null) seen.add(key);
+            targets++;
+        }
+
+        position = end;
+    }
+
+    // {"ip": "1.2.3.4", "timestamp": "1700000000", "ports": [{"port": 25565, "proto": "tcp", "status": "open", ...}]}
+    // Banner records repeat the port without a status, only open ones are kept
+    // masscan always writes the keys in this order, so every search starts where the previous one stopped
+    private static long parseJson(ByteBuffer buffer, int from, int to) {
+        int ip = valueAfter(buffer, from, to, IP);
+        int port = valueAfter(buffer, Math.max(ip, from), to, PORT);
+        int status = valueAfter(buffer, Math.max(port, from), to, STATUS);
+        if (ip < 0 || port < 0 || status < 0) return SKIP;
+        if (!startsWith(buffer, status + 1, to, OPEN)) return SKIP;
+
+        int proto = valueAfter(buffer, port, status, PROTO);
+        if (proto >= 0 && !startsWith(buffer, proto + 1, to, TCP_NAME)) return SKIP;
+
+        if (buffer.get(ip) != '"') return SKIP;
+        long address = parseIPv4(buffer, ip + 1, to, '"');
+        int number = parsePort(buffer, port, to);
+        if (address < 0 || number < 0) return SKIP;
+
+        return ServerKey.pack((int) address, number);
+    }
+
+    // open tcp 25565 1.2.3.4 1700000000, comments and banner lines are skipped
+    private static long parseList(ByteBuffer buffer, int from, int to) {
+        if (!startsWith(buffer, from, to, OPEN)) return SKIP;
+
+        int proto = field(buffer, from, to, 1);
+        if (!startsWith(buffer, proto, to, TCP_NAME) || proto + 3 >= to || buffer.get(proto + 3) != ' ') return SKIP;
+
+        int port = parsePort(buffer, field(buffer, from, to, 2), to);
+        int ip = field(buffer, from, to, 3);
+        if (port < 0 || ip < 0) return SKIP;
+
+        long address = parseIPv4(buffer, ip, to, ' ');
+        if (address < 0) return SKIP;
+
+        return ServerKey.pack((int) address, port);
+    }
+
+    private long parseCsv(ByteBuffer buffer, int from, int to) {
+        long address = -1;
+        int port = portColumn < 0 ? defaultPort : -1;
+        int column = 0;
+        int start = from;
+
+        for (int i = from; i <= to; i++) {
+            if (i < to && buffer.get(i) != ',') continue;
+
+            if (column == addressColumn) {
+                address = parseIPv4(buffer, start, i, ',');
+            } else if (column == portColumn) {
+                port = parsePort(buffer, start, i);
+            } else if (column == successColumn && start < i && (buffer.get(start) == '0' || buffer.get(start) == 'f')) {
+                return SKIP;
+            }
+
+            column++;
+            start = i + 1;
+        }
+
+        if (address < 0 || port < 0) return SKIP;
+        return ServerKey.pack((int) address, port);
+    }
+
+    // zmap only writes a header when it was given output fields, a bare list of addresses starts with a digit
+    private long readHeader(long size) throws IOException {
+        if (size == 0) return 0;
+
+        int length = (int) Math.min(size, 64 * 1024);
+        ByteBuffer head = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+        if (Character.isDigit(head.get(0))) return 0;
+
+        int end = 0;
+        while (end < length && head.get(end) != '\n') end++;
+
+        byte[] line = new byte[end];
+        head.get(0, line);
+        String[] columns = new String(line, StandardCharsets.US_ASCII).strip().split(",");
+
+        addressColumn = -1;
+        for (int i = 0; i < columns.length; i++) {
+            switch (columns[i].strip()) {
+                case "saddr" -> addressColumn = i;
+                case "sport" -> portColumn = i;
+                case "success" -> successColumn = i;
+            }
+        }
+
+        if (addressColumn < 0) throw new IOException("zmap output without a saddr column");
+        return Math.min(end + 1, size);
+    }
+
+    private byte byteAt(long offset) throws IOException {
+        ByteBuffer one = ByteBuffer.allocate(1);
+        channel.read(one, offset);
+        return one.get(0);
+    }
+
+    private long nextLine(long offset, long size) throws IOException {
+        ByteBuffer chunk = ByteBuffer.allocate(8192);
+
+        while (offset < size) {
+            chunk.clear();
+            int read = channel.read(chunk, offset);
+            if (read <= 0) break;
+
+            for (int i = 0; i < read; i++) {
+                if (chunk.get(i) == '\n') return offset + i + 1;
+            }
+            offset += read;
+        }
+
+        return size;
+    }
+
+    // Index of the first byte of the value following "key":, -1 if the key isn't there
+    private static int valueAfter(ByteBuffer buffer, int from, int to, byte[] key) {
+        int index = indexOf(buffer, from, to, key);
+        if (index < 0) return -1;
+
+        index += key.length;
+        while (index < to && (buffer.get(index) == ' ' || buffer.get(index) == ':')) index++;
+        return index < to ? index : -1;
+    }
+
+    private static int indexOf(ByteBuffer buffer, int from, int to, byte[] needle) {
+        byte first = needle[0];
+
+        outer:
+        for (int i = from; i <= to - needle.length; i++) {
+            if (buffer.get(i) != first) continue;
+            for (int j = 1; j < needle.length; j++) {
+                if (buffer.get(i + j) != needle[j]) continue outer;
+            }
+            return i;
+        }
+
+        return -1;
+    }
+
+    private static boolean startsWith(ByteBuffer buffer, int from, int to, byte[] prefix) {
+        if (from < 0 || to - from < prefix.length) return false;
+
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer.get(from + i) != prefix[i]) return false;
+        }
+
+        return true;
+    }
+
+    // Start of the nth space separated field, -1 if the line is shorter
+    private static int field(ByteBuffer buffer, int from, int to, int n) {
+        int index = from;
+
+        for (int i = 0; i < n; i++) {
+            while (index < to && buffer.get(index) != ' ') index++;
+            while (index < to && buffer.get(index) == ' ') index++;
+            if (index >= to) return -1;
+        }
+
+        return index;
+    }
+
+    // Same rules as ServerKey.parseIPv4, reading bytes up to the terminator or the end of the range
+    private static long parseIPv4(ByteBuffer buffer, int from, int to, char terminator) {
+        long address = 0;
+        int octet = 0;
+        int digits = 0;
+        int dots = 0;
+
+        for (int i = from; i < to; i++) {
+            byte c = buffer.get(i);
+            if (c == terminator) break;
+
+            if (c >= '0' && c <= '9') {
+                octet = octet * 10 + (c - '0');
+                if (++digits > 3 || octet > 255) return -1;
+            } else if (c == '.' && digits > 0 && dots < 3) {
+                address = (address << 8) | octet;
+                octet = 0;
+                digits = 0;
+                dots++;
+            } else {
+                return -1;
+            }
+        }
+
+        if (dots != 3 || digits == 0) return -1;
+        return (address << 8) | octet;
+    }
+
+    // Digits up to the first non digit, -1 if there are none or the number isn't a port
+    private static int parsePort(ByteBuffer buffer, int from, int to) {
+        if (from < 0) return -1;
+
+        int port = 0;
+        int digits = 0;
+        for (int i = from; i < to; i++) {
+            byte c = buffer.get(i);
+            if (c < '0' || c > '9') break;
+
+            port = port * 10 + (c - '0');
+            if (++digits > 5) return -1;
+        }
+
+        return digits == 0 || port > 0xFFFF ? -1 : port;
+    }
+
+    public static class Builder {
+        private Path file;
+        private ScanFormat format;
+        private OffHeapLongSet seen;
+        private int defaultPort = 25565;
+        private int window = DEFAULT_WINDOW;
+        private long startOffset;
+
+        // Setters
+        public Builder setFile(Path file) {
+            this.file = file;
+            return this;
+        }
+
+        // Detected from the start of the file when not set
+        public Builder setFormat(ScanFormat format) {
+            this.format = format;
+            return this;
+        }
+
+        // Targets already in the set are skipped, one set can be shared by every file of a scan
+        // Readers sharing a set at the same time may both hand over a target they reach at the same moment
+        public Builder setSeen(OffHeapLongSet seen) {
+            this.seen = seen;
+            return this;
+        }
+
+        // zmap output without a sport column only lists addresses
+        public Builder setDefaultPort(int defaultPort) {
+            this.defaultPort = defaultPort;
+            return this;
+        }
+
+        public Builder setWindowSize(int window) {
+            if (window <= 0) throw new IllegalArgumentException("Window size must be positive");
+            this.window = window;
+            return this;
+        }
+
+        // A getPosition() from an earlier run, the targets before it aren't read again
+        public Builder setStartOffset(long startOffset) {
+            if (startOffset < 0) throw new IllegalArgumentException("Start offset can't be negative");
+            this.startOffset = startOffset;
+            return this;
+        }
+
+        public ScanResultReader build() throws IOException {
+            if (file == null) throw new IllegalStateException("A file is required");
+
+            ScanFormat detected = format != null ? format : detect(file);
+            return new ScanResultReader(this, FileChannel.open(file, StandardOpenOption.READ), detected);
+        }
+    }
+}
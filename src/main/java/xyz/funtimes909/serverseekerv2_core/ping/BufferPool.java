@@ -0,0 +1,32 @@
+package xyz.funtimes909.serverseekerv2_core.ping;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+// Direct buffers are expensive to allocate and only freed by the garbage collector, every ping borrows one instead
+// Only used from the selector thread, so nothing here is synchronized
+class BufferPool {
+    private final int bufferSize;
+    private final int maxPooled;
+    private final ArrayDeque<ByteBuffer> pool = new ArrayDeque<>();
+
+    BufferPool(int bufferSize, int maxPooled) {
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+    }
+
+    ByteBuffer take() {
+        ByteBuffer buffer = pool.poll();
+        return buffer != null ? buffer.clear() : ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    // Buffers of any other size weren't borrowed from here and are left to the garbage collector
+    void release(ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect() || buffer.capacity() != bufferSize) return;
+        if (pool.size() < maxPooled) pool.push(buffer);
+    }
+
+    int bufferSize() {
+        return bufferSize;
+    }
+}
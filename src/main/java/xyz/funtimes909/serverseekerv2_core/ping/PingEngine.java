@@ -0,0 +1,582 @@
+package xyz.funtimes909.serverseekerv2_core.ping;
+
+import xyz.funtimes909.serverseekerv2_core.records.PingResponse;
+import xyz.funtimes909.serverseekerv2_core.records.Server;
+import xyz.funtimes909.serverseekerv2_core.util.GeoLookup;
+import xyz.funtimes909.serverseekerv2_core.util.HTTPUtils;
+import xyz.funtimes909.serverseekerv2_core.util.ServerObjectBuilder;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+// Server List Ping over non blocking sockets, a single selector thread drives every connection so thousands of pings can be in flight
+// Every stage has its own timeout, so the connections in a stage expire in the order they entered it and are kept in a plain queue
+// Servers that hang up on the modern handshake are asked again with the legacy 0xFE ping
+public class PingEngine implements AutoCloseable {
+    private static final int CONNECTING = 0;
+    private static final int WRITING = 1;
+    private static final int READING = 2;
+    private static final String[] STAGES = {"connecting", "writing", "reading"};
+
+    // What the legacy ping claims to be, 1.6.4
+    private static final int LEGACY_PROTOCOL = 74;
+    private static final byte[] PING_HOST = "MC|PingHost".getBytes(StandardCharsets.UTF_16BE);
+
+    private final Selector selector;
+    private final Thread thread;
+    private final Semaphore permits;
+    private final int maxInFlight;
+    private final ConcurrentLinkedQueue<Ping> submitted = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean awake = new AtomicBoolean();
+    private final BufferPool buffers;
+    private final Executor executor;
+    private final ExecutorService ownedExecutor;
+    private final long[] timeouts;
+    private final int protocol;
+    private final int maxResponseSize;
+    private final boolean legacyFallback;
+    private volatile boolean closed;
+
+    // Oldest first queue of the pings in each stage, only touched by the selector thread
+    private final Ping[] heads = new Ping[3];
+    private final Ping[] tails = new Ping[3];
+    private long now;
+
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+    private final LongAdder legacyRetries = new LongAdder();
+
+    private PingEngine(Builder builder) throws IOException {
+        this.selector = Selector.open();
+        this.maxInFlight = builder.maxInFlight;
+        this.permits = new Semaphore(builder.maxInFlight);
+        this.buffers = new BufferPool(builder.bufferSize, builder.maxInFlight);
+        this.timeouts = new long[]{builder.connectTimeout.toNanos(), builder.writeTimeout.toNanos(), builder.readTimeout.toNanos()};
+        this.protocol = builder.protocol;
+        this.maxResponseSize = builder.maxResponseSize;
+        this.legacyFallback = builder.legacyFallback;
+
+        // Building a server looks up geo info, that must never happen on the selector thread
+        if (builder.executor != null) {
+            this.executor = builder.executor;
+            this.ownedExecutor = null;
+        } else {
+            this.ownedExecutor = Executors.newCachedThreadPool(task -> {
+                Thread worker = new Thread(task, "PingEngine-worker");
+                worker.setDaemon(true);
+                return worker;
+            });
+            this.executor = ownedExecutor;
+        }
+
+        this.thread = new Thread(this::run, "PingEngine");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // Blocks while maxInFlight pings are already running, completes exceptionally on timeouts and protocol errors
+    // Addresses should be IP literals, a hostname would be resolved on the selector thread
+    public CompletableFuture<PingResponse> status(String address, int port) throws InterruptedException {
+        if (closed) throw new IllegalStateException("Engine is closed");
+        permits.acquire();
+
+        Ping ping = new Ping(address, port);
+        submitted.add(ping);
+
+        if (closed && submitted.remove(ping)) {
+            permits.release();
+            ping.future.completeExceptionally(new IllegalStateException("Engine is closed"));
+        } else if (!awake.getAndSet(true)) {
+            selector.wakeup();
+        }
+
+        return ping.future;
+    }
+
+    // The response handed to the same builders a blocking client would use, null if the server sent something unusable
+    public CompletableFuture<Server> ping(String address, int port) throws InterruptedException {
+        return status(address, port).thenApplyAsync(PingEngine::build, executor);
+    }
+
+    public static Server build(PingResponse response) {
+        return build(response, HTTPUtils.getResolver());
+    }
+
+    public static Server build(PingResponse response, GeoLookup lookup) {
+        if (response.legacy()) return ServerObjectBuilder.buildServerFromLegacyPing(response.address(), response.port(), response.body(), lookup);
+        return ServerObjectBuilder.buildServerFromPing(response.address(), response.port(), response.body(), lookup);
+    }
+
+    public int inFlight() {
+        return maxInFlight - permits.availablePermits();
+    }
+
+    public long completed() {
+        return completed.sum();
+    }
+
+    public long failed() {
+        return failed.sum();
+    }
+
+    public long timedOut() {
+        return timedOut.sum();
+    }
+
+    public long legacyRetries() {
+        return legacyRetries.sum();
+    }
+
+    // Pings still running fail with an IllegalStateException
+    @Override
+    public void close() throws InterruptedException {
+        closed = true;
+        selector.wakeup();
+        thread.join();
+        if (ownedExecutor != null) ownedExecutor.shutdown();
+    }
+
+    private void run() {
+        try {
+            while (!closed) {
+                now = System.nanoTime();
+                expire();
+
+                long wait = nextDeadline();
+                awake.set(false);
+
+                if (!submitted.isEmpty()) {
+                    selector.selectNow(this::handle);
+                } else if (wait == Long.MAX_VALUE) {
+                    selector.select(this::handle);
+                } else {
+                    selector.select(this::handle, Math.max(1, TimeUnit.NANOSECONDS.toMillis(wait)));
+                }
+
+                now = System.nanoTime();
+                Ping ping;
+                while ((ping = submitted.poll()) != null) {
+                    ping.started = now;
+                    start(ping);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            closed = true;
+        } finally {
+            IllegalStateException shutdown = new IllegalStateException("Engine is closed");
+            for (int stage = 0; stage < heads.length; stage++) {
+                while (heads[stage] != null) fail(heads[stage], shutdown);
+            }
+
+            Ping ping;
+            while ((ping = submitted.poll()) != null) {
+                permits.release();
+                ping.future.completeExceptionally(shutdown);
+            }
+
+            try {
+                selector.close();
+            } catch (IOException ignored) {}
+        }
+    }
+
+    private void start(Ping ping) {
+        try {
+            SocketChannel channel = SocketChannel.open();
+            ping.channel = channel;
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+
+            // Reset instead of a graceful close, a scanner would otherwise pile up sockets in TIME_WAIT
+            channel.setOption(StandardSocketOptions.SO_LINGER, 0);
+
+            ping.key = channel.register(selector, SelectionKey.OP_CONNECT, ping);
+            enter(ping, CONNECTING);
+            if (channel.connect(new InetSocketAddress(ping.address, ping.port))) connected(ping);
+        } catch (IOException | RuntimeException e) {
+            fail(ping, e);
+        }
+    }
+
+    private void handle(SelectionKey key) {
+        Ping ping = (Ping) key.attachment();
+        now = System.nanoTime();
+
+        try {
+            if (!key.isValid()) return;
+            if (key.isConnectable()) connected(ping);
+            else if (key.isWritable()) write(ping);
+            else if (key.isReadable()) read(ping);
+        } catch (IOException | RuntimeException e) {
+            failOrRetry(ping, e);
+        }
+    }
+
+    private void connected(Ping ping) throws IOException {
+        if (!ping.channel.finishConnect()) return;
+
+        ByteBuffer buffer = buffers.take();
+        ping.buffer = buffer;
+        if (ping.legacy) writeLegacyRequest(buffer, ping);
+        else writeRequest(buffer, ping);
+        buffer.flip();
+
+        ping.key.interestOps(SelectionKey.OP_WRITE);
+        enter(ping, WRITING);
+
+        // The socket is almost always writable right after connecting, don't wait a round trip through select for it
+        write(ping);
+    }
+
+    private void write(Ping ping) throws IOException {
+        ping.channel.write(ping.buffer);
+        if (ping.buffer.hasRemaining()) return;
+
+        ping.buffer.clear();
+        ping.frameEnd = 0;
+        ping.key.interestOps(SelectionKey.OP_READ);
+        enter(ping, READING);
+    }
+
+    private void read(Ping ping) throws IOException {
+        if (ping.channel.read(ping.buffer) < 0) {
+            throw new EOFException("Connection closed after " + ping.buffer.position() + " bytes");
+        }
+
+        PingResponse response = ping.legacy ? parseLegacy(ping) : parseStatus(ping);
+        if (response != null) complete(ping, response);
+    }
+
+    // Null until the whole status response has arrived
+    private PingResponse parseStatus(Ping ping) throws IOException {
+        ByteBuffer buffer = ping.buffer;
+
+        if (ping.frameEnd == 0) {
+            long length = VarInts.read(buffer, 0, buffer.position());
+            if (length == VarInts.INCOMPLETE) return null;
+            if (length == VarInts.MALFORMED) throw new ProtocolException("Malformed packet length");
+
+            int size = VarInts.value(length);
+            if (size <= 0 || size > maxResponseSize) throw new ProtocolException("Response of " + size + " bytes");
+
+            ping.bodyStart = VarInts.length(length);
+            ping.frameEnd = ping.bodyStart + size;
+            buffer = fit(ping);
+        }
+
+        if (buffer.position() < ping.frameEnd) return null;
+
+        int index = ping.bodyStart;
+        long id = VarInts.read(buffer, index, ping.frameEnd);
+        if (id < 0 || VarInts.value(id) != 0) throw new ProtocolException("Expected a status response");
+        index += VarInts.length(id);
+
+        long length = VarInts.read(buffer, index, ping.frameEnd);
+        if (length < 0) throw new ProtocolException("Malformed string length");
+        index += VarInts.length(length);
+
+        int size = VarInts.value(length);
+        if (size < 0 || index + size > ping.frameEnd) throw new ProtocolException("String longer than its packet");
+
+        return new PingResponse(ping.address, ping.port, false, decode(buffer, index, size, StandardCharsets.UTF_8), elapsedMillis(ping));
+    }
+
+    // The kick packet, 0xFF then a UTF-16 string prefixed with its length in chars
+    private PingResponse parseLegacy(Ping ping) throws IOException {
+        ByteBuffer buffer = ping.buffer;
+
+        if (ping.frameEnd == 0) {
+            if (buffer.position() < 3) return null;
+            if (buffer.get(0) != (byte) 0xFF) throw new ProtocolException("Expected a legacy kick packet");
+
+            ping.bodyStart = 3;
+            ping.frameEnd = 3 + ((buffer.get(1) & 0xFF) << 8 | buffer.get(2) & 0xFF) * 2;
+            buffer = fit(ping);
+        }
+
+        if (buffer.position() < ping.frameEnd) return null;
+        return new PingResponse(ping.address, ping.port, true, decode(buffer, 3, ping.frameEnd - 3, StandardCharsets.UTF_16BE), elapsedMillis(ping));
+    }
+
+    // A response bigger than a pooled buffer moves to a heap buffer of exactly its size
+    private ByteBuffer fit(Ping ping) {
+        ByteBuffer buffer = ping.buffer;
+        if (ping.frameEnd <= buffer.capacity()) return buffer;
+
+        ByteBuffer larger = ByteBuffer.allocate(ping.frameEnd);
+        larger.put(buffer.flip());
+        buffers.release(buffer);
+        ping.buffer = larger;
+        return larger;
+    }
+
+    private static String decode(ByteBuffer buffer, int from, int length, Charset charset) {
+        if (buffer.hasArray()) return new String(buffer.array(), buffer.arrayOffset() + from, length, charset);
+
+        byte[] bytes = new byte[length];
+        buffer.get(from, bytes);
+        return new String(bytes, charset);
+    }
+
+    // Handshake with next state 1 followed by the status request
+    private void writeRequest(ByteBuffer buffer, Ping ping) {
+        String host = ping.address;
+        byte[] encoded = ascii(host) ? null : host.getBytes(StandardCharsets.UTF_8);
+        int hostLength = encoded == null ? host.length() : encoded.length;
+
+        VarInts.write(buffer, 1 + VarInts.size(protocol) + VarInts.size(hostLength) + hostLength + 2 + 1);
+        buffer.put((byte) 0x00);
+        VarInts.write(buffer, protocol);
+        VarInts.write(buffer, hostLength);
+
+        if (encoded != null) {
+            buffer.put(encoded);
+        } else {
+            for (int i = 0; i < host.length(); i++) buffer.put((byte) host.charAt(i));
+        }
+
+        buffer.putShort((short) ping.port);
+        buffer.put((byte) 1);
+
+        buffer.put((byte) 1);
+        buffer.put((byte) 0x00);
+    }
+
+    // The 1.6 form of the legacy ping, older servers stop reading after 0xFE 0x01 and answer all the same
+    private void writeLegacyRequest(ByteBuffer buffer, Ping ping) {
+        String host = ping.address;
+
+        buffer.put((byte) 0xFE);
+        buffer.put((byte) 0x01);
+        buffer.put((byte) 0xFA);
+        buffer.putShort((short) (PING_HOST.length / 2));
+        buffer.put(PING_HOST);
+        buffer.putShort((short) (7 + host.length() * 2));
+        buffer.put((byte) LEGACY_PROTOCOL);
+        buffer.putShort((short) host.length());
+        for (int i = 0; i < host.length(); i++) buffer.putChar(host.charAt(i));
+        buffer.putInt(ping.port);
+    }
+
+    private static boolean ascii(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) >= 0x80) return false;
+        }
+        return true;
+    }
+
+    private void expire() {
+        for (int stage = 0; stage < heads.length; stage++) {
+            while (heads[stage] != null && heads[stage].deadline - now <= 0) {
+                timedOut.increment();
+                fail(heads[stage], new SocketTimeoutException("Timed out " + STAGES[stage]));
+            }
+        }
+    }
+
+    // Nanoseconds until the next ping times out, Long.MAX_VALUE if nothing is running
+    private long nextDeadline() {
+        long wait = Long.MAX_VALUE;
+        for (Ping head : heads) {
+            if (head != null) wait = Math.min(wait, Math.max(0, head.deadline - now));
+        }
+        return wait;
+    }
+
+    // A server from before 1.7 hangs up on the modern handshake or kicks with 0xFF, ask it again the old way on a new connection
+    private void failOrRetry(Ping ping, Exception e) {
+        if (legacyFallback && !ping.legacy && ping.stage == READING && (e instanceof EOFException || e instanceof ProtocolException) && looksLegacy(ping.buffer)) {
+            release(ping);
+            ping.legacy = true;
+            legacyRetries.increment();
+            start(ping);
+            return;
+        }
+
+        fail(ping, e);
+    }
+
+    // Nothing at all, or a kick packet, its 0xFF 0x00 start would be an overlong VarInt no modern server sends
+    private static boolean looksLegacy(ByteBuffer buffer) {
+        int received = buffer.position();
+        if (received == 0) return true;
+        return buffer.get(0) == (byte) 0xFF && (received < 2 || buffer.get(1) == 0x00);
+    }
+
+    private void complete(Ping ping, PingResponse response) {
+        release(ping);
+        permits.release();
+        completed.increment();
+        dispatch(() -> ping.future.complete(response));
+    }
+
+    private void fail(Ping ping, Throwable e) {
+        release(ping);
+        permits.release();
+        failed.increment();
+        dispatch(() -> ping.future.completeExceptionally(e));
+    }
+
+    // Callers' continuations must not run on the selector thread
+    private void dispatch(Runnable completion) {
+        try {
+            executor.execute(completion);
+        } catch (RejectedExecutionException e) {
+            completion.run();
+        }
+    }
+
+    private void release(Ping ping) {
+        leave(ping);
+
+        if (ping.key != null) ping.key.cancel();
+        if (ping.channel != null) {
+            try {
+                ping.channel.close();
+            } catch (IOException ignored) {}
+        }
+
+        buffers.release(ping.buffer);
+        ping.key = null;
+        ping.channel = null;
+        ping.buffer = null;
+        ping.frameEnd = 0;
+    }
+
+    private void enter(Ping ping, int stage) {
+        leave(ping);
+        ping.stage = stage;
+        ping.deadline = now + timeouts[stage];
+        ping.prev = tails[stage];
+        ping.next = null;
+
+        if (tails[stage] != null) tails[stage].next = ping;
+        else heads[stage] = ping;
+        tails[stage] = ping;
+    }
+
+    private void leave(Ping ping) {
+        if (ping.stage < 0) return;
+
+        if (ping.prev != null) ping.prev.next = ping.next;
+        else heads[ping.stage] = ping.next;
+
+        if (ping.next != null) ping.next.prev = ping.prev;
+        else tails[ping.stage] = ping.prev;
+
+        ping.prev = null;
+        ping.next = null;
+        ping.stage = -1;
+    }
+
+    private static long elapsedMillis(Ping ping) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - ping.started);
+    }
+
+    private static final class Ping {
+        final String address;
+        final int port;
+        final CompletableFuture<PingResponse> future = new CompletableFuture<>();
+
+        boolean legacy;
+        SocketChannel channel;
+        SelectionKey key;
+        // A pooled direct buffer, or a heap buffer once the response turned out not to fit
+        ByteBuffer buffer;
+        int bodyStart;
+        int frameEnd;
+
+        int stage = -1;
+        long started;
+        long deadline;
+        Ping prev;
+        Ping next;
+
+        Ping(String address, int port) {
+            this.address = address;
+            this.port = port;
+        }
+    }
+
+    public static class Builder {
+        private int maxInFlight = 4096;
+        private Duration connectTimeout = Duration.ofSeconds(5);
+        private Duration writeTimeout = Duration.ofSeconds(5);
+        private Duration readTimeout = Duration.ofSeconds(5);
+        private int protocol = 767;
+        private int bufferSize = 16 * 1024;
+        private int maxResponseSize = 1024 * 1024;
+        private boolean legacyFallback = true;
+        private Executor executor;
+
+        // Setters
+        public Builder setMaxInFlight(int maxInFlight) {
+            this.maxInFlight = maxInFlight;
+            return this;
+        }
+
+        public Builder setConnectTimeout(Duration connectTimeout) {
+            this.connectTimeout = connectTimeout;
+            return this;
+        }
+
+        public Builder setWriteTimeout(Duration writeTimeout) {
+            this.writeTimeout = writeTimeout;
+            return this;
+        }
+
+        public Builder setReadTimeout(Duration readTimeout) {
+            this.readTimeout = readTimeout;
+            return this;
+        }
+
+        // Protocol version sent in the handshake, some proxies answer with the version closest to it
+        public Builder setProtocol(int protocol) {
+            this.protocol = protocol;
+            return this;
+        }
+
+        // Size of each pooled direct buffer, most responses without a favicon fit in the default
+        public Builder setBufferSize(int bufferSize) {
+            this.bufferSize = bufferSize;
+            return this;
+        }
+
+        public Builder setMaxResponseSize(int maxResponseSize) {
+            this.maxResponseSize = maxResponseSize;
+            return this;
+        }
+
+        public Builder setLegacyFallback(boolean legacyFallback) {
+            this.legacyFallback = legacyFallback;
+            return this;
+        }
+
+        // Runs completions and ping()'s server building, a cached daemon pool owned by the engine when unset
+        public Builder setExecutor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        public PingEngine build() throws IOException {
+            if (maxInFlight <= 0) throw new IllegalStateException("maxInFlight must be positive");
+            if (bufferSize < 512) throw new IllegalStateException("Buffers must hold at least a handshake");
+            return new PingEngine(this);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package xyz.funtimes909.serverseekerv2_core.ping;
+
+import java.nio.ByteBuffer;
+
+// Minecraft's 7 bits per byte integers, read in place so a partially received packet can be looked at again once more bytes arrive
+public class VarInts {
+    public static final int MAX_BYTES = 5;
+
+    // Returned by read instead of a packed result
+    public static final long INCOMPLETE = -1;
+    public static final long MALFORMED = -2;
+
+    // The value is in the low 32 bits and the number of bytes it took above them, nothing is allocated either way
+    public static long read(ByteBuffer buffer, int index, int limit) {
+        int value = 0;
+
+        for (int i = 0; i < MAX_BYTES; i++) {
+            if (index + i >= limit) return INCOMPLETE;
+
+            byte b = buffer.get(index + i);
+            value |= (b & 0x7F) << (7 * i);
+            if ((b & 0x80) == 0) return (long) (i + 1) << 32 | (value & 0xFFFFFFFFL);
+        }
+
+        return MALFORMED;
+    }
+
+    public static int value(long packed) {
+        return (int) packed;
+    }
+
+    public static int length(long packed) {
+        return (int) (packed >>> 32);
+    }
+
+    public static void write(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) (value & 0x7F | 0x80));
+            value >>>= 7;
+        }
+
+        buffer.put((byte) value);
+    }
+
+    public static int size(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            size++;
+            value >>>= 7;
+        }
+        return size;
+    }
+}
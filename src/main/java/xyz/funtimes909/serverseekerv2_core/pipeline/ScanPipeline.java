@@ -0,0 +1,277 @@
+package xyz.funtimes909.serverseekerv2_core.pipeline;
+
+import xyz.funtimes909.serverseekerv2_core.database.Database;
+import xyz.funtimes909.serverseekerv2_core.database.WriteBehindQueue;
+import xyz.funtimes909.serverseekerv2_core.ping.PingEngine;
+import xyz.funtimes909.serverseekerv2_core.records.GeoInfo;
+import xyz.funtimes909.serverseekerv2_core.records.PingResponse;
+import xyz.funtimes909.serverseekerv2_core.records.Server;
+import xyz.funtimes909.serverseekerv2_core.records.ServerAddress;
+import xyz.funtimes909.serverseekerv2_core.records.StageStats;
+import xyz.funtimes909.serverseekerv2_core.types.PipelineStage;
+import xyz.funtimes909.serverseekerv2_core.util.GeoLookup;
+import xyz.funtimes909.serverseekerv2_core.util.HTTPUtils;
+import xyz.funtimes909.serverseekerv2_core.util.ServerObjectBuilder;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+// Ping, parse, enrich and persist as separate stages, each with its own concurrency limit and bounded queue
+// Geo lookups that fail or take longer than the enrich timeout let the server through without geo data, so an ip-api outage slows nothing down
+// and Database.getUnenrichedAddresses picks those servers up later
+public class ScanPipeline implements AutoCloseable {
+    public interface Persister {
+        void persist(Server server) throws Exception;
+    }
+
+    private final PingEngine engine;
+    private final boolean ownsEngine;
+    private final GeoLookup lookup;
+    private final long enrichTimeoutNanos;
+    private final Persister persister;
+    private final BiConsumer<Server, Exception> failureHandler;
+    private final ExecutorService parseWorkers;
+    private final ExecutorService persistWorkers;
+    private final LongAdder unenriched = new LongAdder();
+
+    private final Stage<ServerAddress, PingResponse> ping;
+    private final Stage<PingResponse, Server> parse;
+    private final Stage<Server, Server> enrich;
+    private final Stage<Server, Server> persist;
+    private volatile boolean closed;
+
+    public long getUnenriched() {
+        return unenriched.sum();
+    }
+
+    public PingEngine getEngine() {
+        return engine;
+    }
+
+    private ScanPipeline(Builder builder, PingEngine engine, boolean ownsEngine) {
+        this.engine = engine;
+        this.ownsEngine = ownsEngine;
+        this.lookup = builder.lookup;
+        this.enrichTimeoutNanos = builder.enrichTimeout.toNanos();
+        this.persister = builder.persister;
+        this.failureHandler = builder.failureHandler;
+        this.parseWorkers = workers(PipelineStage.PARSE, builder.parseLimit);
+        this.persistWorkers = workers(PipelineStage.PERSIST, builder.persistLimit);
+
+        // Built from the back so every stage knows where its results go
+        // Failed pings are just offline hosts and only counted, from parsing on failures go to the failure handler
+        this.persist = new Stage<>(PipelineStage.PERSIST, builder.persistLimit, builder.persistCapacity, this::persist, null, this::fail);
+        this.enrich = new Stage<>(PipelineStage.ENRICH, builder.enrichLimit, builder.enrichCapacity, this::enrich, persist::put, this::fail);
+        this.parse = new Stage<>(PipelineStage.PARSE, builder.parseLimit, builder.parseCapacity, this::parse, enrich::put,
+                (response, e) -> fail(new Server.Builder().setAddress(response.address()).setPort(response.port()).build(), e));
+        this.ping = new Stage<>(PipelineStage.PING, builder.pingLimit, builder.pingCapacity, this::ping, parse::put, (target, e) -> {});
+    }
+
+    // Blocks until there is room in the ping queue
+    public void submit(String address, int port) throws InterruptedException {
+        ensureOpen();
+        ping.put(new ServerAddress(address, port));
+    }
+
+    // Returns false instead of blocking if the ping queue is full
+    public boolean offer(String address, int port) {
+        ensureOpen();
+        return ping.offer(new ServerAddress(address, port));
+    }
+
+    // Wait until every target submitted before this call has been persisted, dropped or reported as failed
+    public void flush() throws InterruptedException {
+        ping.awaitIdle();
+        parse.awaitIdle();
+        enrich.awaitIdle();
+        persist.awaitIdle();
+    }
+
+    public StageStats getStats(PipelineStage stage) {
+        return switch (stage) {
+            case PING -> ping.stats();
+            case PARSE -> parse.stats();
+            case ENRICH -> enrich.stats();
+            case PERSIST -> persist.stats();
+        };
+    }
+
+    public Map<PipelineStage, StageStats> getStats() {
+        Map<PipelineStage, StageStats> stats = new EnumMap<>(PipelineStage.class);
+        for (PipelineStage stage : PipelineStage.values()) {
+            stats.put(stage, getStats(stage));
+        }
+        return stats;
+    }
+
+    // Stop accepting targets and let everything already submitted run through, front to back so no stage closes while the one before still hands it work
+    @Override
+    public void close() throws InterruptedException {
+        closed = true;
+        ping.close();
+        parse.close();
+        enrich.close();
+        persist.close();
+
+        parseWorkers.shutdown();
+        persistWorkers.shutdown();
+        if (ownsEngine) engine.close();
+    }
+
+    private void ensureOpen() {
+        if (closed) throw new IllegalStateException("ScanPipeline is closed");
+    }
+
+    // The engine already runs every ping on its selector thread, this stage only decides how many it may have open
+    private CompletableFuture<PingResponse> ping(ServerAddress target) {
+        try {
+            return engine.status(target.address(), target.port());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    // Null for responses that aren't a usable server, the stage counts those as dropped
+    private CompletableFuture<Server> parse(PingResponse response) {
+        return CompletableFuture.supplyAsync(() -> PingEngine.build(response, null), parseWorkers);
+    }
+
+    private CompletableFuture<Server> enrich(Server server) {
+        if (lookup == null) return CompletableFuture.completedFuture(server);
+
+        // A lookup that throws instead of failing its future, like a closed BatchGeoResolver, still lets the server through
+        CompletableFuture<GeoInfo> resolved;
+        try {
+            resolved = lookup.resolve(server.getAddress());
+        } catch (RuntimeException e) {
+            return CompletableFuture.completedFuture(withGeo(server, null));
+        }
+
+        // Lookups for the same address may share a future, the timeout goes on a copy so it never completes theirs
+        return resolved
+                .copy()
+                .completeOnTimeout(null, enrichTimeoutNanos, TimeUnit.NANOSECONDS)
+                .exceptionally(e -> null)
+                .thenApply(geo -> withGeo(server, geo));
+    }
+
+    private Server withGeo(Server server, GeoInfo geo) {
+        if (geo == null) unenriched.increment();
+        return ServerObjectBuilder.withGeo(server, geo);
+    }
+
+    private void fail(Server server, Throwable e) {
+        failureHandler.accept(server, e instanceof Exception exception ? exception : new ExecutionException(e));
+    }
+
+    private CompletableFuture<Server> persist(Server server) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                persister.persist(server);
+                return server;
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, persistWorkers);
+    }
+
+    private static ExecutorService workers(PipelineStage stage, int threads) {
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "ScanPipeline-" + stage.name().toLowerCase() + "-" + count.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static class Builder {
+        private PingEngine engine;
+        private GeoLookup lookup = HTTPUtils.getResolver();
+        private Duration enrichTimeout = Duration.ofSeconds(10);
+        private Persister persister;
+        private BiConsumer<Server, Exception> failureHandler = (server, e) -> {};
+        private int pingLimit = 4096;
+        private int parseLimit = Runtime.getRuntime().availableProcessors();
+        private int enrichLimit = 256;
+        private int persistLimit = 4;
+        private int pingCapacity = 10000;
+        private int parseCapacity = 10000;
+        private int enrichCapacity = 10000;
+        private int persistCapacity = 10000;
+
+        // Setters
+        // Without one the pipeline builds and closes its own engine, a shared engine's maxInFlight still caps the ping stage
+        public Builder setEngine(PingEngine engine) {
+            this.engine = engine;
+            return this;
+        }
+
+        // Null skips enrichment, servers are persisted without geo data
+        public Builder setGeoLookup(GeoLookup lookup) {
+            this.lookup = lookup;
+            return this;
+        }
+
+        public Builder setEnrichTimeout(Duration enrichTimeout) {
+            this.enrichTimeout = enrichTimeout;
+            return this;
+        }
+
+        public Builder setPersister(Persister persister) {
+            this.persister = persister;
+            return this;
+        }
+
+        public Builder setDatabase(Database database) {
+            this.persister = database::updateServer;
+            return this;
+        }
+
+        // The queue batches writes itself, the persist stage only waits for room in it
+        public Builder setWriteBehindQueue(WriteBehindQueue queue) {
+            this.persister = queue::submit;
+            return this;
+        }
+
+        // Servers that failed to parse only have their address and port set
+        public Builder setFailureHandler(BiConsumer<Server, Exception> failureHandler) {
+            this.failureHandler = failureHandler;
+            return this;
+        }
+
+        public Builder setLimit(PipelineStage stage, int limit) {
+            if (limit <= 0) throw new IllegalArgumentException("Limit must be positive");
+            switch (stage) {
+                case PING -> pingLimit = limit;
+                case PARSE -> parseLimit = limit;
+                case ENRICH -> enrichLimit = limit;
+                case PERSIST -> persistLimit = limit;
+            }
+            return this;
+        }
+
+        public Builder setCapacity(PipelineStage stage, int capacity) {
+            if (capacity <= 0) throw new IllegalArgumentException("Capacity must be positive");
+            switch (stage) {
+                case PING -> pingCapacity = capacity;
+                case PARSE -> parseCapacity = capacity;
+                case ENRICH -> enrichCapacity = capacity;
+                case PERSIST -> persistCapacity = capacity;
+            }
+            return this;
+        }
+
+        public ScanPipeline build() throws IOException {
+            if (persister == null) throw new IllegalStateException("A Persister, Database or WriteBehindQueue is required");
+            if (engine != null) return new ScanPipeline(this, engine, false);
+            return new ScanPipeline(this, new PingEngine.Builder().setMaxInFlight(pingLimit).build(), true);
+        }
+    }
+}
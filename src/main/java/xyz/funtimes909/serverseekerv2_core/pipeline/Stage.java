@@ -0,0 +1,190 @@
+package xyz.funtimes909.serverseekerv2_core.pipeline;
+
+import xyz.funtimes909.serverseekerv2_core.records.StageStats;
+import xyz.funtimes909.serverseekerv2_core.types.PipelineStage;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+// One step of a ScanPipeline, a bounded queue in front of at most limit items being worked on at once
+// A result is handed to the next stage before its permit is given back, so a slow stage fills its own queue and then stalls the stage before it
+// Hand-offs happen on the stage's own forwarder thread, never on whatever thread completed the work like the selector or a timeout scheduler
+class Stage<I, O> {
+    interface Handoff<T> {
+        void accept(T item) throws InterruptedException;
+    }
+
+    private record Done<I, O>(I item, O result, Throwable error) {}
+
+    private final PipelineStage name;
+    private final int limit;
+    private final int capacity;
+    private final BlockingQueue<I> queue;
+    private final Semaphore permits;
+    private final Function<I, CompletableFuture<O>> work;
+    private final Handoff<O> next;
+    private final BiConsumer<I, Throwable> failureHandler;
+    private final Thread dispatcher;
+    private final Thread forwarder;
+    // Never holds more than limit entries, every one still has its permit
+    private final LinkedBlockingQueue<Done<I, O>> done = new LinkedBlockingQueue<>();
+
+    private final AtomicLong accepted = new AtomicLong();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+    private final Object finishedLock = new Object();
+    private long finished;
+    private volatile boolean closed;
+
+    // A null next means this is the last stage and results are only counted
+    Stage(PipelineStage name, int limit, int capacity, Function<I, CompletableFuture<O>> work, Handoff<O> next, BiConsumer<I, Throwable> failureHandler) {
+        this.name = name;
+        this.limit = limit;
+        this.capacity = capacity;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.permits = new Semaphore(limit);
+        this.work = work;
+        this.next = next;
+        this.failureHandler = failureHandler;
+
+        this.dispatcher = new Thread(this::dispatch, "ScanPipeline-" + name.name().toLowerCase());
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+
+        this.forwarder = new Thread(this::forward, "ScanPipeline-" + name.name().toLowerCase() + "-forwarder");
+        forwarder.setDaemon(true);
+        forwarder.start();
+    }
+
+    // Blocks until there is room in the queue
+    void put(I item) throws InterruptedException {
+        ensureOpen();
+        queue.put(item);
+        accepted.incrementAndGet();
+    }
+
+    // Returns false instead of blocking if the queue is full
+    boolean offer(I item) {
+        ensureOpen();
+        if (!queue.offer(item)) return false;
+        accepted.incrementAndGet();
+        return true;
+    }
+
+    // Wait until every item accepted before this call has left the stage
+    void awaitIdle() throws InterruptedException {
+        long target = accepted.get();
+
+        synchronized (finishedLock) {
+            while (finished < target) {
+                finishedLock.wait();
+            }
+        }
+    }
+
+    // Stop accepting items, run everything still queued and wait for the last one to leave
+    void close() throws InterruptedException {
+        closed = true;
+        dispatcher.join();
+        awaitIdle();
+        forwarder.interrupt();
+    }
+
+    StageStats stats() {
+        return new StageStats(
+                name,
+                limit,
+                limit - permits.availablePermits(),
+                queue.size(),
+                capacity,
+                accepted.get(),
+                completed.sum(),
+                dropped.sum(),
+                failed.sum(),
+                TimeUnit.NANOSECONDS.toMillis(totalNanos.sum()),
+                TimeUnit.NANOSECONDS.toMillis(maxNanos.get())
+        );
+    }
+
+    private void ensureOpen() {
+        if (closed) throw new IllegalStateException("ScanPipeline is closed");
+    }
+
+    private void dispatch() {
+        while (!closed || !queue.isEmpty()) {
+            I item;
+            try {
+                item = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (item == null) continue;
+            } catch (InterruptedException e) {
+                // Nothing was taken yet, keep going until the queue is empty like close() would
+                closed = true;
+                continue;
+            }
+
+            // Never drop an item that was already taken off the queue
+            permits.acquireUninterruptibly();
+            long start = System.nanoTime();
+
+            CompletableFuture<O> future;
+            try {
+                future = work.apply(item);
+            } catch (RuntimeException e) {
+                future = CompletableFuture.failedFuture(e);
+            }
+
+            future.whenComplete((result, error) -> {
+                long nanos = System.nanoTime() - start;
+                totalNanos.add(nanos);
+                maxNanos.accumulateAndGet(nanos, Math::max);
+                done.add(new Done<>(item, result, error));
+            });
+        }
+    }
+
+    // Runs until close() interrupts it, which only happens once nothing is left in flight
+    private void forward() {
+        try {
+            while (true) {
+                finish(done.take());
+            }
+        } catch (InterruptedException ignored) {}
+    }
+
+    private void finish(Done<I, O> entry) {
+        I item = entry.item();
+        O result = entry.result();
+        Throwable error = entry.error();
+
+        try {
+            if (error != null) {
+                failed.increment();
+                try {
+                    failureHandler.accept(item, error instanceof CompletionException && error.getCause() != null ? error.getCause() : error);
+                } catch (RuntimeException ignored) {}
+            } else if (result == null) {
+                dropped.increment();
+            } else {
+                if (next != null) next.accept(result);
+                completed.increment();
+            }
+        } catch (InterruptedException e) {
+            // close() only interrupts the forwarder once it is idle, anything else is counted and the forwarder carries on
+            failed.increment();
+        } catch (RuntimeException e) {
+            failed.increment();
+        } finally {
+            permits.release();
+            synchronized (finishedLock) {
+                finished++;
+                finishedLock.notifyAll();
+            }
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package xyz.funtimes909.serverseekerv2_core.records;
+
+// Everything a Bedrock server puts in its unconnected pong, fields a server left out are null
+public record BedrockPong(
+        long serverGuid,
+        String edition,
+        String motd,
+        String subMotd,
+        int protocol,
+        String version,
+        int onlinePlayers,
+        int maxPlayers,
+        String gameMode,
+        Integer gameModeId,
+        Integer portV4,
+        Integer portV6
+) {}
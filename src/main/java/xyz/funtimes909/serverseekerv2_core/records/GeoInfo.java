@@ -0,0 +1,3 @@
+package xyz.funtimes909.serverseekerv2_core.records;
+
+public record GeoInfo(String country, String asn, String reverseDns, String organization) {}
@@ -0,0 +1,3 @@
+package xyz.funtimes909.serverseekerv2_core.records;
+
+public record PageCursor(long lastSeen, String address, int port) {}
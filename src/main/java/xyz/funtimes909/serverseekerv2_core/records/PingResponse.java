@@ -0,0 +1,4 @@
+package xyz.funtimes909.serverseekerv2_core.records;
+
+// Body is the status json, or for a legacy ping the kick message the server answered with
+public record PingResponse(String address, int port, boolean legacy, String body, long latencyMillis) {}
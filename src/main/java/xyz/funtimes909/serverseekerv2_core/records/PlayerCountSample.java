@@ -0,0 +1,4 @@
+package xyz.funtimes909.serverseekerv2_core.records;
+
+// One point of a population chart, raw snapshots have a single sample, rollups cover an hour or a day from periodStart
+public record PlayerCountSample(long periodStart, int samples, Double averageOnline, Integer minOnline, Integer maxOnline, Integer maxPlayers) {}
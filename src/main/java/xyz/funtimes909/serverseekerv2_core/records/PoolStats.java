@@ -0,0 +1,3 @@
+package xyz.funtimes909.serverseekerv2_core.records;
+
+public record PoolStats(int active, int idle, int maxTotal, long borrows, long totalWaitMillis, long maxWaitMillis) {}
@@ -1,6 +1,7 @@
 package xyz.funtimes909.serverseekerv2_core.records;
 
 import xyz.funtimes909.serverseekerv2_core.types.ServerType;
+import xyz.funtimes909.serverseekerv2_core.util.ServerKey;
 
 import java.util.List;
 
@@ -18,7 +19,7 @@ public class Server {
     private final String address;
     private final Integer maxPlayers;
     private final Integer onlinePlayers;
-    private final short port;
+    private final int port;
     private final Integer protocol;
     private final Integer fmlNetworkVersion;
     private final int timesSeen;
@@ -81,10 +82,15 @@ public class Server {
         return onlinePlayers;
     }
 
-    public short getPort() {
+    public int getPort() {
         return port;
     }
 
+    // Address and port packed into one long, see ServerKey
+    public long getKey() {
+        return ServerKey.pack(address, port);
+    }
+
     public Integer getProtocol() {
         return protocol;
     }
@@ -161,7 +167,7 @@ public class Server {
         private String address;
         private Integer maxPlayers;
         private Integer onlinePlayers;
-        private short port;
+        private int port;
         private Integer protocol;
         private Integer fmlNetworkVersion;
         private int timesSeen;
@@ -172,6 +178,35 @@ public class Server {
         private Boolean preventsReports;
         private Boolean enforceSecure;
 
+        public Builder() {}
+
+        // Starts from every field of an existing server
+        public Builder(Server server) {
+            this.players = server.players;
+            this.mods = server.mods;
+            this.serverType = server.serverType;
+            this.version = server.version;
+            this.motd = server.motd;
+            this.icon = server.icon;
+            this.country = server.country;
+            this.asn = server.asn;
+            this.reverseDns = server.reverseDns;
+            this.organization = server.organization;
+            this.address = server.address;
+            this.maxPlayers = server.maxPlayers;
+            this.onlinePlayers = server.onlinePlayers;
+            this.port = server.port;
+            this.protocol = server.protocol;
+            this.fmlNetworkVersion = server.fmlNetworkVersion;
+            this.timesSeen = server.timesSeen;
+            this.firstseen = server.firstseen;
+            this.lastseen = server.lastseen;
+            this.whitelist = server.whitelist;
+            this.cracked = server.cracked;
+            this.preventsReports = server.preventsReports;
+            this.enforceSecure = server.enforceSecure;
+        }
+
         // Setters
         public Builder setPlayers(List<Player> players) {
             this.players = players;
@@ -238,8 +273,9 @@ public class Server {
             return this;
         }
 
-        public Builder setPort(short port) {
-            this.port = port;
+        // Ports are unsigned 16 bit, negative values from old signed short callers map back to the real port
+        public Builder setPort(int port) {
+            this.port = port & 0xFFFF;
             return this;
         }
 
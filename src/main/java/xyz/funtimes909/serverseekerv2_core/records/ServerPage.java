@@ -0,0 +1,6 @@
+package xyz.funtimes909.serverseekerv2_core.records;
+
+import java.util.List;
+
+// next is null on the last page
+public record ServerPage(List<Server> servers, PageCursor next) {}
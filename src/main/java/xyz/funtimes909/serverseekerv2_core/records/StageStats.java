@@ -0,0 +1,11 @@
+package xyz.funtimes909.serverseekerv2_core.records;
+
+import xyz.funtimes909.serverseekerv2_core.types.PipelineStage;
+
+// Completed items made it to the next stage, dropped ones finished without a result, like a response that isn't a server
+public record StageStats(PipelineStage stage, int limit, int active, int queued, int capacity, long accepted, long completed, long dropped, long failed, long totalMillis, long maxMillis) {
+    public double averageMillis() {
+        long finished = completed + dropped + failed;
+        return finished == 0 ? 0 : (double) totalMillis / finished;
+    }
+}
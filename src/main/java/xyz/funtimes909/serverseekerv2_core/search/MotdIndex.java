@@ -0,0 +1,362 @@
+package xyz.funtimes909.serverseekerv2_core.search;
+
+import xyz.funtimes909.serverseekerv2_core.database.Database;
+import xyz.funtimes909.serverseekerv2_core.records.Server;
+import xyz.funtimes909.serverseekerv2_core.records.ServerAddress;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+// In memory inverted index over plain text MOTDs
+// Query syntax: words must all match, OR between groups, -word excludes, word* matches a prefix, "quoted words" match a phrase
+public class MotdIndex {
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Consumer<Server> listener = this::update;
+
+    // Term dictionary, sorted so prefix queries are a range scan
+    private final TreeMap<String, Integer> termIds = new TreeMap<>();
+    private final List<PostingList> postings = new ArrayList<>();
+
+    // Compact server ids, each server keeps its token sequence for phrase checks and its sorted terms for liveness checks
+    private final Map<ServerAddress, Integer> serverIds = new HashMap<>();
+    private final List<ServerAddress> servers = new ArrayList<>();
+    private final List<int[]> tokens = new ArrayList<>();
+    private final List<int[]> terms = new ArrayList<>();
+
+    // Removed servers keep their id so postings stay valid, only the ones set here still have a motd
+    private final BitSet live = new BitSet();
+
+    // Stream every MOTD out of the database with a cursor and index it
+    public static MotdIndex build(Connection conn) throws SQLException {
+        MotdIndex index = new MotdIndex();
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+
+        try (PreparedStatement statement = conn.prepareStatement("SELECT Address, Port, Motd FROM Servers WHERE Motd IS NOT NULL")) {
+            statement.setFetchSize(10000);
+
+            try (ResultSet results = statement.executeQuery()) {
+                while (results.next()) {
+                    index.update(results.getString("address"), results.getInt("port"), results.getString("motd"));
+                }
+            }
+
+            conn.commit();
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+
+        return index;
+    }
+
+    // Keep the index current with every server written to this database
+    public void attach(Database database) {
+        database.addUpdateListener(listener);
+    }
+
+    public void detach(Database database) {
+        database.removeUpdateListener(listener);
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return live.cardinality();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void update(Server server) {
+        update(server.getAddress(), server.getPort(), server.getMotd());
+    }
+
+    public void update(String address, int port, String motd) {
+        List<String> words = tokenize(motd);
+
+        lock.writeLock().lock();
+        try {
+            ServerAddress key = new ServerAddress(address, port);
+            Integer id = serverIds.get(key);
+
+            // Nothing to remove for a server that was never indexed
+            if (id == null && motd == null) return;
+
+            if (id == null) {
+                id = servers.size();
+                serverIds.put(key, id);
+                servers.add(key);
+                tokens.add(new int[0]);
+                terms.add(new int[0]);
+            }
+
+            int[] sequence = new int[words.size()];
+            for (int i = 0; i < sequence.length; i++) {
+                sequence[i] = termIds.computeIfAbsent(words.get(i), word -> {
+                    postings.add(new PostingList());
+                    return postings.size() - 1;
+                });
+            }
+
+            int[] previous = terms.get(id);
+            int[] current = Arrays.stream(sequence).sorted().distinct().toArray();
+            tokens.set(id, sequence);
+            terms.set(id, current);
+            live.set(id, motd != null);
+
+            // Only touch the lists whose membership actually changed
+            for (int term : previous) {
+                if (Arrays.binarySearch(current, term) < 0) {
+                    postings.get(term).markStale();
+                    compactIfNeeded(term);
+                }
+            }
+
+            for (int term : current) {
+                if (Arrays.binarySearch(previous, term) < 0) {
+                    postings.get(term).add(id);
+                    compactIfNeeded(term);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(String address, int port) {
+        update(address, port, null);
+    }
+
+    public List<ServerAddress> search(String query, int limit) {
+        lock.readLock().lock();
+        try {
+            int[] matches = evaluate(query);
+            List<ServerAddress> results = new ArrayList<>(Math.min(limit, matches.length));
+            for (int i = 0; i < matches.length && results.size() < limit; i++) {
+                results.add(servers.get(matches[i]));
+            }
+
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Lowercased words of the plain text, § formatting codes are dropped along with the character after them
+    // A code doesn't end the word, per letter colouring ("§6Hyp§eixel") is common
+    public static List<String> tokenize(String motd) {
+        List<String> words = new ArrayList<>();
+        if (motd == null) return words;
+
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i < motd.length(); i++) {
+            char c = motd.charAt(i);
+
+            if (c == '§') {
+                i++;
+                continue;
+            }
+
+            if (Character.isLetterOrDigit(c)) {
+                word.append(Character.toLowerCase(c));
+                continue;
+            }
+
+            if (!word.isEmpty()) {
+                words.add(word.toString());
+                word.setLength(0);
+            }
+        }
+
+        if (!word.isEmpty()) words.add(word.toString());
+        return words;
+    }
+
+    private void compactIfNeeded(int term) {
+        PostingList list = postings.get(term);
+        if (list.needsCompaction()) list.compact(id -> Arrays.binarySearch(terms.get(id), term) >= 0);
+    }
+
+    private int[] evaluate(String query) {
+        int[] result = new int[0];
+
+        for (List<String> group : parse(query)) {
+            int[] included = null;
+            int[] excluded = new int[0];
+
+            for (String item : group) {
+                if (item.startsWith("-")) {
+                    excluded = union(excluded, match(item.substring(1)));
+                } else {
+                    int[] matched = match(item);
+                    included = included == null ? matched : intersect(included, matched);
+                }
+            }
+
+            // A group of only exclusions would match everything else, that isn't a useful search so it matches nothing
+            if (included != null) result = union(result, difference(included, excluded));
+        }
+
+        return result;
+    }
+
+    private int[] match(String item) {
+        if (item.startsWith("\"")) return phrase(tokenize(item));
+
+        if (item.endsWith("*")) {
+            List<String> prefix = tokenize(item);
+            if (prefix.size() != 1) return new int[0];
+
+            int[] result = new int[0];
+            for (int term : termIds.subMap(prefix.get(0), prefix.get(0) + Character.MAX_VALUE).values()) {
+                result = union(result, postingsOf(term));
+            }
+
+            return result;
+        }
+
+        List<String> words = tokenize(item);
+        if (words.size() == 1) {
+            Integer term = termIds.get(words.get(0));
+            return term == null ? new int[0] : postingsOf(term);
+        }
+
+        // Punctuation inside a word ("mc-server") splits it, treat that like a phrase
+        return phrase(words);
+    }
+
+    private int[] phrase(List<String> words) {
+        if (words.isEmpty()) return new int[0];
+
+        int[] sequence = new int[words.size()];
+        int[] candidates = null;
+        for (int i = 0; i < sequence.length; i++) {
+            Integer term = termIds.get(words.get(i));
+            if (term == null) return new int[0];
+
+            sequence[i] = term;
+            candidates = candidates == null ? postingsOf(term) : intersect(candidates, postingsOf(term));
+        }
+
+        int kept = 0;
+        for (int id : candidates) {
+            if (containsSequence(tokens.get(id), sequence)) candidates[kept++] = id;
+        }
+
+        return Arrays.copyOf(candidates, kept);
+    }
+
+    private int[] postingsOf(int term) {
+        return postings.get(term).toArray(id -> Arrays.binarySearch(terms.get(id), term) >= 0);
+    }
+
+    private static boolean containsSequence(int[] tokens, int[] sequence) {
+        outer:
+        for (int start = 0; start + sequence.length <= tokens.length; start++) {
+            for (int i = 0; i < sequence.length; i++) {
+                if (tokens[start + i] != sequence[i]) continue outer;
+            }
+
+            return true;
+        }
+
+        return false;
+    }
+
+    // Splits on whitespace outside quotes, the OR keyword starts a new group
+    private static List<List<String>> parse(String query) {
+        List<List<String>> groups = new ArrayList<>();
+        List<String> group = new ArrayList<>();
+        int i = 0;
+
+        while (i < query.length()) {
+            char c = query.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+                continue;
+            }
+
+            int start = i;
+            boolean negated = c == '-';
+            if (negated) i++;
+
+            if (i < query.length() && query.charAt(i) == '"') {
+                int end = query.indexOf('"', i + 1);
+                if (end == -1) end = query.length();
+                group.add((negated ? "-" : "") + query.substring(i, end));
+                i = end + 1;
+                continue;
+            }
+
+            while (i < query.length() && !Character.isWhitespace(query.charAt(i))) i++;
+            String item = query.substring(start, i);
+
+            if (item.equals("OR")) {
+                if (!group.isEmpty()) groups.add(group);
+                group = new ArrayList<>();
+            } else {
+                group.add(item);
+            }
+        }
+
+        if (!group.isEmpty()) groups.add(group);
+        return groups;
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int i = 0, j = 0, k = 0;
+
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) i++;
+            else if (a[i] > b[j]) j++;
+            else {
+                result[k++] = a[i];
+                i++;
+                j++;
+            }
+        }
+
+        return Arrays.copyOf(result, k);
+    }
+
+    private static int[] union(int[] a, int[] b) {
+        if (a.length == 0) return b;
+        if (b.length == 0) return a;
+
+        int[] result = new int[a.length + b.length];
+        int i = 0, j = 0, k = 0;
+
+        while (i < a.length || j < b.length) {
+            if (j == b.length || (i < a.length && a[i] < b[j])) result[k++] = a[i++];
+            else if (i == a.length || b[j] < a[i]) result[k++] = b[j++];
+            else {
+                result[k++] = a[i];
+                i++;
+                j++;
+            }
+        }
+
+        return Arrays.copyOf(result, k);
+    }
+
+    private static int[] difference(int[] a, int[] b) {
+        if (b.length == 0) return a;
+
+        int[] result = new int[a.length];
+        int i = 0, j = 0, k = 0;
+
+        while (i < a.length) {
+            if (j == b.length || a[i] < b[j]) result[k++] = a[i++];
+            else if (a[i] > b[j]) j++;
+            else i++;
+        }
+
+        return Arrays.copyOf(result, k);
+    }
+}
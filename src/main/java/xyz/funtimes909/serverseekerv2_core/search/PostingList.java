@@ -0,0 +1,103 @@
+package xyz.funtimes909.serverseekerv2_core.search;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+// Sorted server ids for one term, delta encoded as variable length bytes
+// Ids that arrive out of order wait in a small pending buffer, removals are lazy and filtered at read time
+class PostingList {
+    private byte[] data = new byte[4];
+    private int length;
+    private int count;
+    private int last = -1;
+    private int[] pending = new int[0];
+    private int pendingCount;
+    private int stale;
+
+    void add(int id) {
+        if (pendingCount == 0 && id > last) {
+            append(id);
+        } else {
+            if (pendingCount == pending.length) pending = Arrays.copyOf(pending, Math.max(4, pendingCount * 2));
+            pending[pendingCount++] = id;
+        }
+    }
+
+    void markStale() {
+        stale++;
+    }
+
+    boolean needsCompaction() {
+        return pendingCount > 32 || stale > 16 + count / 4;
+    }
+
+    boolean isEmpty() {
+        return count == 0 && pendingCount == 0;
+    }
+
+    // Decoded, sorted and deduplicated ids that are still live
+    int[] toArray(IntPredicate live) {
+        int[] ids = new int[count + pendingCount];
+        int size = 0;
+        int position = 0;
+        int id = -1;
+
+        for (int i = 0; i < count; i++) {
+            int delta = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[position++];
+                delta |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+
+            id += delta;
+            ids[size++] = id;
+        }
+
+        if (pendingCount > 0) {
+            System.arraycopy(pending, 0, ids, size, pendingCount);
+            size += pendingCount;
+            Arrays.sort(ids, 0, size);
+        }
+
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            if ((kept > 0 && ids[kept - 1] == ids[i]) || !live.test(ids[i])) continue;
+            ids[kept++] = ids[i];
+        }
+
+        return kept == ids.length ? ids : Arrays.copyOf(ids, kept);
+    }
+
+    void compact(IntPredicate live) {
+        int[] ids = toArray(live);
+
+        data = new byte[Math.max(4, ids.length * 2)];
+        length = 0;
+        count = 0;
+        last = -1;
+        pending = new int[0];
+        pendingCount = 0;
+        stale = 0;
+
+        for (int id : ids) {
+            append(id);
+        }
+    }
+
+    private void append(int id) {
+        if (length + 5 > data.length) data = Arrays.copyOf(data, data.length * 2);
+
+        int delta = id - last;
+        while ((delta & ~0x7F) != 0) {
+            data[length++] = (byte) ((delta & 0x7F) | 0x80);
+            delta >>>= 7;
+        }
+
+        data[length++] = (byte) delta;
+        last = id;
+        count++;
+    }
+}
@@ -3,43 +3,90 @@ package xyz.funtimes909.serverseekerv2_core.types;
 import java.util.HashMap;
 
 public enum AnsiCodes {
-    BLACK('0', "black", 30),
-    DARK_BLUE('1', "dark_blue", 34),
-    DARK_GREEN('2', "dark_green", 32),
-    DARK_AQUA('3', "dark_aqua", 36),
-    DARK_RED('4', "dark_red", 31),
-    PURPLE('5', "dark_purple", 35),
-    GOLD('6', "gold", 33),
-    GRAY('7', "gray", 37),
-    DARK_GRAY('8', "dark_gray", 30),
-    BLUE('9', "blue", 34),
-    GREEN('a', "green", 32),
-    AQUA('b', "aqua", 36),
-    RED('c', "red", 31),
-    PINK('d', "light_purple", 35),
-    YELLOW('e', "yellow", 33),
-    WHITE('f', "white", 37),
-    BOLD('l', "bold", 1),
-    UNDERLINE('n', "underline", 4),
-    RESET('r', "reset", 50);
+    BLACK('0', "black", 30, 0x000000),
+    DARK_BLUE('1', "dark_blue", 34, 0x0000AA),
+    DARK_GREEN('2', "dark_green", 32, 0x00AA00),
+    DARK_AQUA('3', "dark_aqua", 36, 0x00AAAA),
+    DARK_RED('4', "dark_red", 31, 0xAA0000),
+    PURPLE('5', "dark_purple", 35, 0xAA00AA),
+    GOLD('6', "gold", 33, 0xFFAA00),
+    GRAY('7', "gray", 37, 0xAAAAAA),
+    DARK_GRAY('8', "dark_gray", 90, 0x555555),
+    BLUE('9', "blue", 94, 0x5555FF),
+    GREEN('a', "green", 92, 0x55FF55),
+    AQUA('b', "aqua", 96, 0x55FFFF),
+    RED('c', "red", 91, 0xFF5555),
+    PINK('d', "light_purple", 95, 0xFF55FF),
+    YELLOW('e', "yellow", 93, 0xFFFF55),
+    WHITE('f', "white", 97, 0xFFFFFF),
+    OBFUSCATED('k', "obfuscated", 5, -1),
+    BOLD('l', "bold", 1, -1),
+    STRIKETHROUGH('m', "strikethrough", 9, -1),
+    UNDERLINE('n', "underline", 4, -1),
+    ITALIC('o', "italic", 3, -1),
+    RESET('r', "reset", 0, -1);
 
     public static final HashMap<String, AnsiCodes> codes = new HashMap<>();
     public static final HashMap<Character, AnsiCodes> colors = new HashMap<>();
+    private static final AnsiCodes[] byCode = new AnsiCodes[128];
 
     static {
         for (AnsiCodes v: AnsiCodes.values()) {
             codes.put(v.name, v);
             colors.put(v.c, v);
+            byCode[v.c] = v;
+            byCode[Character.toUpperCase(v.c)] = v;
         }
     }
 
     public final char c;
     public final String name;
     public final int ansi;
+    // Only colors have one, -1 for formatting codes
+    public final int rgb;
 
-    AnsiCodes(char c, String name, Integer ansi) {
+    AnsiCodes(char c, String name, int ansi, int rgb) {
         this.c = c;
         this.name = name;
         this.ansi = ansi;
+        this.rgb = rgb;
     }
-}
\ No newline at end of file
+
+    public boolean isColor() {
+        return rgb >= 0;
+    }
+
+    // Same result as codes.get(name) without hashing into a map for every component
+    public static AnsiCodes byName(String name) {
+        return switch (name) {
+            case "black" -> BLACK;
+            case "dark_blue" -> DARK_BLUE;
+            case "dark_green" -> DARK_GREEN;
+            case "dark_aqua" -> DARK_AQUA;
+            case "dark_red" -> DARK_RED;
+            case "dark_purple" -> PURPLE;
+            case "gold" -> GOLD;
+            case "gray" -> GRAY;
+            case "dark_gray" -> DARK_GRAY;
+            case "blue" -> BLUE;
+            case "green" -> GREEN;
+            case "aqua" -> AQUA;
+            case "red" -> RED;
+            case "light_purple" -> PINK;
+            case "yellow" -> YELLOW;
+            case "white" -> WHITE;
+            case "obfuscated" -> OBFUSCATED;
+            case "bold" -> BOLD;
+            case "strikethrough" -> STRIKETHROUGH;
+            case "underline" -> UNDERLINE;
+            case "italic" -> ITALIC;
+            case "reset" -> RESET;
+            default -> null;
+        };
+    }
+
+    // The character after a § in legacy formatted text, case insensitive like the client
+    public static AnsiCodes byCode(char c) {
+        return c < byCode.length ? byCode[c] : null;
+    }
+}
@@ -0,0 +1,12 @@
+package xyz.funtimes909.serverseekerv2_core.types;
+
+public enum MotdFormat {
+    // Just the text, § codes inside it are stripped
+    PLAIN,
+    // The § coded string that has always been stored in the Motd column
+    LEGACY,
+    // Escape sequences for a terminal, hex colors use 24 bit color
+    ANSI,
+    // Escaped text in styled spans, newlines become <br>
+    HTML
+}
@@ -0,0 +1,12 @@
+package xyz.funtimes909.serverseekerv2_core.types;
+
+public enum PipelineStage {
+    // Status ping over the network
+    PING,
+    // Status json or legacy kick into a Server, without touching the geo lookup
+    PARSE,
+    // Country, ASN and organization from the GeoLookup
+    ENRICH,
+    // Handing the server to the database
+    PERSIST
+}
@@ -0,0 +1,12 @@
+package xyz.funtimes909.serverseekerv2_core.types;
+
+public enum ScanFormat {
+    // masscan -oJ, one record per line inside a json array, and -oD which is the same records without the array
+    MASSCAN_JSON,
+    // masscan -oL, lines like "open tcp 25565 1.2.3.4 1700000000"
+    MASSCAN_LIST,
+    // masscan -oB, type and length prefixed records
+    MASSCAN_BINARY,
+    // zmap csv output, a header naming the columns when it was run with -f
+    ZMAP_CSV
+}
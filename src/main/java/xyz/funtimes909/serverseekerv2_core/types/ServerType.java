@@ -15,6 +15,26 @@ public enum ServerType {
     LEAVES("Leaves"),
     WATERFALL("Waterfall"),
     BUNGEECORD("BungeeCord"),
+    GALE("Gale"),
+    TUINITY("Tuinity"),
+    AIRPLANE("Airplane"),
+    PANDASPIGOT("PandaSpigot"),
+    TACOSPIGOT("TacoSpigot"),
+    MOHIST("Mohist"),
+    ARCLIGHT("Arclight"),
+    MAGMA("Magma"),
+    CATSERVER("CatServer"),
+    KETTING("Ketting"),
+    YOUER("Youer"),
+    BANNER("Banner"),
+    SPONGE("Sponge"),
+    FABRIC("Fabric"),
+    QUILT("Quilt"),
+    FLAMECORD("FlameCord"),
+    GEYSER("Geyser"),
+    TCPSHIELD("TCPShield"),
+    GLOWSTONE("Glowstone"),
+    MULTIVERSION("Multi-version"),
     LEGACY("Legacy"),
     ANY("Any");
 
@@ -0,0 +1,242 @@
+package xyz.funtimes909.serverseekerv2_core.util;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import xyz.funtimes909.serverseekerv2_core.database.Database;
+import xyz.funtimes909.serverseekerv2_core.records.GeoInfo;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+public class BatchGeoResolver implements GeoLookup, AutoCloseable {
+    // ip-api accepts at most 100 addresses per batch request
+    public static final int MAX_BATCH = 100;
+
+    // Every 429 waits at least this long, even when the headers claim the window has already reset
+    private static final long MIN_BACKOFF_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    // A batch that is still rate limited after this many requests completes with null
+    private static final int MAX_ATTEMPTS = 5;
+
+    private record Pending(String ip, CompletableFuture<GeoInfo> future) {}
+
+    private final HttpClient client;
+    private final String baseUrl;
+    private final GeoResolver cache;
+    private final long maxDelayNanos;
+    private final LinkedBlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final Thread dispatcher;
+    private volatile boolean closed;
+
+    // Rate limit state as reported by the last response, only touched by the dispatcher thread
+    private int remaining = Integer.MAX_VALUE;
+    private long resetAt;
+
+    // The cache may be null, results are stored in it when present
+    public BatchGeoResolver(HttpClient client, String baseUrl, GeoResolver cache, Duration maxDelay) {
+        this.client = client;
+        this.baseUrl = baseUrl;
+        this.cache = cache;
+        this.maxDelayNanos = maxDelay.toNanos();
+        this.dispatcher = new Thread(this::dispatch, "BatchGeoResolver");
+        this.dispatcher.setDaemon(true);
+        this.dispatcher.start();
+    }
+
+    public BatchGeoResolver(GeoResolver cache) {
+        this(HTTPUtils.CLIENT, "http://ip-api.com", cache, Duration.ofSeconds(1));
+    }
+
+    // Completes with null if the service could not resolve the address
+    @Override
+    public CompletableFuture<GeoInfo> resolve(String ip) {
+        if (closed) throw new IllegalStateException("BatchGeoResolver is closed");
+
+        if (cache != null) {
+            GeoInfo cached = cache.getCached(ip);
+            if (cached != null) return CompletableFuture.completedFuture(cached);
+        }
+
+        CompletableFuture<GeoInfo> future = new CompletableFuture<>();
+        queue.add(new Pending(ip, future));
+
+        // Closed while enqueueing, the dispatcher may already have drained the queue for the last time
+        if (closed) future.complete(null);
+        return future;
+    }
+
+    public Map<String, GeoInfo> resolveAll(Collection<String> ips) {
+        Map<String, CompletableFuture<GeoInfo>> futures = new LinkedHashMap<>();
+        for (String ip : ips) {
+            futures.put(ip, resolve(ip));
+        }
+
+        Map<String, GeoInfo> results = new LinkedHashMap<>();
+        futures.forEach((ip, future) -> {
+            GeoInfo info = future.join();
+            if (info != null) results.put(ip, info);
+        });
+
+        return results;
+    }
+
+    // Look up servers that were stored without enrichment and fill it in, returns how many addresses were updated
+    public int backfill(Connection conn, int limit) throws SQLException {
+        return backfill(conn, limit, Duration.ofDays(1));
+    }
+
+    // Every address handed out is marked as attempted, ones the service can't resolve are skipped until retryAfter has passed
+    public int backfill(Connection conn, int limit, Duration retryAfter) throws SQLException {
+        long now = System.currentTimeMillis() / 1000;
+        List<String> addresses = Database.getUnenrichedAddresses(conn, limit, now - retryAfter.toSeconds());
+        if (addresses.isEmpty()) return 0;
+
+        Map<String, GeoInfo> results = resolveAll(addresses);
+        Database.updateGeo(conn, results);
+        Database.markGeoAttempted(conn, addresses, now);
+        return results.size();
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        closed = true;
+        dispatcher.join();
+    }
+
+    private void dispatch() {
+        List<Pending> batch = new ArrayList<>(MAX_BATCH);
+
+        while (!closed || !queue.isEmpty()) {
+            try {
+                Pending first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+
+                // Give the batch a moment to fill up, requests are the scarce resource, not latency
+                long deadline = System.nanoTime() + maxDelayNanos;
+                while (batch.size() < MAX_BATCH && !closed) {
+                    queue.drainTo(batch, MAX_BATCH - batch.size());
+                    long wait = deadline - System.nanoTime();
+                    if (batch.size() >= MAX_BATCH || wait <= 0) break;
+
+                    Pending next = queue.poll(wait, TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                    batch.add(next);
+                }
+
+                send(batch);
+            } catch (InterruptedException e) {
+                closed = true;
+            } catch (RuntimeException ignored) {
+                // Malformed response, keep the dispatcher alive for the next batch
+            } finally {
+                // Whatever the request couldn't resolve completes with null, already completed futures are unaffected
+                for (Pending pending : batch) {
+                    pending.future().complete(null);
+                }
+
+                batch.clear();
+            }
+        }
+
+        // Anything enqueued after the final check above would otherwise never complete
+        Pending pending;
+        while ((pending = queue.poll()) != null) {
+            pending.future().complete(null);
+        }
+    }
+
+    private void send(List<Pending> batch) throws InterruptedException {
+        JsonArray body = new JsonArray();
+        for (Pending pending : batch) {
+            body.add(pending.ip());
+        }
+
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(baseUrl + "/batch?fields=" + GeoResolver.FIELDS))
+                .header("Content-Type", "application/json")
+                .timeout(GeoResolver.REQUEST_TIMEOUT)
+                .POST(HttpRequest.BodyPublishers.ofString(body.toString()))
+                .build();
+
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            if (!awaitRateLimit()) return;
+
+            HttpResponse<String> response;
+            try {
+                response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            } catch (IOException e) {
+                return;
+            }
+
+            updateRateLimit(response);
+
+            // Rate limited anyway, the headers say when the window resets so wait for it and try again
+            if (response.statusCode() == 429) {
+                remaining = 0;
+                if (closed) return;
+                continue;
+            }
+
+            if (response.statusCode() != 200) return;
+
+            Map<String, GeoInfo> results = new HashMap<>();
+            for (JsonElement element : JsonParser.parseString(response.body()).getAsJsonArray()) {
+                JsonObject object = element.getAsJsonObject();
+                GeoInfo info = GeoResolver.parse(object);
+                if (info != null && object.has("query")) results.put(object.get("query").getAsString(), info);
+            }
+
+            for (Pending pending : batch) {
+                GeoInfo info = results.get(pending.ip());
+                if (info != null && cache != null) cache.put(pending.ip(), info);
+                pending.future().complete(info);
+            }
+
+            return;
+        }
+    }
+
+    // Returns false if the resolver was closed while waiting, close shouldn't have to sit out a full window
+    private boolean awaitRateLimit() throws InterruptedException {
+        if (remaining > 0) return true;
+
+        long wait;
+        while ((wait = resetAt - System.nanoTime()) > 0) {
+            if (closed) return false;
+            TimeUnit.NANOSECONDS.sleep(Math.min(wait, TimeUnit.MILLISECONDS.toNanos(100)));
+        }
+
+        remaining = Integer.MAX_VALUE;
+        return true;
+    }
+
+    private void updateRateLimit(HttpResponse<?> response) {
+        Optional<String> rl = response.headers().firstValue("X-Rl");
+        Optional<String> ttl = response.headers().firstValue("X-Ttl");
+
+        try {
+            if (rl.isPresent()) remaining = Integer.parseInt(rl.get().trim());
+            if (ttl.isPresent()) resetAt = System.nanoTime() + TimeUnit.SECONDS.toNanos(Long.parseLong(ttl.get().trim()));
+        } catch (NumberFormatException ignored) {}
+
+        if (response.statusCode() == 429) {
+            // No ttl on a 429 means we can't know when the window resets, back off for a full minute
+            long now = System.nanoTime();
+            if (ttl.isEmpty()) resetAt = now + TimeUnit.MINUTES.toNanos(1);
+            resetAt = Math.max(resetAt, now + MIN_BACKOFF_NANOS);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package xyz.funtimes909.serverseekerv2_core.util;
+
+import xyz.funtimes909.serverseekerv2_core.records.BedrockPong;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// RakNet unconnected ping and pong, what Bedrock servers answer on UDP 19132
+// The pong is read in place with absolute gets, only the strings that end up in the result are decoded
+public class BedrockPing {
+    public static final int PING_LENGTH = 33;
+
+    private static final byte UNCONNECTED_PING = 0x01;
+    private static final byte UNCONNECTED_PONG = 0x1C;
+    private static final byte[] MAGIC = {
+            0x00, (byte) 0xFF, (byte) 0xFF, 0x00, (byte) 0xFE, (byte) 0xFE, (byte) 0xFE, (byte) 0xFE,
+            (byte) 0xFD, (byte) 0xFD, (byte) 0xFD, (byte) 0xFD, 0x12, 0x34, 0x56, 0x78
+    };
+
+    // Id, time, server guid and magic come before the length prefixed payload
+    private static final int HEADER_LENGTH = 1 + 8 + 8 + MAGIC.length + 2;
+    private static final int INVALID = Integer.MIN_VALUE;
+
+    // Writes a ping at the buffer's position, the pong echoes time back
+    public static void writePing(ByteBuffer buffer, long time, long clientGuid) {
+        buffer.put(UNCONNECTED_PING);
+        putLong(buffer, time);
+        buffer.put(MAGIC);
+        putLong(buffer, clientGuid);
+    }
+
+    // Parses the pong between the buffer's position and limit without moving either, null if it isn't a valid pong
+    // The payload looks like MCPE;motd;protocol;version;online;max;guid;sub motd;game mode;game mode id;port;port v6;
+    public static BedrockPong parsePong(ByteBuffer buffer) {
+        int position = buffer.position();
+        int limit = buffer.limit();
+        if (limit - position < HEADER_LENGTH) return null;
+        if (buffer.get(position) != UNCONNECTED_PONG) return null;
+
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (buffer.get(position + 17 + i) != MAGIC[i]) return null;
+        }
+
+        long serverGuid = getLong(buffer, position + 9);
+        int start = position + HEADER_LENGTH;
+        int end = start + ((buffer.get(start - 2) & 0xFF) << 8 | buffer.get(start - 1) & 0xFF);
+        if (end > limit) return null;
+
+        String edition = null;
+        String motd = null;
+        String subMotd = null;
+        String version = null;
+        String gameMode = null;
+        int protocol = INVALID;
+        int onlinePlayers = INVALID;
+        int maxPlayers = INVALID;
+        int gameModeId = INVALID;
+        int portV4 = INVALID;
+        int portV6 = INVALID;
+
+        // A semicolon is never part of a multibyte UTF-8 sequence, so fields can be found on the raw bytes
+        int field = 0;
+        int from = start;
+        for (int i = start; i <= end && field < 12; i++) {
+            if (i < end && buffer.get(i) != ';') continue;
+
+            switch (field) {
+                case 0 -> edition = edition(buffer, from, i);
+                case 1 -> motd = string(buffer, from, i);
+                case 2 -> protocol = parseInt(buffer, from, i);
+                case 3 -> version = string(buffer, from, i);
+                case 4 -> onlinePlayers = parseInt(buffer, from, i);
+                case 5 -> maxPlayers = parseInt(buffer, from, i);
+                // 6 repeats the server guid from the header
+                case 7 -> subMotd = string(buffer, from, i);
+                case 8 -> gameMode = string(buffer, from, i);
+                case 9 -> gameModeId = parseInt(buffer, from, i);
+                case 10 -> portV4 = parseInt(buffer, from, i);
+                case 11 -> portV6 = parseInt(buffer, from, i);
+                default -> {}
+            }
+
+            field++;
+            from = i + 1;
+        }
+
+        // Older servers stop after the player counts, anything shorter isn't a pong worth keeping
+        if (edition == null || motd == null || version == null) return null;
+        if (protocol == INVALID || onlinePlayers == INVALID || maxPlayers == INVALID) return null;
+
+        return new BedrockPong(
+                serverGuid,
+                edition,
+                motd,
+                emptyToNull(subMotd),
+                protocol,
+                version,
+                onlinePlayers,
+                maxPlayers,
+                emptyToNull(gameMode),
+                gameModeId == INVALID ? null : gameModeId,
+                portV4 == INVALID ? null : portV4 & 0xFFFF,
+                portV6 == INVALID ? null : portV6 & 0xFFFF
+        );
+    }
+
+    // Known editions share one instance instead of being decoded every time
+    private static String edition(ByteBuffer buffer, int from, int to) {
+        if (to - from == 4 && buffer.get(from) == 'M' && buffer.get(from + 1) == 'C' && buffer.get(from + 3) == 'E') {
+            if (buffer.get(from + 2) == 'P') return "MCPE";
+            if (buffer.get(from + 2) == 'E') return "MCEE";
+        }
+
+        return to > from ? string(buffer, from, to) : null;
+    }
+
+    private static String string(ByteBuffer buffer, int from, int to) {
+        if (buffer.hasArray()) return new String(buffer.array(), buffer.arrayOffset() + from, to - from, StandardCharsets.UTF_8);
+
+        byte[] bytes = new byte[to - from];
+        buffer.get(from, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // INVALID unless the field is an optionally negative decimal that fits an int
+    private static int parseInt(ByteBuffer buffer, int from, int to) {
+        boolean negative = from < to && buffer.get(from) == '-';
+        if (negative) from++;
+        if (from == to || to - from > 10) return INVALID;
+
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            int digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9) return INVALID;
+            value = value * 10 + digit;
+        }
+
+        if (negative) value = -value;
+        return value < Integer.MIN_VALUE + 1 || value > Integer.MAX_VALUE ? INVALID : (int) value;
+    }
+
+    private static String emptyToNull(String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+
+    // RakNet is big endian whatever order the buffer was set to
+    private static long getLong(ByteBuffer buffer, int index) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = value << 8 | buffer.get(index + i) & 0xFF;
+        }
+        return value;
+    }
+
+    private static void putLong(ByteBuffer buffer, long value) {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            buffer.put((byte) (value >>> shift));
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package xyz.funtimes909.serverseekerv2_core.util;
+
+import xyz.funtimes909.serverseekerv2_core.records.GeoInfo;
+
+import java.util.concurrent.CompletableFuture;
+
+// Source of country, ASN and organization data for an address, completes with null if the address can't be resolved
+public interface GeoLookup {
+    CompletableFuture<GeoInfo> resolve(String ip);
+}
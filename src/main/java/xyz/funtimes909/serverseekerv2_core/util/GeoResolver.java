@@ -0,0 +1,191 @@
+package xyz.funtimes909.serverseekerv2_core.util;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import xyz.funtimes909.serverseekerv2_core.records.GeoInfo;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+public class GeoResolver implements GeoLookup {
+    static final String FIELDS = "status,message,continent,countryCode,org,as,reverse,query";
+
+    // The client only has a connect timeout, without this a hung response would never complete
+    static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(10);
+
+    private final HttpClient client;
+    private final String baseUrl;
+    private final long ttlMillis;
+    private final boolean prefixFallback;
+    private final Cache ipCache;
+    private final Cache prefixCache;
+    private final Map<String, CompletableFuture<GeoInfo>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder prefixHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public GeoResolver(HttpClient client, String baseUrl, int maxEntries, Duration ttl, boolean prefixFallback) {
+        this.client = client;
+        this.baseUrl = baseUrl;
+        this.ttlMillis = ttl.toMillis();
+        this.prefixFallback = prefixFallback;
+        this.ipCache = new Cache(maxEntries);
+        this.prefixCache = new Cache(maxEntries);
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getPrefixHits() {
+        return prefixHits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    // Completes with null if the service rate limited or rejected the lookup, those results are never cached
+    @Override
+    public CompletableFuture<GeoInfo> resolve(String ip) {
+        GeoInfo cached = getCached(ip);
+        if (cached != null) return CompletableFuture.completedFuture(cached);
+
+        // Concurrent lookups for the same address share one request
+        CompletableFuture<GeoInfo> future = new CompletableFuture<>();
+        CompletableFuture<GeoInfo> pending = inFlight.putIfAbsent(ip, future);
+        if (pending != null) return pending;
+
+        fetch(ip).whenComplete((info, e) -> {
+            inFlight.remove(ip, future);
+            future.complete(info);
+        });
+
+        return future;
+    }
+
+    // Only consults the caches, never goes to the network
+    public GeoInfo getCached(String ip) {
+        long now = System.currentTimeMillis();
+
+        GeoInfo cached = ipCache.get(ip, now);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+
+        // Neighbouring addresses almost always share an ASN and organization, reverse DNS is per address so it's dropped
+        String prefix = prefixFallback ? prefixOf(ip) : null;
+        if (prefix != null) {
+            cached = prefixCache.get(prefix, now);
+            if (cached != null) {
+                prefixHits.increment();
+                return cached;
+            }
+        }
+
+        misses.increment();
+        return null;
+    }
+
+    public void put(String ip, GeoInfo info) {
+        long expires = System.currentTimeMillis() + ttlMillis;
+        ipCache.put(ip, info, expires);
+
+        String prefix = prefixFallback ? prefixOf(ip) : null;
+        if (prefix != null) {
+            prefixCache.put(prefix, new GeoInfo(info.country(), info.asn(), null, info.organization()), expires);
+        }
+    }
+
+    public void clear() {
+        ipCache.clear();
+        prefixCache.clear();
+    }
+
+    private CompletableFuture<GeoInfo> fetch(String ip) {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(baseUrl + "/json/" + ip + "?fields=" + FIELDS))
+                .timeout(REQUEST_TIMEOUT)
+                .build();
+
+        return client.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                .thenApply(response -> {
+                    if (response.statusCode() != 200) return null;
+
+                    GeoInfo info = parse(JsonParser.parseString(response.body()).getAsJsonObject());
+                    if (info != null) put(ip, info);
+                    return info;
+                })
+                .exceptionally(e -> null);
+    }
+
+    public static GeoInfo parse(JsonObject parsed) {
+        if (parsed.has("status") && !parsed.get("status").getAsString().equals("success")) return null;
+
+        return new GeoInfo(
+                getNonBlank(parsed, "countryCode"),
+                getNonBlank(parsed, "as"),
+                getNonBlank(parsed, "reverse"),
+                getNonBlank(parsed, "org")
+        );
+    }
+
+    private static String getNonBlank(JsonObject parsed, String key) {
+        JsonElement element = parsed.get(key);
+        if (element == null || element.isJsonNull() || element.getAsString().isBlank()) return null;
+        return element.getAsString();
+    }
+
+    // The /24 of an IPv4 address, IPv6 addresses have no prefix fallback
+    private static String prefixOf(String ip) {
+        int dot = ip.lastIndexOf('.');
+        if (dot == -1 || ip.indexOf(':') != -1) return null;
+        return ip.substring(0, dot);
+    }
+
+    // Access ordered LRU with a per entry expiry
+    private static class Cache {
+        private record Entry(GeoInfo info, long expires) {}
+
+        private final LinkedHashMap<String, Entry> entries;
+
+        private Cache(int maxEntries) {
+            this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                    return size() > maxEntries;
+                }
+            };
+        }
+
+        private synchronized GeoInfo get(String key, long now) {
+            Entry entry = entries.get(key);
+            if (entry == null) return null;
+
+            if (entry.expires() <= now) {
+                entries.remove(key);
+                return null;
+            }
+
+            return entry.info();
+        }
+
+        private synchronized void put(String key, GeoInfo info, long expires) {
+            entries.put(key, new Entry(info, expires));
+        }
+
+        private synchronized void clear() {
+            entries.clear();
+        }
+    }
+}
@@ -1,21 +1,43 @@
 package xyz.funtimes909.serverseekerv2_core.util;
 
+import java.io.IOException;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.time.Duration;
 
 public class HTTPUtils {
-    public static String run(String ip) {
-        try (HttpClient client = HttpClient.newHttpClient()) {
+    // One long lived client so connections to ip-api are kept alive and reused
+    public static final HttpClient CLIENT = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+
+    private static volatile GeoLookup resolver = new GeoResolver(CLIENT, "http://ip-api.com", 100_000, Duration.ofHours(24), true);
+
+    public static GeoLookup getResolver() {
+        return resolver;
+    }
 
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create("http://ip-api.com/json/" + ip + "?fields=status,message,continent,countryCode,org,as,reverse,query"))
-                    .build();
+    // Swap the enrichment source used by buildServerFromPing, for example for an OfflineGeoResolver
+    public static void setResolver(GeoLookup lookup) {
+        resolver = lookup;
+    }
+
+    public static String run(String ip) {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://ip-api.com/json/" + ip + "?fields=status,message,continent,countryCode,org,as,reverse,query"))
+                .build();
 
-            HttpResponse<String> response = client.sendAsync(request, HttpResponse.BodyHandlers.ofString()).join();
+        try {
+            HttpResponse<String> response = CLIENT.send(request, HttpResponse.BodyHandlers.ofString());
             if (response.statusCode() == 429) return null;
             return response.body();
+        } catch (IOException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
         }
     }
 }
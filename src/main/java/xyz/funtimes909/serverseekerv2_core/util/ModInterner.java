@@ -0,0 +1,27 @@
+package xyz.funtimes909.serverseekerv2_core.util;
+
+import xyz.funtimes909.serverseekerv2_core.records.Mod;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+// Modded servers keep sending the same few thousand mods, every equal mod shares one Mod instance and its strings
+public class ModInterner {
+    // A hostile server could invent mods forever, past this point new mods are handed back without being kept
+    private static final int MAX_ENTRIES = 250_000;
+
+    private static final ConcurrentHashMap<Mod, Mod> mods = new ConcurrentHashMap<>();
+
+    public static Mod intern(String modId, String modMarker) {
+        Mod mod = new Mod(modId, modMarker);
+        Mod existing = mods.get(mod);
+        if (existing != null) return existing;
+        if (mods.size() >= MAX_ENTRIES) return mod;
+
+        existing = mods.putIfAbsent(mod, mod);
+        return existing != null ? existing : mod;
+    }
+
+    public static int size() {
+        return mods.size();
+    }
+}
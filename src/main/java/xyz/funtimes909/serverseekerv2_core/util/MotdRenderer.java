@@ -0,0 +1,613 @@
+package xyz.funtimes909.serverseekerv2_core.util;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import xyz.funtimes909.serverseekerv2_core.types.AnsiCodes;
+import xyz.funtimes909.serverseekerv2_core.types.MotdFormat;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+
+// Renders a chat component description without recursion, nesting lives on explicit stacks so a hostile description can't overflow the thread stack
+// Components nested deeper than maxDepth are skipped and rendering stops once maxLength characters of text have been written
+// LEGACY output matches what MotdUtils.buildMOTD always produced, including emitting §l and §n for "bold": false and "underlined": false
+public class MotdRenderer {
+    public static final int DEFAULT_MAX_DEPTH = 128;
+    public static final int DEFAULT_MAX_LENGTH = 65536;
+
+    // A style is packed into a long, the low 24 bits are the color and the ordinal of a named color sits above them
+    private static final long RGB = 0xFFFFFFL;
+    private static final long COLORED = 1L << 24;
+    private static final int NAMED_SHIFT = 25;
+    private static final long COLOR_BITS = RGB | COLORED | (0x1FL << NAMED_SHIFT);
+    private static final long BOLD = 1L << 32;
+    private static final long ITALIC = 1L << 33;
+    private static final long UNDERLINED = 1L << 34;
+    private static final long STRIKETHROUGH = 1L << 35;
+    private static final long OBFUSCATED = 1L << 36;
+
+    // Legacy prefix of a component, the color code in the low 16 bits then whether the bold and underlined keys were there at all
+    private static final int LEGACY_BOLD = 1 << 16;
+    private static final int LEGACY_UNDERLINED = 1 << 17;
+
+    private static final AnsiCodes[] CODES = AnsiCodes.values();
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static final int OBJECT = 0;
+    private static final int ARRAY = 1;
+
+    private final MotdFormat format;
+    private final int maxDepth;
+    private final StringBuilder out;
+    private int remaining;
+    private StringBuilder scratch;
+
+    // The component currently being written
+    private String text;
+    private long style;
+    private int legacy;
+    private JsonElement extra;
+
+    // Arrays being walked by tree()
+    private JsonArray[] arrays;
+    private int[] indices;
+    private long[] arrayStyles;
+    private int[] arrayDepths;
+    private int arraySize;
+
+    // Containers the JsonReader is inside of, objects keep their component until the end of the object
+    private int[] kinds;
+    private int[] depths;
+    private long[] styles;
+    private int[] legacies;
+    private String[] texts;
+    private int[] marks;
+    private JsonElement[] deferred;
+    private int frameSize;
+
+    private MotdRenderer(MotdFormat format, int maxDepth, int maxLength, StringBuilder out) {
+        this.format = format;
+        this.maxDepth = maxDepth;
+        this.remaining = maxLength;
+        this.out = out;
+    }
+
+    public static String render(JsonElement element, MotdFormat format) {
+        StringBuilder out = new StringBuilder();
+        render(element, format, out);
+        return out.toString();
+    }
+
+    public static void render(JsonElement element, MotdFormat format, StringBuilder out) {
+        render(element, format, DEFAULT_MAX_DEPTH, DEFAULT_MAX_LENGTH, out);
+    }
+
+    public static void render(JsonElement element, MotdFormat format, int maxDepth, int maxLength, StringBuilder out) {
+        new MotdRenderer(format, maxDepth, maxLength, out).tree(element, 0, 0);
+    }
+
+    // Reads exactly one value, the reader is left after the description even when the budget ran out
+    public static void render(JsonReader reader, MotdFormat format, StringBuilder out) throws IOException {
+        render(reader, format, DEFAULT_MAX_DEPTH, DEFAULT_MAX_LENGTH, out);
+    }
+
+    public static void render(JsonReader reader, MotdFormat format, int maxDepth, int maxLength, StringBuilder out) throws IOException {
+        new MotdRenderer(format, maxDepth, maxLength, out).stream(reader);
+    }
+
+    private void tree(JsonElement element, long parentStyle, int depth) {
+        int bottom = arraySize;
+        JsonElement next = element;
+        long nextStyle = parentStyle;
+        int nextDepth = depth;
+
+        while (true) {
+            // An object's own text comes before its extra, a single object as extra is followed in place
+            while (next != null && nextDepth <= maxDepth && remaining > 0) {
+                if (next.isJsonObject()) {
+                    readComponent(next.getAsJsonObject(), nextStyle);
+                    writeComponent(out.length());
+                    next = extra;
+                    nextStyle = style;
+                    nextDepth++;
+                } else if (next.isJsonArray()) {
+                    pushArray(next.getAsJsonArray(), nextStyle, nextDepth);
+                    next = null;
+                } else {
+                    if (next.isJsonPrimitive()) write(out, next.getAsString(), nextStyle);
+                    next = null;
+                }
+            }
+
+            if (arraySize == bottom || remaining <= 0) break;
+
+            int top = arraySize - 1;
+            if (indices[top] == arrays[top].size()) {
+                arrays[--arraySize] = null;
+                continue;
+            }
+
+            next = arrays[top].get(indices[top]++);
+            nextStyle = arrayStyles[top];
+            nextDepth = next.isJsonArray() ? arrayDepths[top] + 1 : arrayDepths[top];
+        }
+
+        while (arraySize > bottom) arrays[--arraySize] = null;
+    }
+
+    private void readComponent(JsonObject object, long parentStyle) {
+        text = null;
+        style = parentStyle;
+        legacy = 0;
+        extra = null;
+
+        // One pass over the entries instead of a lookup per key
+        for (Map.Entry<String, JsonElement> entry : object.entrySet()) {
+            JsonElement value = entry.getValue();
+
+            switch (entry.getKey()) {
+                case "text" -> text = value.isJsonPrimitive() ? value.getAsString() : "";
+                case "color" -> {
+                    if (value.isJsonPrimitive()) color(value.getAsString());
+                }
+                case "bold" -> {
+                    legacy |= LEGACY_BOLD;
+                    if (value.isJsonPrimitive()) style = flag(style, BOLD, value.getAsBoolean());
+                }
+                case "underlined" -> {
+                    legacy |= LEGACY_UNDERLINED;
+                    if (value.isJsonPrimitive()) style = flag(style, UNDERLINED, value.getAsBoolean());
+                }
+                case "italic" -> {
+                    if (value.isJsonPrimitive()) style = flag(style, ITALIC, value.getAsBoolean());
+                }
+                case "strikethrough" -> {
+                    if (value.isJsonPrimitive()) style = flag(style, STRIKETHROUGH, value.getAsBoolean());
+                }
+                case "obfuscated" -> {
+                    if (value.isJsonPrimitive()) style = flag(style, OBFUSCATED, value.getAsBoolean());
+                }
+                case "extra" -> extra = value;
+                default -> {}
+            }
+        }
+    }
+
+    private void stream(JsonReader reader) throws IOException {
+        switch (reader.peek()) {
+            case BEGIN_OBJECT -> {
+                reader.beginObject();
+                pushFrame(OBJECT, 0, 0);
+            }
+            case BEGIN_ARRAY -> {
+                reader.beginArray();
+                pushFrame(ARRAY, 0, 0);
+            }
+            default -> {
+                String value = scalar(reader);
+                if (value != null) write(out, value, 0);
+                return;
+            }
+        }
+
+        while (frameSize > 0) {
+            int top = frameSize - 1;
+
+            if (!reader.hasNext()) {
+                endFrame(reader, top);
+            } else if (remaining <= 0) {
+                // Out of budget, the rest of the description still has to be consumed
+                if (kinds[top] == OBJECT) reader.nextName();
+                reader.skipValue();
+            } else if (kinds[top] == OBJECT) {
+                readKey(reader, top);
+            } else {
+                readElement(reader, top);
+            }
+        }
+    }
+
+    private void readKey(JsonReader reader, int top) throws IOException {
+        switch (reader.nextName()) {
+            case "text" -> {
+                String value = scalar(reader);
+                texts[top] = value == null ? "" : value;
+            }
+            case "color" -> {
+                String value = scalar(reader);
+                if (value != null) {
+                    style = styles[top];
+                    legacy = legacies[top];
+                    color(value);
+                    styles[top] = style;
+                    legacies[top] = legacy;
+                }
+            }
+            case "bold" -> {
+                legacies[top] |= LEGACY_BOLD;
+                styles[top] = flag(reader, styles[top], BOLD);
+            }
+            case "underlined" -> {
+                legacies[top] |= LEGACY_UNDERLINED;
+                styles[top] = flag(reader, styles[top], UNDERLINED);
+            }
+            case "italic" -> styles[top] = flag(reader, styles[top], ITALIC);
+            case "strikethrough" -> styles[top] = flag(reader, styles[top], STRIKETHROUGH);
+            case "obfuscated" -> styles[top] = flag(reader, styles[top], OBFUSCATED);
+            case "extra" -> readExtra(reader, top);
+            default -> reader.skipValue();
+        }
+    }
+
+    private void readExtra(JsonReader reader, int top) throws IOException {
+        int depth = depths[top] + 1;
+        if (depth > maxDepth) {
+            reader.skipValue();
+            return;
+        }
+
+        // Children inherit this component's style and a color key may still follow, so styled output keeps the subtree until the object ends
+        if (format == MotdFormat.ANSI || format == MotdFormat.HTML) {
+            deferred[top] = JsonParser.parseReader(reader);
+            return;
+        }
+
+        // Plain and legacy children don't depend on their parent, they are written straight away and the parent's text is inserted in front later
+        switch (reader.peek()) {
+            case BEGIN_OBJECT -> {
+                reader.beginObject();
+                pushFrame(OBJECT, depth, styles[top]);
+            }
+            case BEGIN_ARRAY -> {
+                reader.beginArray();
+                pushFrame(ARRAY, depth, styles[top]);
+            }
+            default -> {
+                String value = scalar(reader);
+                if (value != null) write(out, value, styles[top]);
+            }
+        }
+    }
+
+    private void readElement(JsonReader reader, int top) throws IOException {
+        switch (reader.peek()) {
+            case BEGIN_OBJECT -> {
+                reader.beginObject();
+                pushFrame(OBJECT, depths[top], styles[top]);
+            }
+            case BEGIN_ARRAY -> {
+                if (depths[top] + 1 > maxDepth) {
+                    reader.skipValue();
+                } else {
+                    reader.beginArray();
+                    pushFrame(ARRAY, depths[top] + 1, styles[top]);
+                }
+            }
+            case NULL -> reader.nextNull();
+            default -> write(out, scalar(reader), styles[top]);
+        }
+    }
+
+    private void endFrame(JsonReader reader, int top) throws IOException {
+        if (kinds[top] == ARRAY) {
+            reader.endArray();
+            frameSize--;
+            return;
+        }
+
+        reader.endObject();
+        text = texts[top];
+        style = styles[top];
+        legacy = legacies[top];
+        long ownStyle = style;
+        int depth = depths[top];
+        int mark = marks[top];
+        JsonElement children = deferred[top];
+
+        texts[top] = null;
+        deferred[top] = null;
+        frameSize--;
+
+        writeComponent(mark);
+        if (children != null) tree(children, ownStyle, depth + 1);
+    }
+
+    private void pushFrame(int kind, int depth, long style) {
+        if (kinds == null) {
+            kinds = new int[8];
+            depths = new int[8];
+            styles = new long[8];
+            legacies = new int[8];
+            texts = new String[8];
+            marks = new int[8];
+            deferred = new JsonElement[8];
+        } else if (frameSize == kinds.length) {
+            int size = frameSize * 2;
+            kinds = Arrays.copyOf(kinds, size);
+            depths = Arrays.copyOf(depths, size);
+            styles = Arrays.copyOf(styles, size);
+            legacies = Arrays.copyOf(legacies, size);
+            texts = Arrays.copyOf(texts, size);
+            marks = Arrays.copyOf(marks, size);
+            deferred = Arrays.copyOf(deferred, size);
+        }
+
+        kinds[frameSize] = kind;
+        depths[frameSize] = depth;
+        styles[frameSize] = style;
+        legacies[frameSize] = 0;
+        marks[frameSize] = out.length();
+        frameSize++;
+    }
+
+    private void pushArray(JsonArray array, long style, int depth) {
+        if (arrays == null) {
+            arrays = new JsonArray[8];
+            indices = new int[8];
+            arrayStyles = new long[8];
+            arrayDepths = new int[8];
+        } else if (arraySize == arrays.length) {
+            int size = arraySize * 2;
+            arrays = Arrays.copyOf(arrays, size);
+            indices = Arrays.copyOf(indices, size);
+            arrayStyles = Arrays.copyOf(arrayStyles, size);
+            arrayDepths = Arrays.copyOf(arrayDepths, size);
+        }
+
+        arrays[arraySize] = array;
+        indices[arraySize] = 0;
+        arrayStyles[arraySize] = style;
+        arrayDepths[arraySize] = depth;
+        arraySize++;
+    }
+
+    // Null for anything that isn't a string, number or boolean
+    private static String scalar(JsonReader reader) throws IOException {
+        switch (reader.peek()) {
+            case STRING, NUMBER -> {
+                return reader.nextString();
+            }
+            case BOOLEAN -> {
+                return String.valueOf(reader.nextBoolean());
+            }
+            case NULL -> reader.nextNull();
+            default -> reader.skipValue();
+        }
+
+        return null;
+    }
+
+    private static long flag(JsonReader reader, long style, long bit) throws IOException {
+        switch (reader.peek()) {
+            case BOOLEAN -> {
+                return flag(style, bit, reader.nextBoolean());
+            }
+            case STRING, NUMBER -> {
+                return flag(style, bit, Boolean.parseBoolean(reader.nextString()));
+            }
+            case NULL -> reader.nextNull();
+            default -> reader.skipValue();
+        }
+
+        return style;
+    }
+
+    private static long flag(long style, long bit, boolean set) {
+        return set ? style | bit : style & ~bit;
+    }
+
+    private void color(String color) {
+        // Legacy output never had hex colors
+        if (color.startsWith("#")) {
+            int rgb = parseHex(color);
+            if (rgb >= 0) style = (style & ~COLOR_BITS) | COLORED | rgb;
+            return;
+        }
+
+        AnsiCodes code = AnsiCodes.byName(color);
+        if (code == null) return;
+
+        legacy = (legacy & ~0xFFFF) | code.c;
+        if (code.isColor()) style = withColor(style, code);
+        else if (code == AnsiCodes.RESET) style &= ~COLOR_BITS;
+    }
+
+    private static long withColor(long style, AnsiCodes code) {
+        return (style & ~COLOR_BITS) | COLORED | ((long) (code.ordinal() + 1) << NAMED_SHIFT) | code.rgb;
+    }
+
+    private static int parseHex(String color) {
+        if (color.length() != 7) return -1;
+
+        int rgb = 0;
+        for (int i = 1; i < 7; i++) {
+            int digit = Character.digit(color.charAt(i), 16);
+            if (digit < 0) return -1;
+            rgb = rgb << 4 | digit;
+        }
+
+        return rgb;
+    }
+
+    // Writes the current component at mark, which is before its children when they were streamed first
+    private void writeComponent(int mark) {
+        if (text == null || remaining <= 0) return;
+
+        if (mark == out.length()) {
+            writeOwn(out);
+            return;
+        }
+
+        if (scratch == null) scratch = new StringBuilder();
+        scratch.setLength(0);
+        writeOwn(scratch);
+        out.insert(mark, scratch);
+    }
+
+    private void writeOwn(StringBuilder target) {
+        if (format == MotdFormat.LEGACY) {
+            char code = (char) legacy;
+            if (code != 0) target.append('§').append(code);
+            if ((legacy & LEGACY_BOLD) != 0) target.append("§l");
+            if ((legacy & LEGACY_UNDERLINED) != 0) target.append("§n");
+        }
+
+        write(target, text, style);
+    }
+
+    private void write(StringBuilder target, String text, long style) {
+        if (remaining <= 0) return;
+
+        int length = Math.min(text.length(), remaining);
+        remaining -= length;
+
+        switch (format) {
+            case LEGACY -> target.append(text, 0, length);
+            case PLAIN -> {
+                for (int i = 0; i < length; i++) {
+                    char c = text.charAt(i);
+                    if (c == '§') i++;
+                    else target.append(c);
+                }
+            }
+            default -> writeStyled(target, text, length, style);
+        }
+    }
+
+    // § codes inside the text change the style the same way the client applies them, a color clears formatting and §r goes back to the component's style
+    private void writeStyled(StringBuilder target, String text, int length, long base) {
+        long current = base;
+        boolean open = false;
+
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+
+            if (c == '§') {
+                if (++i == length) break;
+
+                long next = applyCode(current, base, text.charAt(i));
+                if (open && next != current) {
+                    close(target, current);
+                    open = false;
+                }
+
+                current = next;
+                continue;
+            }
+
+            if (!open) {
+                open(target, current);
+                open = true;
+            }
+
+            if (format == MotdFormat.HTML) escape(target, c);
+            else target.append(c);
+        }
+
+        if (open) close(target, current);
+    }
+
+    private static long applyCode(long current, long base, char c) {
+        AnsiCodes code = AnsiCodes.byCode(c);
+        if (code == null) return current;
+
+        return switch (code) {
+            case RESET -> base;
+            case BOLD -> current | BOLD;
+            case ITALIC -> current | ITALIC;
+            case UNDERLINE -> current | UNDERLINED;
+            case STRIKETHROUGH -> current | STRIKETHROUGH;
+            case OBFUSCATED -> current | OBFUSCATED;
+            default -> withColor(0, code);
+        };
+    }
+
+    private void open(StringBuilder target, long style) {
+        if (style == 0) return;
+
+        if (format == MotdFormat.ANSI) {
+            target.append("\u001b[");
+            int start = target.length();
+
+            if ((style & BOLD) != 0) parameter(target, start).append(AnsiCodes.BOLD.ansi);
+            if ((style & ITALIC) != 0) parameter(target, start).append(AnsiCodes.ITALIC.ansi);
+            if ((style & UNDERLINED) != 0) parameter(target, start).append(AnsiCodes.UNDERLINE.ansi);
+            if ((style & OBFUSCATED) != 0) parameter(target, start).append(AnsiCodes.OBFUSCATED.ansi);
+            if ((style & STRIKETHROUGH) != 0) parameter(target, start).append(AnsiCodes.STRIKETHROUGH.ansi);
+
+            if ((style & COLORED) != 0) {
+                int named = (int) (style >>> NAMED_SHIFT & 0x1F);
+                if (named != 0) {
+                    parameter(target, start).append(CODES[named - 1].ansi);
+                } else {
+                    // 24 bit color, terminals without it usually pick the nearest color
+                    parameter(target, start).append("38;2;")
+                            .append(style >>> 16 & 0xFF).append(';')
+                            .append(style >>> 8 & 0xFF).append(';')
+                            .append(style & 0xFF);
+                }
+            }
+
+            target.append('m');
+            return;
+        }
+
+        target.append("<span");
+        if ((style & OBFUSCATED) != 0) target.append(" class=\"obfuscated\"");
+
+        if ((style & (COLORED | BOLD | ITALIC | UNDERLINED | STRIKETHROUGH)) != 0) {
+            target.append(" style=\"");
+
+            if ((style & COLORED) != 0) {
+                target.append("color:#");
+                for (int shift = 20; shift >= 0; shift -= 4) {
+                    target.append(HEX[(int) (style >>> shift & 0xF)]);
+                }
+                target.append(';');
+            }
+
+            if ((style & BOLD) != 0) target.append("font-weight:bold;");
+            if ((style & ITALIC) != 0) target.append("font-style:italic;");
+
+            if ((style & (UNDERLINED | STRIKETHROUGH)) != 0) {
+                target.append("text-decoration:");
+                if ((style & UNDERLINED) != 0) target.append("underline");
+                if ((style & (UNDERLINED | STRIKETHROUGH)) == (UNDERLINED | STRIKETHROUGH)) target.append(' ');
+                if ((style & STRIKETHROUGH) != 0) target.append("line-through");
+                target.append(';');
+            }
+
+            target.append('"');
+        }
+
+        target.append('>');
+    }
+
+    private void close(StringBuilder target, long style) {
+        if (style == 0) return;
+
+        if (format == MotdFormat.ANSI) target.append("\u001b[").append(AnsiCodes.RESET.ansi).append('m');
+        else target.append("</span>");
+    }
+
+    private static StringBuilder parameter(StringBuilder target, int start) {
+        if (target.length() > start) target.append(';');
+        return target;
+    }
+
+    private static void escape(StringBuilder target, char c) {
+        switch (c) {
+            case '&' -> target.append("&amp;");
+            case '<' -> target.append("&lt;");
+            case '>' -> target.append("&gt;");
+            case '"' -> target.append("&quot;");
+            case '\'' -> target.append("&#39;");
+            case '\n' -> target.append("<br>");
+            default -> target.append(c);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package xyz.funtimes909.serverseekerv2_core.util;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+// Insert only hash set of longs kept outside the Java heap, meant for ServerKey values
+// Open addressing with linear probing over direct buffers, adds are lock free so any number of scanner threads can share one
+// The table never grows, size it up front: 100M keys take 2 GB at the default load factor
+public class OffHeapLongSet implements AutoCloseable {
+    // 128 MB per buffer, a single direct buffer can't be larger than 2 GB
+    private static final int SEGMENT_BITS = 24;
+    private static final long SEGMENT_MASK = (1L << SEGMENT_BITS) - 1;
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+    private static final long EMPTY = 0;
+
+    private final long slotMask;
+    private final long maxSize;
+    private final LongAdder size = new LongAdder();
+
+    // Zero marks an empty slot so it is tracked on the side
+    private final AtomicBoolean containsZero = new AtomicBoolean();
+    private volatile ByteBuffer[] segments;
+
+    public OffHeapLongSet(long expectedSize) {
+        this(expectedSize, 0.75);
+    }
+
+    public OffHeapLongSet(long expectedSize, double loadFactor) {
+        if (expectedSize <= 0) throw new IllegalArgumentException("Expected size must be positive");
+        if (loadFactor <= 0 || loadFactor >= 1) throw new IllegalArgumentException("Load factor must be between 0 and 1");
+
+        long slots = Long.highestOneBit((long) Math.ceil(expectedSize / loadFactor) - 1) << 1;
+        slots = Math.max(slots, 1L << 10);
+        slotMask = slots - 1;
+        maxSize = (long) (slots * loadFactor);
+
+        int segmentSlots = (int) Math.min(slots, 1L << SEGMENT_BITS);
+        ByteBuffer[] buffers = new ByteBuffer[(int) (slots / segmentSlots)];
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = ByteBuffer.allocateDirect(segmentSlots * Long.BYTES).order(ByteOrder.nativeOrder());
+        }
+
+        segments = buffers;
+    }
+
+    // Returns true if the key wasn't in the set yet
+    public boolean add(long key) {
+        if (key == EMPTY) {
+            boolean added = containsZero.compareAndSet(false, true);
+            if (added) size.increment();
+            return added;
+        }
+
+        ByteBuffer[] buffers = open();
+        long slot = slot(key);
+
+        while (true) {
+            ByteBuffer buffer = buffers[(int) (slot >>> SEGMENT_BITS)];
+            int offset = (int) (slot & SEGMENT_MASK) * Long.BYTES;
+            long current = (long) LONGS.getAcquire(buffer, offset);
+
+            if (current == key) return false;
+
+            if (current == EMPTY) {
+                // Counting before claiming keeps concurrent adds from overfilling the table
+                if (size.sum() >= maxSize) throw new IllegalStateException("Set is full at " + maxSize + " keys");
+                if (LONGS.compareAndSet(buffer, offset, EMPTY, key)) {
+                    size.increment();
+                    return true;
+                }
+
+                // Another thread claimed the slot first, look at it again since it may be this key
+                continue;
+            }
+
+            slot = (slot + 1) & slotMask;
+        }
+    }
+
+    public boolean contains(long key) {
+        if (key == EMPTY) return containsZero.get();
+
+        ByteBuffer[] buffers = open();
+        long slot = slot(key);
+
+        while (true) {
+            long current = (long) LONGS.getAcquire(buffers[(int) (slot >>> SEGMENT_BITS)], (int) (slot & SEGMENT_MASK) * Long.BYTES);
+            if (current == key) return true;
+            if (current == EMPTY) return false;
+            slot = (slot + 1) & slotMask;
+        }
+    }
+
+    public long size() {
+        return size.sum();
+    }
+
+    public long capacity() {
+        return maxSize;
+    }
+
+    public long memoryBytes() {
+        return (slotMask + 1) * Long.BYTES;
+    }
+
+    // Not safe while other threads are adding, meant for starting a new scan cycle
+    public void clear() {
+        ByteBuffer[] buffers = open();
+        byte[] zeros = new byte[64 * 1024];
+
+        for (ByteBuffer buffer : buffers) {
+            ByteBuffer view = buffer.duplicate().clear();
+            while (view.hasRemaining()) {
+                view.put(zeros, 0, Math.min(zeros.length, view.remaining()));
+            }
+        }
+
+        containsZero.set(false);
+        size.reset();
+    }
+
+    // Direct buffers are freed once they become unreachable, dropping them here lets that happen without waiting for the set itself
+    @Override
+    public void close() {
+        segments = null;
+    }
+
+    private ByteBuffer[] open() {
+        ByteBuffer[] buffers = segments;
+        if (buffers == null) throw new IllegalStateException("Set is closed");
+        return buffers;
+    }
+
+    // Keys are often sequential addresses, scramble them so they don't fill neighbouring slots
+    private long slot(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return key & slotMask;
+    }
+}
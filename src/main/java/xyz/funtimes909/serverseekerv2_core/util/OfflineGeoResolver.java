@@ -0,0 +1,174 @@
+package xyz.funtimes909.serverseekerv2_core.util;
+
+import xyz.funtimes909.serverseekerv2_core.records.GeoInfo;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+// Offline IPv4 enrichment from a local range dump, no network round trips
+// Ranges live in a memory mapped index and are found by binary search, lookups don't allocate
+public class OfflineGeoResolver implements GeoLookup {
+    private static final int MAGIC = 0x53534749; // "SSGI"
+    private static final int HEADER_SIZE = 12;
+    private static final int RANGE_SIZE = 12;
+
+    // Everything a lookup needs, swapped as a whole on reload so readers never see a half loaded index
+    private record Snapshot(MappedByteBuffer ranges, int rangeCount, GeoInfo[] records) {}
+
+    private volatile Snapshot snapshot;
+
+    public OfflineGeoResolver(Path index) throws IOException {
+        reload(index);
+    }
+
+    @Override
+    public CompletableFuture<GeoInfo> resolve(String ip) {
+        return CompletableFuture.completedFuture(lookup(ip));
+    }
+
+    public GeoInfo lookup(String ip) {
+        long address = ServerKey.parseIPv4(ip);
+        if (address == -1) return null;
+        return lookup((int) address);
+    }
+
+    public GeoInfo lookup(int address) {
+        Snapshot current = snapshot;
+        ByteBuffer ranges = current.ranges();
+
+        // Find the last range starting at or before the address
+        int low = 0;
+        int high = current.rangeCount() - 1;
+        int match = -1;
+
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int start = ranges.getInt(HEADER_SIZE + mid * RANGE_SIZE);
+
+            if (Integer.compareUnsigned(start, address) <= 0) {
+                match = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+
+        if (match == -1) return null;
+
+        int offset = HEADER_SIZE + match * RANGE_SIZE;
+        if (Integer.compareUnsigned(address, ranges.getInt(offset + 4)) > 0) return null;
+        return current.records()[ranges.getInt(offset + 8)];
+    }
+
+    // Map a compiled index and swap it in, lookups in progress finish against the previous one
+    public void reload(Path index) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(index, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        if (buffer.getInt(0) != MAGIC) throw new IOException("Not a compiled range index: " + index);
+        int rangeCount = buffer.getInt(4);
+        int recordCount = buffer.getInt(8);
+
+        // The record table is small (one entry per distinct ASN) so it lives on the heap
+        ByteBuffer records = buffer.duplicate().position(HEADER_SIZE + rangeCount * RANGE_SIZE);
+        GeoInfo[] infos = new GeoInfo[recordCount];
+        for (int i = 0; i < recordCount; i++) {
+            infos[i] = new GeoInfo(readString(records), readString(records), null, readString(records));
+        }
+
+        snapshot = new Snapshot(buffer, rangeCount, infos);
+    }
+
+    // Compile a range dump into the binary index format, written atomically so a live reload never sees a partial file
+    // Accepts iptoasn style rows, tab or comma separated: range_start, range_end, AS_number, country_code, AS_description
+    public static void compile(Path dump, Path index) throws IOException {
+        List<long[]> ranges = new ArrayList<>();
+        Map<GeoInfo, Integer> recordIds = new LinkedHashMap<>();
+
+        try (BufferedReader reader = Files.newBufferedReader(dump, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank() || line.startsWith("#")) continue;
+
+                String[] fields = line.split(line.indexOf('\t') != -1 ? "\t" : ",", 5);
+                if (fields.length < 5) continue;
+
+                long start = ServerKey.parseIPv4(fields[0].trim());
+                long end = ServerKey.parseIPv4(fields[1].trim());
+                String asNumber = fields[2].trim();
+
+                // IPv6 rows and unrouted space
+                if (start == -1 || end == -1 || asNumber.equals("0")) continue;
+
+                String country = fields[3].trim();
+                String organization = fields[4].trim();
+                GeoInfo info = new GeoInfo(
+                        country.isBlank() || country.equals("None") ? null : country,
+                        "AS" + asNumber + (organization.isBlank() ? "" : " " + organization),
+                        null,
+                        organization.isBlank() ? null : organization
+                );
+
+                int id = recordIds.computeIfAbsent(info, key -> recordIds.size());
+                ranges.add(new long[]{start, end, id});
+            }
+        }
+
+        ranges.sort(Comparator.comparingLong(range -> range[0]));
+
+        Path temp = index.resolveSibling(index.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(ranges.size());
+            out.writeInt(recordIds.size());
+
+            for (long[] range : ranges) {
+                out.writeInt((int) range[0]);
+                out.writeInt((int) range[1]);
+                out.writeInt((int) range[2]);
+            }
+
+            for (GeoInfo info : recordIds.keySet()) {
+                writeString(out, info.country());
+                writeString(out, info.asn());
+                writeString(out, info.organization());
+            }
+        }
+
+        Files.move(temp, index, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeShort(-1);
+            return;
+        }
+
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        short length = buffer.getShort();
+        if (length == -1) return null;
+
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,275 @@
+package xyz.funtimes909.serverseekerv2_core.util;
+
+import xyz.funtimes909.serverseekerv2_core.records.Version;
+import xyz.funtimes909.serverseekerv2_core.types.ServerType;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Classifies server software from the version name, the rules in server-types.txt are compiled into an Aho-Corasick automaton
+// One pass over the name finds every rule that matches, without splitting or lowercasing the string
+public class ServerClassifier {
+    private static final String RULES = "/server-types.txt";
+    private static final int ALPHABET = 128;
+
+    // Scanners keep seeing the same few thousand version names, custom ones past this point are classified without being kept
+    private static final int MAX_CACHED = 16_384;
+
+    private static volatile ServerClassifier current = fromResource();
+
+    // Transition table of the automaton, every state has a next state for each ASCII character
+    private final int[] transitions;
+    // Rules ending in each state, including through failure links, ordered by priority
+    private final int[][] outputs;
+
+    private final int[] lengths;
+    private final boolean[] anchored;
+    private final boolean[] boundedStart;
+    private final boolean[] boundedEnd;
+    private final ServerType[] types;
+
+    private final ConcurrentHashMap<String, Version> cache = new ConcurrentHashMap<>();
+
+    private ServerClassifier(List<String> patterns, List<ServerType> ruleTypes) {
+        int rules = patterns.size();
+        lengths = new int[rules];
+        anchored = new boolean[rules];
+        boundedStart = new boolean[rules];
+        boundedEnd = new boolean[rules];
+        types = ruleTypes.toArray(new ServerType[0]);
+
+        // Trie first, missing edges are -1
+        List<int[]> trie = new ArrayList<>();
+        List<List<Integer>> ends = new ArrayList<>();
+        trie.add(newState());
+        ends.add(new ArrayList<>());
+
+        for (int rule = 0; rule < rules; rule++) {
+            String pattern = patterns.get(rule);
+            if (pattern.startsWith("^")) {
+                anchored[rule] = true;
+                pattern = pattern.substring(1);
+            }
+
+            lengths[rule] = pattern.length();
+            boundedStart[rule] = Character.isLetterOrDigit(pattern.charAt(0));
+            boundedEnd[rule] = Character.isLetterOrDigit(pattern.charAt(pattern.length() - 1));
+
+            int state = 0;
+            for (int i = 0; i < pattern.length(); i++) {
+                int c = lower(pattern.charAt(i));
+                if (trie.get(state)[c] < 0) {
+                    trie.get(state)[c] = trie.size();
+                    trie.add(newState());
+                    ends.add(new ArrayList<>());
+                }
+                state = trie.get(state)[c];
+            }
+
+            ends.get(state).add(rule);
+        }
+
+        // Breadth first so a state's failure link is finished before its children need it
+        int states = trie.size();
+        int[] fail = new int[states];
+        transitions = new int[states * ALPHABET];
+        outputs = new int[states][];
+        outputs[0] = new int[0];
+
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int c = 0; c < ALPHABET; c++) {
+            int next = trie.get(0)[c];
+            if (next < 0) continue;
+
+            transitions[c] = next;
+            queue.add(next);
+        }
+
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+
+            TreeSet<Integer> matched = new TreeSet<>(ends.get(state));
+            for (int rule : outputs[fail[state]]) matched.add(rule);
+            outputs[state] = matched.stream().mapToInt(Integer::intValue).toArray();
+
+            for (int c = 0; c < ALPHABET; c++) {
+                int next = trie.get(state)[c];
+                if (next < 0) {
+                    transitions[state * ALPHABET + c] = transitions[fail[state] * ALPHABET + c];
+                } else {
+                    fail[next] = transitions[fail[state] * ALPHABET + c];
+                    transitions[state * ALPHABET + c] = next;
+                    queue.add(next);
+                }
+            }
+        }
+    }
+
+    public static ServerClassifier getDefault() {
+        return current;
+    }
+
+    // Swap the rules used by ServerObjectBuilder, for example with a file that knows about more brands
+    public static void setDefault(ServerClassifier classifier) {
+        current = classifier;
+    }
+
+    public static ServerClassifier load(InputStream in) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        List<String> patterns = new ArrayList<>();
+        List<ServerType> ruleTypes = new ArrayList<>();
+
+        String line;
+        int number = 0;
+        while ((line = reader.readLine()) != null) {
+            number++;
+            line = line.strip();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+
+            int split = line.indexOf(' ');
+            if (split < 0) throw new IllegalArgumentException("Rule without a pattern on line " + number);
+
+            ServerType type;
+            try {
+                type = ServerType.valueOf(line.substring(0, split));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown server type " + line.substring(0, split) + " on line " + number);
+            }
+
+            String pattern = line.substring(split + 1).strip();
+            if (pattern.isEmpty() || pattern.equals("^")) throw new IllegalArgumentException("Empty pattern on line " + number);
+            if (!pattern.chars().allMatch(c -> c < ALPHABET)) throw new IllegalArgumentException("Pattern isn't ASCII on line " + number);
+
+            patterns.add(pattern);
+            ruleTypes.add(type);
+        }
+
+        return new ServerClassifier(patterns, ruleTypes);
+    }
+
+    // Cached by the exact version name, the cached record is handed out as is when the protocol matches too
+    public Version classify(String version, int protocol) {
+        Version cached = cache.get(version);
+        if (cached != null) {
+            return cached.protocol() == protocol ? cached : new Version(version, protocol, cached.type());
+        }
+
+        Version classified = new Version(version, protocol, match(version));
+        if (cache.size() < MAX_CACHED) cache.putIfAbsent(version, classified);
+        return classified;
+    }
+
+    public ServerType match(String version) {
+        int best = Integer.MAX_VALUE;
+        int state = 0;
+        int length = version.length();
+
+        for (int i = 0; i < length && best > 0; i++) {
+            char c = version.charAt(i);
+
+            // No pattern contains anything outside ASCII
+            if (c >= ALPHABET) {
+                state = 0;
+                continue;
+            }
+
+            state = transitions[state * ALPHABET + lower(c)];
+            for (int rule : outputs[state]) {
+                if (rule >= best) break;
+                if (matches(version, rule, i)) {
+                    best = rule;
+                    break;
+                }
+            }
+        }
+
+        if (best != Integer.MAX_VALUE) return types[best];
+        return isRange(version) ? ServerType.MULTIVERSION : ServerType.JAVA;
+    }
+
+    public int cacheSize() {
+        return cache.size();
+    }
+
+    private boolean matches(String version, int rule, int end) {
+        int start = end - lengths[rule] + 1;
+        if (anchored[rule] && start != 0) return false;
+        if (boundedStart[rule] && start > 0 && Character.isLetterOrDigit(version.charAt(start - 1))) return false;
+
+        // Digits may follow straight away, like Paper1.8
+        return !boundedEnd[rule] || end + 1 == version.length() || !Character.isLetter(version.charAt(end + 1));
+    }
+
+    // Proxies with ViaVersion style support answer with something like 1.8.x-1.21.x or 1.7.2 - 1.21.4
+    private static boolean isRange(String version) {
+        int length = version.length();
+
+        for (int i = 0; i < length; i++) {
+            int end = versionNumber(version, i);
+            if (end < 0) continue;
+
+            int next = end;
+            while (next < length && version.charAt(next) == ' ') next++;
+            if (next < length && version.charAt(next) == '-') {
+                next++;
+                while (next < length && version.charAt(next) == ' ') next++;
+                if (versionNumber(version, next) > 0) return true;
+            }
+
+            i = end - 1;
+        }
+
+        return false;
+    }
+
+    // End of a version number like 1.21, 1.8.x or 1.20.4 starting at index, -1 if there isn't one
+    private static int versionNumber(String version, int index) {
+        int length = version.length();
+        if (index >= length || !isDigit(version.charAt(index))) return -1;
+        if (index > 0 && (isDigit(version.charAt(index - 1)) || version.charAt(index - 1) == '.')) return -1;
+
+        int i = index;
+        while (i < length && isDigit(version.charAt(i))) i++;
+
+        int groups = 0;
+        while (i + 1 < length && version.charAt(i) == '.') {
+            char c = version.charAt(i + 1);
+            if (c == 'x' || c == 'X') {
+                i += 2;
+            } else if (isDigit(c)) {
+                i++;
+                while (i < length && isDigit(version.charAt(i))) i++;
+            } else {
+                break;
+            }
+            groups++;
+        }
+
+        return groups > 0 ? i : -1;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static int lower(char c) {
+        return c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c;
+    }
+
+    private static int[] newState() {
+        int[] edges = new int[ALPHABET];
+        Arrays.fill(edges, -1);
+        return edges;
+    }
+
+    private static ServerClassifier fromResource() {
+        try (InputStream in = ServerClassifier.class.getResourceAsStream(RULES)) {
+            if (in == null) throw new IllegalStateException("Missing " + RULES);
+            return load(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
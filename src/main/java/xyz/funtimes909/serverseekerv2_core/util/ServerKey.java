@@ -0,0 +1,94 @@
+package xyz.funtimes909.serverseekerv2_core.util;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+
+// Packs an address and port into one long so large sets of servers fit in primitive collections
+// IPv4 keys are exact: top bit clear, address in bits 16 to 47, unsigned port in the low 16 bits
+// Anything else (IPv6, hostnames) sets the top bit and keeps a 47 bit hash of the address, so two of those can collide
+public class ServerKey {
+    private static final long HASHED = 1L << 63;
+
+    public static long pack(String address, int port) {
+        long ipv4 = parseIPv4(address);
+        if (ipv4 != -1) return pack((int) ipv4, port);
+
+        return HASHED | ((hash(address) & 0x7FFF_FFFF_FFFFL) << 16) | (port & 0xFFFF);
+    }
+
+    public static long pack(int ipv4, int port) {
+        return ((ipv4 & 0xFFFF_FFFFL) << 16) | (port & 0xFFFF);
+    }
+
+    public static boolean isIPv4(long key) {
+        return (key & HASHED) == 0;
+    }
+
+    public static int port(long key) {
+        return (int) (key & 0xFFFF);
+    }
+
+    public static int ipv4(long key) {
+        if (!isIPv4(key)) throw new IllegalArgumentException("Key doesn't hold an IPv4 address");
+        return (int) (key >>> 16);
+    }
+
+    // Only IPv4 keys can be turned back into an address
+    public static String address(long key) {
+        int ip = ipv4(key);
+        return (ip >>> 24) + "." + ((ip >>> 16) & 0xFF) + "." + ((ip >>> 8) & 0xFF) + "." + (ip & 0xFF);
+    }
+
+    // Returns the address as an unsigned value, or -1 if it isn't a dotted IPv4 address
+    public static long parseIPv4(CharSequence ip) {
+        if (ip == null) return -1;
+
+        long address = 0;
+        int octet = 0;
+        int digits = 0;
+        int dots = 0;
+
+        for (int i = 0; i < ip.length(); i++) {
+            char c = ip.charAt(i);
+
+            if (c >= '0' && c <= '9') {
+                octet = octet * 10 + (c - '0');
+                if (++digits > 3 || octet > 255) return -1;
+            } else if (c == '.' && digits > 0 && dots < 3) {
+                address = (address << 8) | octet;
+                octet = 0;
+                digits = 0;
+                dots++;
+            } else {
+                return -1;
+            }
+        }
+
+        if (dots != 3 || digits == 0) return -1;
+        return (address << 8) | octet;
+    }
+
+    // IPv6 literals are hashed in binary form so "::1" and "0:0:0:0:0:0:0:1" get the same key
+    private static long hash(String address) {
+        byte[] bytes = null;
+
+        if (address.indexOf(':') != -1) {
+            try {
+                // A literal containing ':' is parsed directly, never resolved
+                bytes = InetAddress.getByName(address).getAddress();
+            } catch (UnknownHostException ignored) {}
+        }
+
+        if (bytes == null) bytes = address.toLowerCase().getBytes(StandardCharsets.UTF_8);
+
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : bytes) {
+            hash = (hash ^ (b & 0xFF)) * 0x100000001b3L;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        return hash ^ (hash >>> 33);
+    }
+}
@@ -2,20 +2,30 @@ package xyz.funtimes909.serverseekerv2_core.util;
 
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import xyz.funtimes909.serverseekerv2_core.records.BedrockPong;
+import xyz.funtimes909.serverseekerv2_core.records.GeoInfo;
 import xyz.funtimes909.serverseekerv2_core.records.Mod;
 import xyz.funtimes909.serverseekerv2_core.records.Player;
 import xyz.funtimes909.serverseekerv2_core.records.Server;
 import xyz.funtimes909.serverseekerv2_core.records.Version;
+import xyz.funtimes909.serverseekerv2_core.types.MotdFormat;
 import xyz.funtimes909.serverseekerv2_core.types.ServerType;
 
+import java.io.StringReader;
+import java.nio.ByteBuffer;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
 
 public class ServerObjectBuilder {
-    public static Server buildServerFromPing(String address, short port, JsonObject parsedJson) {
+    public static Server buildServerFromPing(String address, int port, JsonObject parsedJson) {
+        return buildServerFromPing(address, port, parsedJson, HTTPUtils.getResolver());
+    }
+
+    // A null lookup leaves the geo fields empty, for callers that enrich in a separate step
+    public static Server buildServerFromPing(String address, int port, JsonObject parsedJson, GeoLookup lookup) {
         try {
             String version = null;
             String asn = null;
@@ -32,25 +42,12 @@ public class ServerObjectBuilder {
             List<Mod> modsList = new ArrayList<>();
             long timestamp = System.currentTimeMillis() / 1000;
 
-            String response = HTTPUtils.run(address);
-            if (response != null) {
-                JsonObject parsed = JsonParser.parseString(response).getAsJsonObject();
-
-                if (!parsed.get("countryCode").getAsString().isBlank()) {
-                    country = parsed.get("countryCode").getAsString();
-                }
-
-                if (!parsed.get("reverse").getAsString().isBlank()) {
-                    hostname = parsed.get("reverse").getAsString();
-                }
-
-                if (!parsed.get("org").getAsString().isBlank()) {
-                    organization = parsed.get("org").getAsString();
-                }
-
-                if (!parsed.get("as").getAsString().isBlank()) {
-                    asn = parsed.get("as").getAsString();
-                }
+            GeoInfo geo = lookup != null ? lookup.resolve(address).join() : null;
+            if (geo != null) {
+                country = geo.country();
+                hostname = geo.reverseDns();
+                organization = geo.organization();
+                asn = geo.asn();
             }
 
             if (parsedJson.has("version")) {
@@ -63,11 +60,7 @@ public class ServerObjectBuilder {
 
             // Description can be either an object or a string
             if (parsedJson.has("description")) {
-                if (parsedJson.get("description").isJsonObject()) {
-                    MotdUtils.buildMOTD(parsedJson.get("description").getAsJsonObject(), 10, motd);
-                } else {
-                    motd.append(parsedJson.get("description").getAsString());
-                }
+                MotdRenderer.render(parsedJson.get("description"), MotdFormat.LEGACY, motd);
             }
 
             // Handle Forge servers
@@ -76,7 +69,7 @@ public class ServerObjectBuilder {
                 type = ServerType.LEXFORGE;
                 if (parsedJson.get("forgeData").getAsJsonObject().has("mods")) {
                     for (JsonElement mod : parsedJson.get("forgeData").getAsJsonObject().get("mods").getAsJsonArray().asList()) {
-                        modsList.add(new Mod(
+                        modsList.add(ModInterner.intern(
                                 mod.getAsJsonObject().get("modId").getAsString(),
                                 mod.getAsJsonObject().get("modmarker").getAsString()
                         ));
@@ -129,43 +122,343 @@ public class ServerObjectBuilder {
         }
     }
 
-    public static Version getServerType(JsonObject parsedJson) {
-        JsonObject object = parsedJson.get("version").getAsJsonObject();
-        String version = object.get("name").getAsString();
-        int protocol = object.get("protocol").getAsInt();
-        ServerType type = ServerType.JAVA;
-
-        if (parsedJson.has("isModded")) {
-            type = ServerType.NEOFORGE;
-            return new Version(version, protocol, type);
-        } else if (parsedJson.has("forgeData")) {
-            type = ServerType.LEXFORGE;
-            return new Version(version, protocol, type);
+    // Single pass over the raw status response, fills the same fields as the JsonObject version without building a tree
+    public static Server buildServerFromPing(String address, int port, String rawJson) {
+        return buildServerFromPing(address, port, rawJson, HTTPUtils.getResolver());
+    }
+
+    public static Server buildServerFromPing(String address, int port, String rawJson, GeoLookup lookup) {
+        try (JsonReader reader = new JsonReader(new StringReader(rawJson))) {
+            String version = null;
+            String asn = null;
+            String country = null;
+            String hostname = null;
+            String organization = null;
+            String icon = null;
+            Integer protocol = null;
+            Integer fmlNetworkVersion = null;
+            Integer maxPlayers = null;
+            Integer onlinePlayers = null;
+            Boolean preventsReports = null;
+            Boolean enforceSecure = null;
+            boolean isModded = false;
+            boolean forge = false;
+            ServerType type = null;
+            StringBuilder motd = new StringBuilder();
+            List<Player> playerList = new ArrayList<>();
+            List<Mod> modsList = new ArrayList<>();
+            long timestamp = System.currentTimeMillis() / 1000;
+
+            GeoInfo geo = lookup != null ? lookup.resolve(address).join() : null;
+            if (geo != null) {
+                country = geo.country();
+                hostname = geo.reverseDns();
+                organization = geo.organization();
+                asn = geo.asn();
+            }
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "version" -> {
+                        reader.beginObject();
+                        while (reader.hasNext()) {
+                            switch (reader.nextName()) {
+                                case "name" -> version = reader.nextString();
+                                case "protocol" -> protocol = reader.nextInt();
+                                default -> reader.skipValue();
+                            }
+                        }
+                        reader.endObject();
+
+                        // The tree version reads both unconditionally, a version object missing either is not a server
+                        if (version == null || protocol == null) throw new IllegalStateException("Version without name or protocol");
+                    }
+
+                    // Description can be either an object or a string, both are rendered straight off the reader
+                    case "description" -> MotdRenderer.render(reader, MotdFormat.LEGACY, motd);
+
+                    case "players" -> {
+                        reader.beginObject();
+                        while (reader.hasNext()) {
+                            switch (reader.nextName()) {
+                                case "max" -> maxPlayers = reader.nextInt();
+                                case "online" -> onlinePlayers = reader.nextInt();
+                                case "sample" -> {
+                                    reader.beginArray();
+                                    while (reader.hasNext()) {
+                                        String name = null;
+                                        String id = null;
+
+                                        reader.beginObject();
+                                        while (reader.hasNext()) {
+                                            switch (reader.nextName()) {
+                                                case "name" -> name = reader.nextString();
+                                                case "id" -> id = reader.nextString();
+                                                default -> reader.skipValue();
+                                            }
+                                        }
+                                        reader.endObject();
+
+                                        if (name == null || id == null) throw new IllegalStateException("Player sample without name or id");
+                                        playerList.add(new Player(name, id, timestamp, timestamp));
+                                    }
+                                    reader.endArray();
+                                }
+                                default -> reader.skipValue();
+                            }
+                        }
+                        reader.endObject();
+
+                        if (maxPlayers == null || onlinePlayers == null) throw new IllegalStateException("Players without max or online");
+                    }
+
+                    // Handle Forge servers
+                    case "forgeData" -> {
+                        forge = true;
+                        reader.beginObject();
+                        while (reader.hasNext()) {
+                            switch (reader.nextName()) {
+                                case "fmlNetworkVersion" -> fmlNetworkVersion = reader.nextInt();
+                                case "mods" -> {
+                                    reader.beginArray();
+                                    while (reader.hasNext()) {
+                                        String modId = null;
+                                        String modmarker = null;
+
+                                        reader.beginObject();
+                                        while (reader.hasNext()) {
+                                            switch (reader.nextName()) {
+                                                case "modId" -> modId = reader.nextString();
+                                                case "modmarker" -> modmarker = reader.nextString();
+                                                default -> reader.skipValue();
+                                            }
+                                        }
+                                        reader.endObject();
+
+                                        if (modId == null || modmarker == null) throw new IllegalStateException("Mod without modId or modmarker");
+                                        modsList.add(ModInterner.intern(modId, modmarker));
+                                    }
+                                    reader.endArray();
+                                }
+                                default -> reader.skipValue();
+                            }
+                        }
+                        reader.endObject();
+
+                        if (fmlNetworkVersion == null) throw new IllegalStateException("forgeData without fmlNetworkVersion");
+                    }
+
+                    case "isModded" -> {
+                        isModded = true;
+                        reader.skipValue();
+                    }
+
+                    case "favicon" -> icon = reader.nextString();
+                    case "preventsChatReports" -> preventsReports = reader.nextBoolean();
+                    case "enforcesSecureChat" -> enforceSecure = reader.nextBoolean();
+                    default -> reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            if (version != null) type = getServerType(version, protocol, isModded, forge).type();
+
+            if (forge) type = ServerType.LEXFORGE;
+
+            // Build server
+            return new Server.Builder()
+                    .setAddress(address)
+                    .setPort(port)
+                    .setServerType(type)
+                    .setFirstSeen(timestamp)
+                    .setLastSeen(timestamp)
+                    .setAsn(asn)
+                    .setCountry(country)
+                    .setReverseDns(hostname)
+                    .setOrganization(organization)
+                    .setVersion(version)
+                    .setProtocol(protocol)
+                    .setFmlNetworkVersion(fmlNetworkVersion)
+                    .setMotd(motd.toString())
+                    .setTimesSeen(1)
+                    .setIcon(icon)
+                    .setPreventsReports(preventsReports)
+                    .setEnforceSecure(enforceSecure)
+                    .setMaxPlayers(maxPlayers)
+                    .setOnlinePlayers(onlinePlayers)
+                    .setPlayers(playerList)
+                    .setMods(modsList)
+                    .build();
+        } catch (Exception ignored) {
+            return null;
         }
+    }
 
-        if (!Character.isDigit(version.charAt(0))) {
-            type = switch (version.split(" ")[0]) {
-                case "Paper" -> ServerType.PAPER;
-                case "Velocity" -> ServerType.VELOCITY;
-                case "BungeeCord" -> ServerType.BUNGEECORD;
-                case "Spigot" -> ServerType.SPIGOT;
-                case "CraftBukkit" -> ServerType.BUKKIT;
-                case "Folia" -> ServerType.FOLIA;
-                case "Pufferfish" -> ServerType.PUFFERFISH;
-                case "Purpur" -> ServerType.PURPUR;
-                case "Waterfall" -> ServerType.WATERFALL;
-                case "Leaves" -> ServerType.LEAVES;
-                default -> ServerType.JAVA;
-            };
+    // Bedrock servers answer a RakNet unconnected ping, the pong datagram is parsed in place
+    public static Server buildServerFromBedrockPong(String address, int port, ByteBuffer pong) {
+        return buildServerFromBedrockPong(address, port, pong, HTTPUtils.getResolver());
+    }
+
+    public static Server buildServerFromBedrockPong(String address, int port, ByteBuffer pong, GeoLookup lookup) {
+        try {
+            BedrockPong status = BedrockPing.parsePong(pong);
+            if (status == null) return null;
+
+            String asn = null;
+            String country = null;
+            String hostname = null;
+            String organization = null;
+            long timestamp = System.currentTimeMillis() / 1000;
+
+            GeoInfo geo = lookup != null ? lookup.resolve(address).join() : null;
+            if (geo != null) {
+                country = geo.country();
+                hostname = geo.reverseDns();
+                organization = geo.organization();
+                asn = geo.asn();
+            }
+
+            // The client shows both lines under each other, the same way a Java motd breaks lines
+            String motd = status.subMotd() != null ? status.motd() + "\n" + status.subMotd() : status.motd();
+
+            // Build server
+            return new Server.Builder()
+                    .setAddress(address)
+                    .setPort(port)
+                    .setServerType(ServerType.BEDROCK)
+                    .setFirstSeen(timestamp)
+                    .setLastSeen(timestamp)
+                    .setAsn(asn)
+                    .setCountry(country)
+                    .setReverseDns(hostname)
+                    .setOrganization(organization)
+                    .setVersion(status.version())
+                    .setProtocol(status.protocol())
+                    .setMotd(motd)
+                    .setTimesSeen(1)
+                    .setMaxPlayers(status.maxPlayers())
+                    .setOnlinePlayers(status.onlinePlayers())
+                    .setPlayers(new ArrayList<>())
+                    .setMods(new ArrayList<>())
+                    .build();
+        } catch (Exception ignored) {
+            return null;
         }
+    }
 
-        return new Version(
-                version,
-                protocol,
-                type
+    // Servers from before 1.7 answer the legacy 0xFE ping with a kick message instead of json
+    public static Server buildServerFromLegacyPing(String address, int port, String kick) {
+        return buildServerFromLegacyPing(address, port, kick, HTTPUtils.getResolver());
+    }
+
+    public static Server buildServerFromLegacyPing(String address, int port, String kick, GeoLookup lookup) {
+        try {
+            String version = null;
+            Integer protocol = null;
+            String motd;
+            int onlinePlayers;
+            int maxPlayers;
+
+            if (kick.startsWith("§1\0")) {
+                // 1.4 and later, protocol, version, motd, online and max players separated by nulls
+                String[] fields = new String[5];
+                int from = 3;
+                for (int i = 0; i < 4; i++) {
+                    int end = kick.indexOf('\0', from);
+                    if (end < 0) return null;
+                    fields[i] = kick.substring(from, end);
+                    from = end + 1;
+                }
+                fields[4] = kick.substring(from);
+
+                protocol = Integer.parseInt(fields[0]);
+                version = fields[1];
+                motd = fields[2];
+                onlinePlayers = Integer.parseInt(fields[3]);
+                maxPlayers = Integer.parseInt(fields[4]);
+            } else {
+                // Before 1.4 it is just the motd, online and max players separated by §
+                int max = kick.lastIndexOf('§');
+                int online = kick.lastIndexOf('§', max - 1);
+                if (online < 0) return null;
+
+                motd = kick.substring(0, online);
+                onlinePlayers = Integer.parseInt(kick.substring(online + 1, max));
+                maxPlayers = Integer.parseInt(kick.substring(max + 1));
+            }
+
+            String asn = null;
+            String country = null;
+            String hostname = null;
+            String organization = null;
+            long timestamp = System.currentTimeMillis() / 1000;
+
+            GeoInfo geo = lookup != null ? lookup.resolve(address).join() : null;
+            if (geo != null) {
+                country = geo.country();
+                hostname = geo.reverseDns();
+                organization = geo.organization();
+                asn = geo.asn();
+            }
+
+            // Build server
+            return new Server.Builder()
+                    .setAddress(address)
+                    .setPort(port)
+                    .setServerType(ServerType.LEGACY)
+                    .setFirstSeen(timestamp)
+                    .setLastSeen(timestamp)
+                    .setAsn(asn)
+                    .setCountry(country)
+                    .setReverseDns(hostname)
+                    .setOrganization(organization)
+                    .setVersion(version)
+                    .setProtocol(protocol)
+                    .setMotd(motd)
+                    .setTimesSeen(1)
+                    .setMaxPlayers(maxPlayers)
+                    .setOnlinePlayers(onlinePlayers)
+                    .setPlayers(new ArrayList<>())
+                    .setMods(new ArrayList<>())
+                    .build();
+        } catch (Exception ignored) {
+            return null;
+        }
+    }
+
+    // Copy of a server built without a lookup, with the geo fields filled in from a separate enrichment step
+    public static Server withGeo(Server server, GeoInfo geo) {
+        if (geo == null) return server;
+
+        return new Server.Builder(server)
+                .setCountry(geo.country())
+                .setReverseDns(geo.reverseDns())
+                .setOrganization(geo.organization())
+                .setAsn(geo.asn())
+                .build();
+    }
+
+    public static Version getServerType(JsonObject parsedJson) {
+        JsonObject object = parsedJson.get("version").getAsJsonObject();
+        return getServerType(
+                object.get("name").getAsString(),
+                object.get("protocol").getAsInt(),
+                parsedJson.has("isModded"),
+                parsedJson.has("forgeData")
         );
     }
 
+    public static Version getServerType(String version, int protocol, boolean isModded, boolean forge) {
+        if (isModded) {
+            return new Version(version, protocol, ServerType.NEOFORGE);
+        } else if (forge) {
+            return new Version(version, protocol, ServerType.LEXFORGE);
+        }
+
+        return ServerClassifier.getDefault().classify(version, protocol);
+    }
+
     public static Server buildServerFromResultSet(ResultSet results) throws SQLException {
         try (results) {
             Server.Builder server = new Server.Builder();
@@ -174,7 +467,7 @@ public class ServerObjectBuilder {
 
             while (results.next()) {
                 server.setAddress(results.getString("address"));
-                server.setPort(results.getShort("port"));
+                server.setPort(results.getInt("port"));
                 server.setMotd(results.getString("motd"));
                 server.setVersion(results.getString("version"));
                 server.setFirstSeen(results.getLong("firstseen"));
@@ -193,7 +486,7 @@ public class ServerObjectBuilder {
                 server.setFmlNetworkVersion(results.getInt("fmlnetworkversion"));
 
                 if (results.getString("playername") != null) players.add(new Player(results.getString("playername"), results.getString("playeruuid"), results.getLong("lastseen"), System.currentTimeMillis() / 1000));
-                if (results.getString("modid") != null) mods.add(new Mod(results.getString("modid"), results.getString("modmarker")));
+                if (results.getString("modid") != null) mods.add(ModInterner.intern(results.getString("modid"), results.getString("modmarker")));
             }
 
             server.setPlayers(players);
@@ -206,7 +499,7 @@ public class ServerObjectBuilder {
     public static Server buildServerFromApiResponse(JsonObject response) {
         return new Server.Builder()
                 .setAddress(response.get("address").getAsString())
-                .setPort(response.get("port").getAsShort())
+                .setPort(response.get("port").getAsInt())
                 .setMotd(!response.get("motd").isJsonNull() ? response.get("motd").getAsString() : null)
                 .setVersion(!response.get("version").isJsonNull() ? response.get("version").getAsString() : null)
                 .setFirstSeen(!response.get("firstseen").isJsonNull() ? response.get("firstseen").getAsLong() : 0)
@@ -0,0 +1,128 @@
+package xyz.funtimes909.serverseekerv2_core.database;
+
+import org.junit.jupiter.api.Test;
+import xyz.funtimes909.serverseekerv2_core.records.Mod;
+import xyz.funtimes909.serverseekerv2_core.records.Server;
+
+import java.lang.reflect.Proxy;
+import java.sql.*;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ModStoreTest {
+    @Test
+    public void linkableKeepsTheFirstMarkerOfEachModId() {
+        List<Mod> mods = List.of(new Mod("jei", "1.0"), new Mod(null, "2.0"), new Mod("forge", "ANY"), new Mod("jei", "2.0"));
+
+        assertEquals(List.of(new Mod("jei", "1.0"), new Mod("forge", "ANY")), ModStore.linkable(mods));
+        assertEquals(List.of(), ModStore.linkable(null));
+    }
+
+    @Test
+    public void nullAndEmptyMarkersShareOneDictionaryEntry() throws SQLException {
+        Tables tables = new Tables();
+        Map<Mod, Integer> resolved = ModStore.link(tables.connection(), List.of(
+                server("10.0.0.1", new Mod("jei", null)),
+                server("10.0.0.2", new Mod("jei", ""))
+        ));
+
+        assertEquals(2, resolved.size());
+        assertEquals(resolved.get(new Mod("jei", null)), resolved.get(new Mod("jei", "")));
+        assertEquals(1, tables.dictionary.size());
+        assertEquals(2, tables.links.size());
+
+        // The one inserted row resolves both, no follow up select is needed
+        assertEquals(1, tables.queries);
+    }
+
+    @Test
+    public void aChangedMarkerDoesNotAddASecondLink() throws SQLException {
+        Tables tables = new Tables();
+        Connection conn = tables.connection();
+
+        Map<Mod, Integer> first = ModStore.link(conn, List.of(server("10.0.0.1", new Mod("jei", "1.0"), new Mod("jei", "1.1"))));
+        ModStore.remember(conn, first);
+        ModStore.link(conn, List.of(server("10.0.0.1", new Mod("jei", "2.0"))));
+
+        assertEquals(Map.of("10.0.0.1:25565:jei", first.get(new Mod("jei", "1.0"))), tables.links);
+        assertEquals(2, tables.dictionary.size());
+    }
+
+    private static Server server(String address, Mod... mods) {
+        return new Server.Builder().setAddress(address).setPort(25565).setMods(List.of(mods)).build();
+    }
+
+    // Just enough of ModDictionary and ServerMods for the statements link runs, keyed the way their unique indexes are
+    private static class Tables {
+        private final String url = "jdbc:test:" + UUID.randomUUID();
+        private final Map<String, Integer> dictionary = new LinkedHashMap<>();
+        private final Map<String, Integer> links = new LinkedHashMap<>();
+        private int queries;
+
+        Connection connection() {
+            return proxy(Connection.class, (method, args) -> switch (method) {
+                case "getMetaData" -> proxy(DatabaseMetaData.class, (name, ignored) -> name.equals("getURL") ? url : "test");
+                case "createArrayOf" -> proxy(java.sql.Array.class, (name, ignored) -> args[1]);
+                case "prepareStatement" -> statement((String) args[0]);
+                default -> throw new UnsupportedOperationException(method);
+            });
+        }
+
+        private PreparedStatement statement(String sql) {
+            Map<Integer, Object[]> arrays = new HashMap<>();
+
+            return proxy(PreparedStatement.class, (method, args) -> switch (method) {
+                case "setArray" -> arrays.put((Integer) args[0], (Object[]) ((java.sql.Array) args[1]).getArray());
+                case "executeQuery" -> results(sql, arrays.get(1), arrays.get(2));
+                case "executeUpdate" -> {
+                    Object[] addresses = arrays.get(1), ports = arrays.get(2), modIds = arrays.get(3), modKeys = arrays.get(4);
+                    for (int i = 0; i < addresses.length; i++) {
+                        links.putIfAbsent(addresses[i] + ":" + ports[i] + ":" + modIds[i], (Integer) modKeys[i]);
+                    }
+                    yield addresses.length;
+                }
+                case "close" -> null;
+                default -> throw new UnsupportedOperationException(method);
+            });
+        }
+
+        private ResultSet results(String sql, Object[] modIds, Object[] markers) {
+            queries++;
+            List<Object[]> rows = new ArrayList<>();
+            for (int i = 0; i < modIds.length; i++) {
+                String key = modIds[i] + "\0" + (markers[i] == null ? "" : markers[i]);
+                Integer id = dictionary.get(key);
+
+                if (sql.contains("INSERT") && id == null) {
+                    id = dictionary.size() + 1;
+                    dictionary.put(key, id);
+                    rows.add(new Object[]{id, modIds[i], markers[i]});
+                } else if (!sql.contains("INSERT") && id != null) {
+                    rows.add(new Object[]{id, modIds[i], markers[i]});
+                }
+            }
+
+            Iterator<Object[]> iterator = rows.iterator();
+            Object[][] current = new Object[1][];
+            return proxy(ResultSet.class, (method, args) -> switch (method) {
+                case "next" -> {
+                    current[0] = iterator.hasNext() ? iterator.next() : null;
+                    yield current[0] != null;
+                }
+                case "getInt" -> current[0][0];
+                case "getString" -> args[0].equals("modid") ? current[0][1] : current[0][2];
+                case "close" -> null;
+                default -> throw new UnsupportedOperationException(method);
+            });
+        }
+
+        private interface Handler {
+            Object invoke(String method, Object[] args) throws Exception;
+        }
+
+        private static <T> T proxy(Class<T> type, Handler handler) {
+            return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> handler.invoke(method.getName(), args)));
+        }
+    }
+}
@@ -0,0 +1,320 @@
+package xyz.funtimes909.serverseekerv2_core.input;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import xyz.funtimes909.serverseekerv2_core.types.ScanFormat;
+import xyz.funtimes909.serverseekerv2_core.util.OffHeapLongSet;
+import xyz.funtimes909.serverseekerv2_core.util.ServerKey;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ScanResultReaderTest {
+    private static final String LIST = """
+            #masscan
+            open tcp 25565 10.0.0.1 1700000000
+            open tcp 25566 10.0.0.2 1700000001\r
+            banner tcp 25565 10.0.0.1 1700000002 http "HTTP/1.1 200 OK"
+            open udp 19132 10.0.0.3 1700000003
+            open tcp 25565 10.0.0.300 1700000004
+            open tcp 99999 10.0.0.4 1700000005
+            open tcp 25565 192.168.1.20 1700000006
+            # end""";
+
+    private static final String JSON = """
+            [
+            {   "ip": "10.0.0.1",   "timestamp": "1700000000", "ports": [ {"port": 25565, "proto": "tcp", "status": "open", "reason": "syn-ack", "ttl": 54} ] }
+            ,
+            {   "ip": "10.0.0.2",   "timestamp": "1700000001", "ports": [ {"port": 25566, "proto": "tcp", "status": "open", "reason": "syn-ack", "ttl": 54} ] }
+            ,
+            {   "ip": "10.0.0.1",   "timestamp": "1700000002", "ports": [ {"port": 25565, "proto": "tcp", "service": {"name": "minecraft", "banner": "A Minecraft Server"} } ] }
+            ,
+            {   "ip": "10.0.0.3",   "timestamp": "1700000003", "ports": [ {"port": 19132, "proto": "udp", "status": "open", "reason": "udp-response", "ttl": 54} ] }
+            ,
+            {   "ip": "10.0.0.4",   "timestamp": "1700000004", "ports": [ {"port": 25565, "proto": "tcp", "status": "closed", "reason": "rst", "ttl": 54} ] }
+            ,
+            {   "ip": "192.168.1.20",   "timestamp": "1700000005", "ports": [ {"port": 25565, "proto": "tcp", "status": "open", "reason": "syn-ack", "ttl": 118} ] }
+            ]
+            """;
+
+    private static final String ZMAP = """
+            saddr,sport,success,classification
+            10.0.0.1,25565,1,synack
+            10.0.0.2,25565,0,rst
+            10.0.0.3,25566,true,synack
+            10.0.0.4,25565,false,rst
+            192.168.1.20,25565,1,synack
+            """;
+
+    // masscan binary record types besides the header
+    private static final int OPEN_V1 = 1;
+    private static final int BANNER = 5;
+    private static final int OPEN_V2 = 6;
+    private static final int CLOSED_V2 = 7;
+
+    private final List<Path> files = new ArrayList<>();
+
+    @AfterEach
+    public void delete() throws IOException {
+        for (Path file : files) {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void detectsEveryFormat() throws IOException {
+        assertEquals(ScanFormat.MASSCAN_LIST, ScanResultReader.detect(write(LIST)));
+        assertEquals(ScanFormat.MASSCAN_JSON, ScanResultReader.detect(write(JSON)));
+        assertEquals(ScanFormat.MASSCAN_JSON, ScanResultReader.detect(write(JSON.substring(2))));
+        assertEquals(ScanFormat.ZMAP_CSV, ScanResultReader.detect(write(ZMAP)));
+        assertEquals(ScanFormat.MASSCAN_BINARY, ScanResultReader.detect(write(binary())));
+    }
+
+    @Test
+    public void readsMasscanLists() throws Exception {
+        Path file = write(LIST);
+        List<String> expected = List.of("10.0.0.1:25565", "10.0.0.2:25566", "192.168.1.20:25565");
+
+        try (ScanResultReader reader = reader(file).build()) {
+            assertEquals(expected, readAll(reader));
+            assertEquals(6, reader.getSkipped());
+            assertEquals(Files.size(file), reader.getPosition());
+        }
+
+        assertAcrossWindows(file, expected);
+        assertResumes(file, expected);
+    }
+
+    @Test
+    public void readsMasscanJson() throws Exception {
+        List<String> expected = List.of("10.0.0.1:25565", "10.0.0.2:25566", "192.168.1.20:25565");
+
+        // -oJ wraps the records in an array, -oD is the same records one per line
+        for (Path file : List.of(write(JSON), write(JSON.substring(2).replace("\n,\n", "\n").replace("]\n", "")))) {
+            try (ScanResultReader reader = reader(file).build()) {
+                assertEquals(ScanFormat.MASSCAN_JSON, reader.getFormat());
+                assertEquals(expected, readAll(reader));
+            }
+
+            assertAcrossWindows(file, expected);
+            assertResumes(file, expected);
+        }
+    }
+
+    @Test
+    public void readsZmapCsv() throws Exception {
+        Path file = write(ZMAP);
+        List<String> expected = List.of("10.0.0.1:25565", "10.0.0.3:25566", "192.168.1.20:25565");
+
+        try (ScanResultReader reader = reader(file).build()) {
+            assertEquals(expected, readAll(reader));
+            assertEquals(2, reader.getSkipped());
+        }
+
+        assertAcrossWindows(file, expected);
+        assertResumes(file, expected);
+    }
+
+    @Test
+    public void readsZmapAddressListsWithTheDefaultPort() throws Exception {
+        Path file = write("10.0.0.1\n10.0.0.2\r\nnot an address\n10.0.0.3");
+
+        try (ScanResultReader reader = reader(file).setDefaultPort(25570).build()) {
+            assertEquals(ScanFormat.ZMAP_CSV, reader.getFormat());
+            assertEquals(List.of("10.0.0.1:25570", "10.0.0.2:25570", "10.0.0.3:25570"), readAll(reader));
+        }
+    }
+
+    @Test
+    public void readsMasscanBinary() throws Exception {
+        Path file = write(binary());
+        List<String> expected = List.of("10.0.0.1:25565", "10.0.0.2:25566", "10.0.0.5:25567", "192.168.1.20:25565");
+
+        // Without a seen set the repeated open record is handed over again
+        List<String> all = List.of("10.0.0.1:25565", "10.0.0.2:25566", "10.0.0.5:25567", "10.0.0.1:25565", "192.168.1.20:25565");
+        try (ScanResultReader reader = reader(file).build()) {
+            assertEquals(all, readAll(reader));
+
+            // Header, udp, closed and banner records
+            assertEquals(4, reader.getSkipped());
+            assertEquals(Files.size(file), reader.getPosition());
+        }
+
+        try (OffHeapLongSet seen = new OffHeapLongSet(16);
+             ScanResultReader reader = reader(file).setSeen(seen).build()) {
+            assertEquals(expected, readAll(reader));
+            assertEquals(1, reader.getDuplicates());
+        }
+
+        assertAcrossWindows(file, all);
+        assertResumes(file, expected);
+    }
+
+    @Test
+    public void rejectsATruncatedBinaryRecord() throws IOException {
+        byte[] bytes = binary();
+        Path file = write(Arrays.copyOf(bytes, bytes.length - 3));
+
+        try (ScanResultReader reader = reader(file).build()) {
+            IOException e = assertThrows(IOException.class, () -> reader.read(key -> {}));
+            assertTrue(e.getMessage().startsWith("Truncated record"), e.getMessage());
+        }
+    }
+
+    @Test
+    public void rejectsARecordLargerThanTheWindow() throws IOException {
+        Path file = write(LIST);
+
+        try (ScanResultReader reader = reader(file).setWindowSize(16).build()) {
+            assertThrows(IOException.class, () -> reader.read(key -> {}));
+        }
+    }
+
+    @Test
+    public void dedupesAcrossFiles() throws Exception {
+        try (OffHeapLongSet seen = new OffHeapLongSet(16)) {
+            try (ScanResultReader reader = reader(write(LIST)).setSeen(seen).build()) {
+                assertEquals(3, reader.read(key -> {}));
+            }
+
+            try (ScanResultReader reader = reader(write(ZMAP)).setSeen(seen).build()) {
+                assertEquals(List.of("10.0.0.3:25566"), readAll(reader));
+                assertEquals(2, reader.getDuplicates());
+            }
+        }
+    }
+
+    @Test
+    public void anOffsetInsideALineSkipsThatLine() throws Exception {
+        Path file = write(LIST);
+        long inside = LIST.indexOf("open tcp 25566") + 3;
+
+        try (ScanResultReader reader = reader(file).setStartOffset(inside).build()) {
+            assertEquals(List.of("192.168.1.20:25565"), readAll(reader));
+        }
+    }
+
+    // Every window from the longest record up moves the boundary through each record at least once
+    private void assertAcrossWindows(Path file, List<String> expected) throws Exception {
+        int longest = longestRecord(file);
+
+        for (int window = longest; window < longest + 128; window++) {
+            try (ScanResultReader reader = reader(file).setWindowSize(window).build()) {
+                assertEquals(expected, readAll(reader), "Window of " + window);
+                assertEquals(Files.size(file), reader.getPosition(), "Window of " + window);
+            }
+        }
+    }
+
+    // The sink fails on each target in turn, resuming from getPosition() with the same seen set must lose or repeat nothing
+    private void assertResumes(Path file, List<String> expected) throws Exception {
+        int window = longestRecord(file) + 5;
+
+        for (int failAt = 0; failAt < expected.size(); failAt++) {
+            List<String> delivered = new ArrayList<>();
+            long position;
+
+            try (OffHeapLongSet seen = new OffHeapLongSet(16)) {
+                try (ScanResultReader reader = reader(file).setSeen(seen).setWindowSize(window).build()) {
+                    int fail = failAt;
+                    assertThrows(IllegalStateException.class, () -> reader.read(key -> {
+                        if (delivered.size() == fail) throw new IllegalStateException("Pipeline is closed");
+                        delivered.add(format(key));
+                    }));
+                    position = reader.getPosition();
+                }
+
+                try (ScanResultReader reader = reader(file).setSeen(seen).setWindowSize(window).setStartOffset(position).build()) {
+                    delivered.addAll(readAll(reader));
+                }
+            }
+
+            assertEquals(expected, delivered, "Failed at target " + failAt);
+        }
+    }
+
+    private static int longestRecord(Path file) throws IOException {
+        byte[] bytes = Files.readAllBytes(file);
+
+        // The 99 byte header and the banner are the largest binary records
+        if (bytes.length > 0 && bytes[0] == 'm') return 2 + 200 + 1;
+
+        int longest = 0;
+        int start = 0;
+        for (int i = 0; i <= bytes.length; i++) {
+            if (i == bytes.length || bytes[i] == '\n') {
+                longest = Math.max(longest, i - start + 1);
+                start = i + 1;
+            }
+        }
+
+        return longest;
+    }
+
+    private static ScanResultReader.Builder reader(Path file) {
+        return new ScanResultReader.Builder().setFile(file);
+    }
+
+    private static List<String> readAll(ScanResultReader reader) throws IOException, InterruptedException {
+        List<String> keys = new ArrayList<>();
+        reader.read(key -> keys.add(format(key)));
+        return keys;
+    }
+
+    private static String format(long key) {
+        return ServerKey.address(key) + ":" + ServerKey.port(key);
+    }
+
+    // What masscan -oB writes: a 99 byte header that reads as a record of type 'm', then type and length prefixed records
+    private static byte[] binary() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] header = Arrays.copyOf("masscan/1.1\ns:1700000000\n".getBytes(StandardCharsets.US_ASCII), 2 + 'a');
+        out.writeBytes(header);
+
+        record(out, OPEN_V2, openV2("10.0.0.1", 6, 25565));
+        record(out, OPEN_V2, openV2("10.0.0.2", 6, 25566));
+        record(out, OPEN_V2, openV2("10.0.0.3", 17, 19132));
+        record(out, CLOSED_V2, openV2("10.0.0.4", 6, 25565));
+        record(out, OPEN_V1, ByteBuffer.allocate(12).putInt(1700000000).putInt(ipv4("10.0.0.5")).putShort((short) 25567).put((byte) 0x12).put((byte) 54).array());
+        record(out, BANNER, new byte[200]);
+        record(out, OPEN_V2, openV2("10.0.0.1", 6, 25565));
+        record(out, OPEN_V2, openV2("192.168.1.20", 6, 25565));
+
+        return out.toByteArray();
+    }
+
+    private static byte[] openV2(String address, int proto, int port) {
+        return ByteBuffer.allocate(13).putInt(1700000000).putInt(ipv4(address)).put((byte) proto).putShort((short) port).put((byte) 0x12).put((byte) 54).array();
+    }
+
+    private static void record(ByteArrayOutputStream out, int type, byte[] data) {
+        out.write(type);
+        if (data.length >= 128) out.write(0x80 | data.length >> 7);
+        out.write(data.length & 0x7F);
+        out.writeBytes(data);
+    }
+
+    private static int ipv4(String address) {
+        return (int) ServerKey.parseIPv4(address);
+    }
+
+    private Path write(String contents) throws IOException {
+        return write(contents.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Path write(byte[] contents) throws IOException {
+        Path file = Files.createTempFile("scan", ".out");
+        files.add(file);
+        Files.write(file, contents);
+        return file;
+    }
+}
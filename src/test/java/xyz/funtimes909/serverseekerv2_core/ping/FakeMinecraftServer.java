@@ -0,0 +1,127 @@
+package xyz.funtimes909.serverseekerv2_core.ping;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Answers status requests on localhost so PingEngine can be tested and measured without touching the network
+// LEGACY behaves like a server from before 1.7, it drops the modern handshake and only answers the 0xFE ping
+// SILENT accepts the connection and never answers anything
+public class FakeMinecraftServer implements AutoCloseable {
+    public enum Mode { MODERN, LEGACY, SILENT }
+
+    private final ServerSocket socket;
+    private final ExecutorService workers = Executors.newFixedThreadPool(64, task -> {
+        Thread thread = new Thread(task, "FakeMinecraftServer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Mode mode;
+    private final byte[] status;
+
+    public FakeMinecraftServer(Mode mode, String json) throws IOException {
+        this.mode = mode;
+        this.socket = new ServerSocket(0, 4096, InetAddress.getLoopbackAddress());
+
+        ByteArrayOutputStream packet = new ByteArrayOutputStream();
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(packet, 1 + varIntSize(body.length) + body.length);
+        packet.write(0x00);
+        writeVarInt(packet, body.length);
+        packet.write(body);
+        this.status = packet.toByteArray();
+
+        Thread acceptor = new Thread(this::accept, "FakeMinecraftServer-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public int port() {
+        return socket.getLocalPort();
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+        workers.shutdownNow();
+    }
+
+    private void accept() {
+        while (!socket.isClosed()) {
+            try {
+                Socket client = socket.accept();
+                workers.execute(() -> serve(client));
+            } catch (IOException ignored) {}
+        }
+    }
+
+    private void serve(Socket client) {
+        try (client) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(client.getInputStream()));
+            OutputStream out = client.getOutputStream();
+            // Never answers and keeps the connection open until the client gives up
+            if (mode == Mode.SILENT) {
+                while (in.read() >= 0) { }
+                return;
+            }
+
+            int first = in.read();
+            if (first == 0xFE) {
+                out.write(legacyKick());
+                out.flush();
+                return;
+            }
+
+            if (mode == Mode.LEGACY) return;
+
+            // Handshake, then the empty status request
+            in.skipNBytes(readVarInt(in, first));
+            in.skipNBytes(readVarInt(in, in.read()));
+            out.write(status);
+            out.flush();
+        } catch (IOException ignored) {}
+    }
+
+    private static byte[] legacyKick() {
+        String kick = "§1\0" + "74\0" + "1.6.4\0" + "A Minecraft Server\0" + "3\0" + "20";
+        ByteArrayOutputStream packet = new ByteArrayOutputStream();
+        packet.write(0xFF);
+        packet.write(kick.length() >> 8);
+        packet.write(kick.length());
+        packet.writeBytes(kick.getBytes(StandardCharsets.UTF_16BE));
+        return packet.toByteArray();
+    }
+
+    private static int readVarInt(DataInputStream in, int first) throws IOException {
+        int value = 0;
+        int b = first;
+        for (int i = 0; i < 5; i++) {
+            if (b < 0) throw new EOFException();
+            value |= (b & 0x7F) << (7 * i);
+            if ((b & 0x80) == 0) return value;
+            b = in.read();
+        }
+        throw new IOException("VarInt too long");
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write(value & 0x7F | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int varIntSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            size++;
+            value >>>= 7;
+        }
+        return size;
+    }
+}
@@ -0,0 +1,110 @@
+package xyz.funtimes909.serverseekerv2_core.ping;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import xyz.funtimes909.serverseekerv2_core.records.PingResponse;
+import xyz.funtimes909.serverseekerv2_core.records.Server;
+import xyz.funtimes909.serverseekerv2_core.types.ServerType;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PingEngineTest {
+    private static final int PINGS = 200;
+
+    private FakeMinecraftServer server;
+    private PingEngine engine;
+
+    @AfterEach
+    public void close() throws IOException, InterruptedException {
+        if (engine != null) engine.close();
+        if (server != null) server.close();
+    }
+
+    @Test
+    public void modernServersAnswerEveryPing() throws Exception {
+        server = new FakeMinecraftServer(FakeMinecraftServer.Mode.MODERN, status("forge"));
+        engine = new PingEngine.Builder().setMaxInFlight(64).build();
+
+        for (CompletableFuture<PingResponse> ping : pingAll()) {
+            PingResponse response = ping.join();
+            assertFalse(response.legacy());
+
+            Server built = PingEngine.build(response, null);
+            assertNotNull(built);
+            assertEquals(ServerType.LEXFORGE, built.getServerType());
+            assertEquals("1.16.5", built.getVersion());
+            assertEquals(150, built.getMods().size());
+        }
+
+        assertEquals(PINGS, engine.completed());
+        assertEquals(0, engine.legacyRetries());
+    }
+
+    @Test
+    public void serversFromBefore17AreAskedAgainWithTheLegacyPing() throws Exception {
+        server = new FakeMinecraftServer(FakeMinecraftServer.Mode.LEGACY, status("vanilla"));
+        engine = new PingEngine.Builder().setMaxInFlight(64).build();
+
+        for (CompletableFuture<PingResponse> ping : pingAll()) {
+            PingResponse response = ping.join();
+            assertTrue(response.legacy());
+
+            Server built = PingEngine.build(response, null);
+            assertNotNull(built);
+            assertEquals(ServerType.LEGACY, built.getServerType());
+            assertEquals("1.6.4", built.getVersion());
+            assertEquals(74, built.getProtocol());
+            assertEquals(3, built.getOnlinePlayers());
+            assertEquals(20, built.getMaxPlayers());
+        }
+
+        assertEquals(PINGS, engine.completed());
+        assertEquals(PINGS, engine.legacyRetries());
+    }
+
+    @Test
+    public void silentServersTimeOut() throws Exception {
+        server = new FakeMinecraftServer(FakeMinecraftServer.Mode.SILENT, status("vanilla"));
+        engine = new PingEngine.Builder()
+                .setMaxInFlight(64)
+                .setReadTimeout(Duration.ofMillis(200))
+                .build();
+
+        for (CompletableFuture<PingResponse> ping : pingAll()) {
+            CompletionException e = assertThrows(CompletionException.class, ping::join);
+            assertTrue(e.getCause() instanceof SocketTimeoutException, "Failed with " + e.getCause());
+        }
+
+        assertEquals(PINGS, engine.timedOut());
+        assertEquals(0, engine.legacyRetries());
+        assertEquals(0, engine.inFlight());
+    }
+
+    // More pings than maxInFlight, so status() also has to wait for permits
+    private List<CompletableFuture<PingResponse>> pingAll() throws InterruptedException {
+        List<CompletableFuture<PingResponse>> pings = new ArrayList<>(PINGS);
+        for (int i = 0; i < PINGS; i++) {
+            pings.add(engine.status("127.0.0.1", server.port()));
+        }
+
+        CompletableFuture.allOf(pings.toArray(new CompletableFuture<?>[0])).exceptionally(e -> null).join();
+        return pings;
+    }
+
+    private static String status(String name) throws IOException {
+        try (InputStream in = PingEngineTest.class.getResourceAsStream("/status/" + name + ".json")) {
+            assertNotNull(in, "No status response named " + name);
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
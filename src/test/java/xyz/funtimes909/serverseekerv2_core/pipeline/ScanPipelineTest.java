@@ -0,0 +1,105 @@
+package xyz.funtimes909.serverseekerv2_core.pipeline;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import xyz.funtimes909.serverseekerv2_core.ping.FakeMinecraftServer;
+import xyz.funtimes909.serverseekerv2_core.records.Server;
+import xyz.funtimes909.serverseekerv2_core.types.PipelineStage;
+import xyz.funtimes909.serverseekerv2_core.util.BatchGeoResolver;
+import xyz.funtimes909.serverseekerv2_core.util.GeoLookup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ScanPipelineTest {
+    private static final int SERVERS = 50;
+
+    private final List<Server> persisted = new CopyOnWriteArrayList<>();
+    private final List<Exception> failures = new CopyOnWriteArrayList<>();
+    private FakeMinecraftServer server;
+    private ScanPipeline pipeline;
+
+    @BeforeEach
+    public void start() throws IOException {
+        server = new FakeMinecraftServer(FakeMinecraftServer.Mode.MODERN, status("vanilla"));
+    }
+
+    @AfterEach
+    public void stop() throws IOException, InterruptedException {
+        if (pipeline != null) pipeline.close();
+        server.close();
+    }
+
+    @Test
+    public void serversGetThroughALookupThatThrows() throws Exception {
+        BatchGeoResolver closed = new BatchGeoResolver(null);
+        closed.close();
+
+        scan(closed);
+
+        assertEquals(SERVERS, persisted.size());
+        assertEquals(SERVERS, pipeline.getUnenriched());
+        assertEquals(0, pipeline.getStats(PipelineStage.ENRICH).failed());
+        assertTrue(failures.isEmpty());
+    }
+
+    @Test
+    public void serversGetThroughAFailedLookup() throws Exception {
+        scan(ip -> CompletableFuture.failedFuture(new IOException("ip-api is down")));
+
+        assertEquals(SERVERS, persisted.size());
+        assertEquals(SERVERS, pipeline.getUnenriched());
+        assertTrue(failures.isEmpty());
+    }
+
+    @Test
+    public void persistFailuresReachTheFailureHandler() throws Exception {
+        pipeline = builder(null)
+                .setPersister(server -> {
+                    throw new SQLException("Database is down");
+                })
+                .build();
+
+        submitAll();
+
+        assertEquals(SERVERS, failures.size());
+        for (Exception e : failures) {
+            assertInstanceOf(SQLException.class, e);
+        }
+        assertEquals(SERVERS, pipeline.getStats(PipelineStage.PERSIST).failed());
+    }
+
+    private void scan(GeoLookup lookup) throws Exception {
+        pipeline = builder(lookup).setPersister(persisted::add).build();
+        submitAll();
+    }
+
+    private ScanPipeline.Builder builder(GeoLookup lookup) {
+        return new ScanPipeline.Builder()
+                .setGeoLookup(lookup)
+                .setFailureHandler((server, e) -> failures.add(e));
+    }
+
+    private void submitAll() throws InterruptedException {
+        for (int i = 0; i < SERVERS; i++) {
+            pipeline.submit("127.0.0.1", server.port());
+        }
+
+        pipeline.flush();
+    }
+
+    private static String status(String name) throws IOException {
+        try (InputStream in = ScanPipelineTest.class.getResourceAsStream("/status/" + name + ".json")) {
+            assertNotNull(in, "No status response named " + name);
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
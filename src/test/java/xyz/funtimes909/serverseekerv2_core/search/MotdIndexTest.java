@@ -0,0 +1,135 @@
+package xyz.funtimes909.serverseekerv2_core.search;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import xyz.funtimes909.serverseekerv2_core.records.ServerAddress;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MotdIndexTest {
+    private MotdIndex index;
+
+    @BeforeEach
+    public void fill() {
+        index = new MotdIndex();
+        index.update("10.0.0.1", 25565, "§6Hyp§eixel Network §7[1.8-1.21]\n§aSkyBlock §7| §bBed Wars");
+        index.update("10.0.0.2", 25565, "A Minecraft Server");
+        index.update("10.0.0.3", 25565, "§lSurvival§r server, no resets");
+        index.update("10.0.0.4", 25566, "Skyblock and survival, join now!");
+        index.update("10.0.0.5", 25565, "Minecraft-Server network");
+    }
+
+    @Test
+    public void tokenizeKeepsWordsTogetherAcrossFormattingCodes() {
+        assertEquals(List.of("hypixel", "network"), MotdIndex.tokenize("§6Hyp§eixel Network"));
+        assertEquals(List.of("survival", "server"), MotdIndex.tokenize("§lSurvival§r server"));
+        assertEquals(List.of("bed", "wars"), MotdIndex.tokenize("§b§lBed §r§bWars§"));
+        assertEquals(List.of("a", "minecraft", "server"), MotdIndex.tokenize("A  Minecraft\nSERVER!"));
+        assertEquals(List.of("ünïcödé", "123"), MotdIndex.tokenize("Ünïcödé ✦ 123"));
+        assertEquals(List.of(), MotdIndex.tokenize(null));
+        assertEquals(List.of(), MotdIndex.tokenize("§a§l ✦ "));
+    }
+
+    @Test
+    public void wordsSplitByColourCodesAreFound() {
+        assertEquals(addresses(1), search("hypixel"));
+        assertEquals(addresses(), search("hyp"));
+        assertEquals(addresses(), search("ixel"));
+    }
+
+    @Test
+    public void allWordsMustMatch() {
+        assertEquals(addresses(3, 4), search("survival"));
+        assertEquals(addresses(4), search("SKYBLOCK survival"));
+        assertEquals(addresses(), search("skyblock survival wars"));
+    }
+
+    @Test
+    public void prefixMatchesEveryTermStartingWithIt() {
+        assertEquals(addresses(1, 4), search("sky*"));
+        assertEquals(addresses(2, 3, 5), search("serv*"));
+        assertEquals(addresses(), search("zzz*"));
+    }
+
+    @Test
+    public void phraseMatchesOnlyConsecutiveWords() {
+        assertEquals(addresses(2, 5), search("\"minecraft server\""));
+        assertEquals(addresses(), search("\"server minecraft\""));
+        assertEquals(addresses(1), search("\"hypixel network\""));
+
+        // Punctuation inside a word is treated like a phrase
+        assertEquals(addresses(2, 5), search("minecraft-server"));
+    }
+
+    @Test
+    public void orUnionsTheGroups() {
+        assertEquals(addresses(1, 2), search("hypixel OR \"a minecraft\""));
+        assertEquals(addresses(1, 3, 4), search("wars OR survival"));
+        assertEquals(addresses(4), search("OR skyblock survival OR"));
+    }
+
+    @Test
+    public void minusExcludesMatches() {
+        assertEquals(addresses(3), search("survival -skyblock"));
+        assertEquals(addresses(2, 3), search("server -network"));
+        assertEquals(addresses(5), search("server -\"a minecraft\" -survival"));
+
+        // Only exclusions is not a useful search
+        assertEquals(addresses(), search("-hypixel"));
+    }
+
+    @Test
+    public void removedServersStopMatching() {
+        assertEquals(5, index.size());
+
+        index.remove("10.0.0.2", 25565);
+        assertEquals(addresses(5), search("\"minecraft server\""));
+        assertEquals(4, index.size());
+
+        // Removing twice or removing a server that was never indexed changes nothing
+        index.remove("10.0.0.2", 25565);
+        index.remove("10.9.9.9", 25565);
+        assertEquals(4, index.size());
+
+        index.update("10.0.0.2", 25565, "Back online");
+        assertEquals(addresses(2), search("back"));
+        assertEquals(addresses(5), search("\"minecraft server\""));
+        assertEquals(5, index.size());
+    }
+
+    @Test
+    public void updatesReplaceTheOldMotd() {
+        // Enough churn that the posting lists have to compact their stale entries
+        for (int i = 0; i < 1000; i++) {
+            index.update("10.0.0.3", 25565, i % 2 == 0 ? "Creative plots" : "Survival server");
+        }
+
+        assertEquals(addresses(3, 4), search("survival"));
+        assertEquals(addresses(), search("creative"));
+        assertEquals(addresses(2, 3, 5), search("server"));
+        assertEquals(5, index.size());
+    }
+
+    @Test
+    public void limitCapsTheResults() {
+        assertEquals(2, index.search("serv*", 2).size());
+        assertEquals(0, index.search("serv*", 0).size());
+    }
+
+    private Set<ServerAddress> search(String query) {
+        return new HashSet<>(index.search(query, 100));
+    }
+
+    private static Set<ServerAddress> addresses(int... hosts) {
+        Set<ServerAddress> result = new HashSet<>();
+        for (int host : hosts) {
+            result.add(new ServerAddress("10.0.0." + host, host == 4 ? 25566 : 25565));
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,265 @@
+package xyz.funtimes909.serverseekerv2_core.util;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import xyz.funtimes909.serverseekerv2_core.records.GeoInfo;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Proxy;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BatchGeoResolverTest {
+    // A canned reply for the next request, after those run out every request is answered normally
+    private record Reply(int status, Map<String, String> headers) {}
+
+    private final ConcurrentLinkedQueue<Reply> replies = new ConcurrentLinkedQueue<>();
+    private final List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+    private final List<Long> requestTimes = new CopyOnWriteArrayList<>();
+    private HttpServer server;
+    private BatchGeoResolver resolver;
+
+    @BeforeEach
+    public void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/batch", this::handle);
+        server.start();
+
+        String baseUrl = "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+        resolver = new BatchGeoResolver(HttpClient.newHttpClient(), baseUrl, null, Duration.ofMillis(200));
+    }
+
+    @AfterEach
+    public void stop() throws InterruptedException {
+        resolver.close();
+        server.stop(0);
+    }
+
+    @Test
+    public void batchesAtMostOneHundredAddresses() {
+        List<String> ips = new ArrayList<>();
+        for (int i = 0; i < 250; i++) {
+            ips.add("10.0." + (i / 256) + "." + (i % 256));
+        }
+
+        Map<String, GeoInfo> results = resolver.resolveAll(ips);
+
+        assertEquals(250, results.size());
+        assertEquals("DE", results.get("10.0.0.7").country());
+        assertEquals(3, batchSizes.size());
+        for (int size : batchSizes) {
+            assertTrue(size <= BatchGeoResolver.MAX_BATCH, "Batch of " + size);
+        }
+        assertEquals(250, batchSizes.stream().mapToInt(Integer::intValue).sum());
+    }
+
+    @Test
+    public void unresolvableAddressesCompleteWithNull() {
+        assertNull(resolver.resolve("192.168.1.1").join());
+        assertEquals("AS24940 Hetzner Online GmbH", resolver.resolve("10.1.2.3").join().asn());
+    }
+
+    @Test
+    public void waitsForTheTtlAfterARateLimit() {
+        replies.add(new Reply(429, Map.of("X-Rl", "0", "X-Ttl", "1")));
+
+        assertNotNull(resolver.resolve("10.0.0.1").join());
+        assertEquals(2, requestTimes.size());
+        assertTrue(requestTimes.get(1) - requestTimes.get(0) >= 950, "Retried after " + (requestTimes.get(1) - requestTimes.get(0)) + "ms");
+    }
+
+    @Test
+    public void backsOffOnARateLimitWithZeroTtl() {
+        replies.add(new Reply(429, Map.of("X-Rl", "0", "X-Ttl", "0")));
+        replies.add(new Reply(429, Map.of("X-Ttl", "0")));
+
+        assertNotNull(resolver.resolve("10.0.0.1").join());
+        assertEquals(3, requestTimes.size());
+        for (int i = 1; i < requestTimes.size(); i++) {
+            long gap = requestTimes.get(i) - requestTimes.get(i - 1);
+            assertTrue(gap >= 950, "Retried after " + gap + "ms");
+        }
+    }
+
+    @Test
+    public void givesUpOnABatchThatStaysRateLimited() {
+        for (int i = 0; i < 10; i++) {
+            replies.add(new Reply(429, Map.of("X-Rl", "0", "X-Ttl", "0")));
+        }
+
+        assertNull(resolver.resolve("10.0.0.1").join());
+        assertEquals(5, requestTimes.size());
+    }
+
+    @Test
+    public void closeDoesNotWaitOutARateLimit() throws InterruptedException {
+        replies.add(new Reply(429, Map.of("X-Rl", "0", "X-Ttl", "60")));
+
+        CompletableFuture<GeoInfo> future = resolver.resolve("10.0.0.1");
+        while (requestTimes.isEmpty()) {
+            Thread.sleep(10);
+        }
+
+        long start = System.nanoTime();
+        resolver.close();
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5), "close waited for the rate limit window");
+        assertNull(future.join());
+        assertEquals(1, requestTimes.size());
+    }
+
+    @Test
+    public void backfillMovesPastAddressesThatNeverResolve() throws Exception {
+        // Private addresses come first, without attempt tracking every call would get the same 100 back
+        Servers servers = new Servers();
+        for (int i = 0; i < 150; i++) {
+            servers.add("192.168." + (i / 256) + "." + (i % 256));
+        }
+        for (int i = 0; i < 50; i++) {
+            servers.add("10.0." + (i / 256) + "." + (i % 256));
+        }
+
+        Connection conn = servers.connection();
+        assertEquals(0, resolver.backfill(conn, 100));
+        assertEquals(50, resolver.backfill(conn, 100));
+        assertEquals(50, servers.enriched());
+
+        int requests = batchSizes.size();
+        assertEquals(0, resolver.backfill(conn, 100));
+        assertEquals(requests, batchSizes.size());
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requestTimes.add(System.nanoTime() / 1_000_000);
+        JsonArray ips = JsonParser.parseString(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8)).getAsJsonArray();
+
+        Reply reply = replies.poll();
+        if (reply != null) {
+            reply.headers().forEach(exchange.getResponseHeaders()::add);
+            exchange.sendResponseHeaders(reply.status(), -1);
+            exchange.close();
+            return;
+        }
+
+        batchSizes.add(ips.size());
+
+        JsonArray body = new JsonArray();
+        for (JsonElement ip : ips) {
+            JsonObject result = new JsonObject();
+            result.addProperty("query", ip.getAsString());
+
+            if (ip.getAsString().startsWith("192.168.")) {
+                result.addProperty("status", "fail");
+                result.addProperty("message", "private range");
+            } else {
+                result.addProperty("status", "success");
+                result.addProperty("countryCode", "DE");
+                result.addProperty("as", "AS24940 Hetzner Online GmbH");
+                result.addProperty("org", "Hetzner");
+            }
+
+            body.add(result);
+        }
+
+        byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("X-Rl", "44");
+        exchange.getResponseHeaders().add("X-Ttl", "60");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    // Just enough of the Servers table for the three statements backfill runs
+    private static class Servers {
+        private final Map<String, GeoInfo> geo = new LinkedHashMap<>();
+        private final Map<String, Long> attempted = new HashMap<>();
+
+        void add(String address) {
+            geo.put(address, null);
+        }
+
+        int enriched() {
+            return (int) geo.values().stream().filter(Objects::nonNull).count();
+        }
+
+        Connection connection() {
+            return proxy(Connection.class, (method, args) -> switch (method) {
+                case "prepareStatement" -> statement((String) args[0]);
+                case "close" -> null;
+                default -> throw new UnsupportedOperationException(method);
+            });
+        }
+
+        private PreparedStatement statement(String sql) {
+            Map<Integer, Object> parameters = new HashMap<>();
+            List<Map<Integer, Object>> batch = new ArrayList<>();
+
+            return proxy(PreparedStatement.class, (method, args) -> switch (method) {
+                case "setLong", "setInt", "setString" -> parameters.put((Integer) args[0], args[1]);
+                case "addBatch" -> batch.add(new HashMap<>(parameters));
+                case "executeQuery" -> select((Long) parameters.get(1), (Integer) parameters.get(2));
+                case "executeBatch" -> {
+                    for (Map<Integer, Object> row : batch) {
+                        if (sql.contains("GeoAttemptedAt")) {
+                            attempted.put((String) row.get(2), (Long) row.get(1));
+                        } else {
+                            geo.put((String) row.get(5), new GeoInfo((String) row.get(1), (String) row.get(2), (String) row.get(3), (String) row.get(4)));
+                        }
+                    }
+                    yield new int[batch.size()];
+                }
+                case "close" -> null;
+                default -> throw new UnsupportedOperationException(method);
+            });
+        }
+
+        private ResultSet select(long attemptedBefore, int limit) {
+            Iterator<String> rows = geo.entrySet().stream()
+                    .filter(entry -> entry.getValue() == null)
+                    .map(Map.Entry::getKey)
+                    .filter(address -> !attempted.containsKey(address) || attempted.get(address) < attemptedBefore)
+                    .limit(limit)
+                    .iterator();
+            String[] current = new String[1];
+
+            return proxy(ResultSet.class, (method, args) -> switch (method) {
+                case "next" -> {
+                    current[0] = rows.hasNext() ? rows.next() : null;
+                    yield current[0] != null;
+                }
+                case "getString" -> current[0];
+                case "close" -> null;
+                default -> throw new UnsupportedOperationException(method);
+            });
+        }
+
+        private interface Handler {
+            Object invoke(String method, Object[] args) throws Exception;
+        }
+
+        private static <T> T proxy(Class<T> type, Handler handler) {
+            return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> handler.invoke(method.getName(), args)));
+        }
+    }
+}
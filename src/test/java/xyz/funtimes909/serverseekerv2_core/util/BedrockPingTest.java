@@ -0,0 +1,144 @@
+package xyz.funtimes909.serverseekerv2_core.util;
+
+import org.junit.jupiter.api.Test;
+import xyz.funtimes909.serverseekerv2_core.records.BedrockPong;
+import xyz.funtimes909.serverseekerv2_core.records.Server;
+import xyz.funtimes909.serverseekerv2_core.types.ServerType;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HexFormat;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BedrockPingTest {
+    // What a 1.21.30 dedicated server with the default server.properties answers, the guid is repeated in the payload
+    private static final byte[] DEDICATED_SERVER = HexFormat.of().parseHex(
+            "1c0000019295a0db7bb7ef2c4275b52e3100ffff00fefefefefdfdfdfd1234567800614d4350453b4465646963617465" +
+            "64205365727665723b3732393b312e32312e33303b303b31303b31333235333836303839323332383933303836353b42" +
+            "6564726f636b206c6576656c3b537572766976616c3b313b31393133323b31393133333b");
+
+    private static final byte[] MAGIC = HexFormat.of().parseHex("00ffff00fefefefefdfdfdfd12345678");
+
+    @Test
+    public void parsesADedicatedServerPong() {
+        BedrockPong pong = BedrockPing.parsePong(ByteBuffer.wrap(DEDICATED_SERVER));
+
+        assertNotNull(pong);
+        assertEquals(Long.parseUnsignedLong("13253860892328930865"), pong.serverGuid());
+        assertEquals("MCPE", pong.edition());
+        assertEquals("Dedicated Server", pong.motd());
+        assertEquals("Bedrock level", pong.subMotd());
+        assertEquals(729, pong.protocol());
+        assertEquals("1.21.30", pong.version());
+        assertEquals(0, pong.onlinePlayers());
+        assertEquals(10, pong.maxPlayers());
+        assertEquals("Survival", pong.gameMode());
+        assertEquals(1, pong.gameModeId());
+        assertEquals(19132, pong.portV4());
+        assertEquals(19133, pong.portV6());
+    }
+
+    @Test
+    public void leavesTheBufferWhereItWas() {
+        // Datagrams are read into a shared buffer, the pong may not start at zero
+        ByteBuffer buffer = ByteBuffer.allocate(DEDICATED_SERVER.length + 20);
+        buffer.position(7);
+        buffer.put(DEDICATED_SERVER);
+        buffer.flip().position(7);
+
+        assertEquals("Dedicated Server", BedrockPing.parsePong(buffer).motd());
+        assertEquals(7, buffer.position());
+        assertEquals(DEDICATED_SERVER.length + 7, buffer.limit());
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(DEDICATED_SERVER.length).put(DEDICATED_SERVER).flip();
+        assertEquals(BedrockPing.parsePong(ByteBuffer.wrap(DEDICATED_SERVER)), BedrockPing.parsePong(direct));
+    }
+
+    @Test
+    public void decodesMultibyteText() {
+        String motd = "§6Wïllkömmen ✦ 欢迎 🎮";
+        String payload = "MCPE;" + motd + ";748;1.21.40;3;20;1;Überwelt 世界;Creative;1;19132;19133;";
+
+        BedrockPong heap = BedrockPing.parsePong(ByteBuffer.wrap(pong(payload)));
+        BedrockPong direct = BedrockPing.parsePong(ByteBuffer.allocateDirect(pong(payload).length).put(pong(payload)).flip());
+
+        assertEquals(motd, heap.motd());
+        assertEquals("Überwelt 世界", heap.subMotd());
+        assertEquals(3, heap.onlinePlayers());
+        assertEquals(heap, direct);
+    }
+
+    @Test
+    public void acceptsOlderServersWithoutTheTrailingFields() {
+        BedrockPong pong = BedrockPing.parsePong(ByteBuffer.wrap(pong("MCEE;Classroom;390;1.14.0;1;30")));
+
+        assertEquals("MCEE", pong.edition());
+        assertEquals(30, pong.maxPlayers());
+        assertNull(pong.subMotd());
+        assertNull(pong.gameMode());
+        assertNull(pong.gameModeId());
+        assertNull(pong.portV4());
+        assertNull(pong.portV6());
+    }
+
+    @Test
+    public void rejectsALengthPrefixPastTheEnd() {
+        byte[] truncated = DEDICATED_SERVER.clone();
+        truncated[34]++;
+        assertNull(BedrockPing.parsePong(ByteBuffer.wrap(truncated)));
+
+        // The datagram was cut short after the header
+        assertNull(BedrockPing.parsePong(ByteBuffer.wrap(DEDICATED_SERVER, 0, DEDICATED_SERVER.length - 10)));
+    }
+
+    @Test
+    public void rejectsTheWrongIdOrMagic() {
+        for (int i = 0; i < 1 + 8 + 8 + MAGIC.length; i++) {
+            if (i >= 1 && i < 17) continue;
+
+            byte[] corrupted = DEDICATED_SERVER.clone();
+            corrupted[i] ^= 0x40;
+            assertNull(BedrockPing.parsePong(ByteBuffer.wrap(corrupted)), "Byte " + i);
+        }
+    }
+
+    @Test
+    public void rejectsShortAndPartialPayloads() {
+        assertNull(BedrockPing.parsePong(ByteBuffer.allocate(0)));
+        for (int length = 0; length < 35; length++) {
+            assertNull(BedrockPing.parsePong(ByteBuffer.wrap(DEDICATED_SERVER, 0, length)), "Length " + length);
+        }
+
+        // Everything up to the player counts is required
+        assertNull(BedrockPing.parsePong(ByteBuffer.wrap(pong(""))));
+        assertNull(BedrockPing.parsePong(ByteBuffer.wrap(pong("MCPE;Dedicated Server;729;1.21.30;0"))));
+        assertNull(BedrockPing.parsePong(ByteBuffer.wrap(pong(";Dedicated Server;729;1.21.30;0;10"))));
+        assertNull(BedrockPing.parsePong(ByteBuffer.wrap(pong("MCPE;Dedicated Server;seven;1.21.30;0;10"))));
+        assertNull(BedrockPing.parsePong(ByteBuffer.wrap(pong("MCPE;Dedicated Server;729;1.21.30;0;99999999999"))));
+    }
+
+    @Test
+    public void buildsABedrockServer() {
+        Server server = ServerObjectBuilder.buildServerFromBedrockPong("10.0.0.1", 19132, ByteBuffer.wrap(DEDICATED_SERVER), null);
+
+        assertEquals(ServerType.BEDROCK, server.getServerType());
+        assertEquals("10.0.0.1", server.getAddress());
+        assertEquals(19132, server.getPort());
+        assertEquals("Dedicated Server\nBedrock level", server.getMotd());
+        assertEquals("1.21.30", server.getVersion());
+        assertEquals(729, server.getProtocol());
+        assertEquals(0, server.getOnlinePlayers());
+        assertEquals(10, server.getMaxPlayers());
+        assertTrue(server.getMods().isEmpty());
+
+        assertNull(ServerObjectBuilder.buildServerFromBedrockPong("10.0.0.1", 19132, ByteBuffer.wrap(DEDICATED_SERVER, 0, 40), null));
+    }
+
+    private static byte[] pong(String payload) {
+        byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(1 + 8 + 8 + MAGIC.length + 2 + bytes.length);
+        buffer.put((byte) 0x1C).putLong(System.currentTimeMillis()).putLong(42).put(MAGIC).putShort((short) bytes.length).put(bytes);
+        return buffer.array();
+    }
+}
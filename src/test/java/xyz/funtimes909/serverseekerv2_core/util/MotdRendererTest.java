@@ -0,0 +1,141 @@
+package xyz.funtimes909.serverseekerv2_core.util;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import org.junit.jupiter.api.Test;
+import xyz.funtimes909.serverseekerv2_core.types.AnsiCodes;
+import xyz.funtimes909.serverseekerv2_core.types.MotdFormat;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MotdRendererTest {
+    private static final String[] COLORS = AnsiCodes.codes.keySet().toArray(new String[0]);
+    private static final String[] TEXTS = {"", " ", "A Minecraft Server", "§6legacy §lcodes", "\n", "Ünïcödé ✦ 🎮", "play.example.net", "\\\"quoted\\\""};
+    private static final String[] KEYS = {"text", "color", "bold", "underlined", "italic", "strikethrough", "obfuscated", "extra", "font", "insertion"};
+
+    private static final List<String> DESCRIPTIONS = List.of(
+            "\"A Minecraft Server\"",
+            "{\"text\":\"A Minecraft Server\"}",
+            "{\"text\":\"\",\"extra\":[{\"text\":\"Welcome to \",\"color\":\"gold\",\"bold\":true},{\"text\":\"Example\",\"color\":\"aqua\",\"extra\":[{\"text\":\" Network\",\"color\":\"white\",\"underlined\":true}]},\"\\n\",{\"text\":\"Survival | Skyblock\",\"color\":\"gray\"}]}",
+            "{\"text\":\"hex\",\"color\":\"#F5A623\",\"bold\":false,\"underlined\":false}",
+            "{\"color\":\"red\",\"extra\":[\"no text on the parent\"]}",
+            "{\"text\":\"single object extra\",\"extra\":{\"text\":\" child\",\"color\":\"green\"}}",
+            "{\"text\":5,\"extra\":[true,1.5,[{\"text\":\"x\",\"color\":\"reset\"},\"y\"]]}"
+    );
+
+    @Test
+    public void knownDescriptionsMatchTheRecursiveRenderer() throws IOException {
+        for (String json : DESCRIPTIONS) {
+            assertMatches(json);
+        }
+    }
+
+    @Test
+    public void corpusDescriptionsMatchTheRecursiveRenderer() throws IOException {
+        for (String name : List.of("vanilla", "paper", "forge", "neoforge")) {
+            JsonObject status = JsonParser.parseString(ServerObjectBuilderTest.status(name)).getAsJsonObject();
+            assertMatches(status.get("description").toString());
+        }
+    }
+
+    @Test
+    public void generatedDescriptionsMatchTheRecursiveRenderer() throws IOException {
+        Random random = new Random(20);
+        for (int i = 0; i < 10_000; i++) {
+            assertMatches(component(random, 0).toString());
+        }
+    }
+
+    private static void assertMatches(String json) throws IOException {
+        StringBuilder expected = new StringBuilder();
+        recursive(JsonParser.parseString(json), expected);
+
+        assertEquals(expected.toString(), MotdRenderer.render(JsonParser.parseString(json), MotdFormat.LEGACY), json);
+
+        StringBuilder streamed = new StringBuilder();
+        MotdRenderer.render(new JsonReader(new StringReader(json)), MotdFormat.LEGACY, streamed);
+        assertEquals(expected.toString(), streamed.toString(), json);
+    }
+
+    // Only what the recursive renderer could handle, it threw on anything else and the server was dropped
+    private static JsonObject component(Random random, int depth) {
+        JsonObject object = new JsonObject();
+        int keys = random.nextInt(KEYS.length);
+
+        for (int i = 0; i < keys; i++) {
+            String key = KEYS[random.nextInt(KEYS.length)];
+            switch (key) {
+                case "text", "font", "insertion" -> object.addProperty(key, TEXTS[random.nextInt(TEXTS.length)]);
+                case "color" -> object.addProperty(key, random.nextInt(4) == 0 ? String.format("#%06X", random.nextInt(0x1000000)) : COLORS[random.nextInt(COLORS.length)]);
+                case "extra" -> {
+                    if (depth >= 6) continue;
+                    if (random.nextInt(5) == 0) {
+                        object.add(key, component(random, depth + 1));
+                        continue;
+                    }
+
+                    JsonArray extra = new JsonArray();
+                    int size = random.nextInt(4);
+                    for (int j = 0; j < size; j++) {
+                        switch (random.nextInt(6)) {
+                            case 0, 1 -> extra.add(TEXTS[random.nextInt(TEXTS.length)]);
+                            case 2 -> {
+                                // Arrays inside extra were walked like extra itself
+                                JsonArray nested = new JsonArray();
+                                nested.add(component(random, depth + 1));
+                                nested.add(TEXTS[random.nextInt(TEXTS.length)]);
+                                extra.add(nested);
+                            }
+                            default -> extra.add(component(random, depth + 1));
+                        }
+                    }
+                    object.add(key, extra);
+                }
+                default -> object.addProperty(key, random.nextBoolean());
+            }
+        }
+
+        return object;
+    }
+
+    // The description handling of buildServerFromPing before MotdRenderer replaced it
+    private static void recursive(JsonElement description, StringBuilder motd) {
+        if (description.isJsonObject()) buildMOTD(description, motd);
+        else motd.append(description.getAsString());
+    }
+
+    // MotdUtils.buildMOTD as it was, the depth limit it took was never reached
+    private static void buildMOTD(JsonElement element, StringBuilder motd) {
+        if (element.isJsonObject()) {
+            Map<String, JsonElement> map = element.getAsJsonObject().asMap();
+
+            if (map.containsKey("text")) {
+                if (map.containsKey("color")) {
+                    if (!map.get("color").getAsString().startsWith("#")) {
+                        motd.append('§').append(AnsiCodes.codes.get(map.get("color").getAsString()).c);
+                    }
+                }
+
+                if (map.containsKey("bold")) motd.append("§l");
+                if (map.containsKey("underlined")) motd.append("§n");
+                motd.append(map.get("text").getAsString());
+            }
+
+            if (map.containsKey("extra")) buildMOTD(map.get("extra"), motd);
+        } else {
+            for (JsonElement jsonElement : element.getAsJsonArray()) {
+                if (jsonElement.isJsonPrimitive()) motd.append(jsonElement.getAsString());
+                else buildMOTD(jsonElement, motd);
+            }
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package xyz.funtimes909.serverseekerv2_core.util;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.Test;
+import xyz.funtimes909.serverseekerv2_core.records.Server;
+import xyz.funtimes909.serverseekerv2_core.types.ServerType;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ServerObjectBuilderTest {
+    private static final List<String> CORPUS = List.of("vanilla", "paper", "forge", "neoforge");
+
+    // Responses real servers (or broken proxies in front of them) have sent, both parsers have to agree on every one
+    private static final List<String> MALFORMED = List.of(
+            "{}",
+            "{\"version\":{\"protocol\":5}}",
+            "{\"version\":{\"name\":\"1.20.1\"}}",
+            "{\"version\":{\"name\":null,\"protocol\":763}}",
+            "{\"version\":\"1.20.1\"}",
+            "{\"version\":{\"name\":\"1.20.1\",\"protocol\":763}",
+            "{\"version\":{\"name\":\"1.20.1\",\"protocol\":\"763\"},\"players\":{\"max\":20,\"online\":0}}",
+            "{\"version\":{\"name\":\"1.21\",\"protocol\":767},\"isModded\":true}",
+            "{\"players\":{\"max\":20}}",
+            "{\"players\":{\"max\":\"many\",\"online\":1}}",
+            "{\"players\":{\"max\":20,\"online\":1,\"sample\":[{\"name\":\"Notch\"}]}}",
+            "{\"players\":{\"max\":20,\"online\":1,\"sample\":[{\"name\":\"Notch\",\"id\":\"069a79f4-44e9-4726-a5be-fca90e38aaf5\"}]}}",
+            "{\"forgeData\":{\"mods\":[]}}",
+            "{\"forgeData\":{\"fmlNetworkVersion\":3,\"mods\":[{\"modId\":\"forge\"}]}}",
+            "{\"forgeData\":{\"fmlNetworkVersion\":3,\"mods\":[{\"modId\":\"forge\",\"modmarker\":\"47.2.0\"}]},\"version\":{\"name\":\"1.20.1\",\"protocol\":763}}",
+            "{\"description\":\"A Minecraft Server\",\"favicon\":\"data:image/png;base64,AA==\",\"enforcesSecureChat\":true}",
+            "{\"description\":{\"text\":\"a\",\"extra\":[{\"text\":\"b\",\"color\":\"red\",\"bold\":true}]}}",
+            "[]",
+            ""
+    );
+
+    @Test
+    public void corpusParsesTheSameBothWays() throws IOException {
+        for (String name : CORPUS) {
+            String raw = status(name);
+            Server tree = ServerObjectBuilder.buildServerFromPing("127.0.0.1", 25565, JsonParser.parseString(raw).getAsJsonObject(), null);
+            Server stream = ServerObjectBuilder.buildServerFromPing("127.0.0.1", 25565, raw, null);
+
+            assertNotNull(tree, name);
+            assertSameServer(name, tree, stream);
+        }
+    }
+
+    @Test
+    public void malformedResponsesParseTheSameBothWays() {
+        for (String raw : MALFORMED) {
+            Server tree = tree(raw);
+            Server stream = ServerObjectBuilder.buildServerFromPing("127.0.0.1", 25565, raw, null);
+
+            if (tree == null) {
+                assertNull(stream, raw);
+            } else {
+                assertSameServer(raw, tree, stream);
+            }
+        }
+    }
+
+    @Test
+    public void versionWithoutNameIsNotAServer() {
+        assertNull(ServerObjectBuilder.buildServerFromPing("127.0.0.1", 25565, "{\"version\":{\"protocol\":5}}", null));
+    }
+
+    @Test
+    public void forgeDataMakesALexForgeServer() {
+        Server server = ServerObjectBuilder.buildServerFromPing("127.0.0.1", 25565, MALFORMED.get(14), null);
+
+        assertNotNull(server);
+        assertEquals(ServerType.LEXFORGE, server.getServerType());
+        assertEquals(3, server.getFmlNetworkVersion());
+        assertEquals(1, server.getMods().size());
+    }
+
+    // Null where the tree parser gives up, including responses that aren't a json object at all
+    private static Server tree(String raw) {
+        JsonElement parsed;
+        try {
+            parsed = JsonParser.parseString(raw);
+        } catch (RuntimeException e) {
+            return null;
+        }
+
+        if (!parsed.isJsonObject()) return null;
+        return ServerObjectBuilder.buildServerFromPing("127.0.0.1", 25565, parsed.getAsJsonObject(), null);
+    }
+
+    // Sighting timestamps are left out, the two calls may straddle a second
+    private static void assertSameServer(String message, Server expected, Server actual) {
+        assertNotNull(actual, message);
+        assertEquals(expected.getAddress(), actual.getAddress(), message);
+        assertEquals(expected.getPort(), actual.getPort(), message);
+        assertEquals(expected.getServerType(), actual.getServerType(), message);
+        assertEquals(expected.getVersion(), actual.getVersion(), message);
+        assertEquals(expected.getProtocol(), actual.getProtocol(), message);
+        assertEquals(expected.getFmlNetworkVersion(), actual.getFmlNetworkVersion(), message);
+        assertEquals(expected.getMotd(), actual.getMotd(), message);
+        assertEquals(expected.getIcon(), actual.getIcon(), message);
+        assertEquals(expected.getPreventsReports(), actual.getPreventsReports(), message);
+        assertEquals(expected.getEnforceSecure(), actual.getEnforceSecure(), message);
+        assertEquals(expected.getMaxPlayers(), actual.getMaxPlayers(), message);
+        assertEquals(expected.getOnlinePlayers(), actual.getOnlinePlayers(), message);
+        assertEquals(expected.getMods(), actual.getMods(), message);
+        assertEquals(players(expected), players(actual), message);
+    }
+
+    private static List<String> players(Server server) {
+        return server.getPlayers().stream().map(player -> player.name() + "/" + player.uuid()).toList();
+    }
+
+    static String status(String name) throws IOException {
+        try (InputStream in = ServerObjectBuilderTest.class.getResourceAsStream("/status/" + name + ".json")) {
+            assertNotNull(in, "No status response named " + name);
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}